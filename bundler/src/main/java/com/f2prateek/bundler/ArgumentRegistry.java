@@ -0,0 +1,255 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+import android.os.Bundle;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * An in-process store for argument values that are too large to pass through a Binder. A value is
+ * registered once and only its token travels in the arguments Bundle, see
+ * {@link FragmentBundler#putReference(String, Object)}.
+ *
+ * Values are retained once for every fragment built with them and dropped when each of those
+ * fragments has called {@link #release(Bundle)}. When the registry grows beyond its maximum size,
+ * the least recently used unreferenced values are evicted first, then referenced ones. Values put
+ * by a fragment bundler that has not built yet count as referenced, and are discarded when the
+ * bundler is reset or their key is overwritten. A value is never evicted by its own registration,
+ * so the registry holds at most {@code maxSize} plus that one value. Tokens do not survive
+ * process death, so {@link #resolve(Bundle, String)} returns null for an evicted
+ * value or a restored fragment, and callers must be able to reload the value.
+ */
+public class ArgumentRegistry {
+  /** Key under which the tokens retained by a fragment are stored in its arguments. */
+  static final String TOKENS_KEY = "com.f2prateek.bundler.ArgumentRegistry.tokens";
+  private static final String PROCESS_PREFIX = Long.toHexString(new Random().nextLong()) + ":";
+  private static final int DEFAULT_MAX_SIZE = 64;
+
+  private static ArgumentRegistry defaultRegistry;
+
+  private final LinkedHashMap<String, Entry> entries =
+      new LinkedHashMap<String, Entry>(16, 0.75f, true);
+  private final int maxSize;
+  private int size;
+  private long nextId;
+
+  /** Returns the registry used by fragment bundlers, holding up to 64 values by default. */
+  public static synchronized ArgumentRegistry getDefault() {
+    if (defaultRegistry == null) {
+      defaultRegistry = new ArgumentRegistry(DEFAULT_MAX_SIZE);
+    }
+    return defaultRegistry;
+  }
+
+  /** Replaces the registry used by fragment bundlers. */
+  public static synchronized void setDefault(ArgumentRegistry registry) {
+    if (registry == null) {
+      throw new IllegalArgumentException("Registry must not be null.");
+    }
+    defaultRegistry = registry;
+  }
+
+  /**
+   * @param maxSize for registries that do not override {@link #sizeOf}, the maximum number of
+   * values. Otherwise the maximum sum of the sizes of the values.
+   */
+  public ArgumentRegistry(int maxSize) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("maxSize <= 0");
+    }
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Returns the size of {@code value} in user-defined units. The default implementation returns 1
+   * so that size is the number of values and max size is the maximum number of values.
+   */
+  protected int sizeOf(Object value) {
+    return 1;
+  }
+
+  /** Stores {@code value} and returns the token to resolve it with. */
+  public final String register(Object value) {
+    return register(value, false);
+  }
+
+  /**
+   * Stores {@code value} and returns the token to resolve it with. A pending value is evicted
+   * like a referenced one until it is retained, see {@link #retain(Bundle, List)}, or
+   * discarded, see {@link #discard(String)}.
+   */
+  final synchronized String register(Object value, boolean pending) {
+    if (value == null) {
+      throw new IllegalArgumentException("Value must not be null.");
+    }
+    String token = PROCESS_PREFIX + nextId++;
+    Entry entry = new Entry(value, sizeOf(value));
+    entry.pending = pending;
+    entries.put(token, entry);
+    size += entry.size;
+    trimToSize(entry);
+    return token;
+  }
+
+  /** Returns the value registered for {@code token}, or null if it is no longer available. */
+  public final synchronized Object resolve(String token) {
+    Entry entry = token == null ? null : entries.get(token);
+    return entry == null ? null : entry.value;
+  }
+
+  /**
+   * Returns the value whose token is stored under {@code key} in {@code arguments}, or null if it
+   * is no longer available.
+   */
+  public final Object resolve(Bundle arguments, String key) {
+    return resolve(arguments.getString(key));
+  }
+
+  /**
+   * Retains every token in {@code tokens} for a fragment whose arguments are {@code arguments}, in
+   * addition to any tokens already retained for it. Tokens already retained for it are skipped, so
+   * updating a fragment again does not add references. Pending values stop being pending.
+   */
+  final synchronized void retain(Bundle arguments, List<String> tokens) {
+    String[] retained = arguments.getStringArray(TOKENS_KEY);
+    List<String> added = new ArrayList<String>(tokens.size());
+    for (String token : tokens) {
+      if (contains(retained, token) || added.contains(token)) {
+        continue;
+      }
+      added.add(token);
+      Entry entry = entries.get(token);
+      if (entry != null) {
+        entry.references++;
+        entry.pending = false;
+      }
+    }
+    if (added.isEmpty()) {
+      return;
+    }
+    int offset = retained == null ? 0 : retained.length;
+    String[] all = new String[offset + added.size()];
+    if (retained != null) {
+      System.arraycopy(retained, 0, all, 0, offset);
+    }
+    for (int i = 0, size = added.size(); i < size; i++) {
+      all[offset + i] = added.get(i);
+    }
+    arguments.putStringArray(TOKENS_KEY, all);
+  }
+
+  private static boolean contains(String[] tokens, String token) {
+    if (tokens != null) {
+      for (String t : tokens) {
+        if (t.equals(token)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Releases the values retained for a fragment whose arguments are {@code arguments}. Call this
+   * once the fragment is destroyed for good, not when it is only being recreated.
+   */
+  public final synchronized void release(Bundle arguments) {
+    String[] tokens = arguments.getStringArray(TOKENS_KEY);
+    if (tokens == null) {
+      return;
+    }
+    arguments.remove(TOKENS_KEY);
+    for (String token : tokens) {
+      Entry entry = entries.get(token);
+      if (entry != null && --entry.references <= 0 && !entry.pending) {
+        entries.remove(token);
+        size -= entry.size;
+      }
+    }
+  }
+
+  /**
+   * Retains the tokens of {@code tokens}, keyed by the key they were put under, whose key still
+   * maps to them in {@code arguments}, see {@link #retain(Bundle, List)}. Tokens whose key was
+   * overwritten are discarded.
+   */
+  final synchronized void retain(Bundle arguments, Map<String, String> tokens) {
+    List<String> live = new ArrayList<String>(tokens.size());
+    for (Map.Entry<String, String> token : tokens.entrySet()) {
+      if (token.getValue().equals(arguments.getString(token.getKey()))) {
+        live.add(token.getValue());
+      } else {
+        discard(token.getValue());
+      }
+    }
+    retain(arguments, live);
+  }
+
+  /**
+   * Drops the value registered for {@code token} if it is still pending, for a fragment bundler
+   * that is reset before building or that overwrites the key holding the token.
+   */
+  final synchronized void discard(String token) {
+    Entry entry = entries.get(token);
+    if (entry != null && entry.pending) {
+      entry.pending = false;
+      if (entry.references <= 0) {
+        entries.remove(token);
+        size -= entry.size;
+      }
+    }
+  }
+
+  /** Returns the sum of the sizes of the values in this registry. */
+  public final synchronized int size() {
+    return size;
+  }
+
+  /** Evicts values until the registry fits its maximum size, keeping {@code kept}. */
+  private void trimToSize(Entry kept) {
+    evict(false, kept);
+    evict(true, kept);
+  }
+
+  private void evict(boolean referenced, Entry kept) {
+    Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+    while (size > maxSize && iterator.hasNext()) {
+      Entry entry = iterator.next().getValue();
+      if (entry != kept && (referenced || (entry.references == 0 && !entry.pending))) {
+        iterator.remove();
+        size -= entry.size;
+      }
+    }
+  }
+
+  private static final class Entry {
+    final Object value;
+    final int size;
+    int references;
+    boolean pending;
+
+    Entry(Object value, int size) {
+      this.value = value;
+      this.size = size;
+    }
+  }
+}
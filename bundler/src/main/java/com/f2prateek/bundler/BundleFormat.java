@@ -0,0 +1,566 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+import android.os.Bundle;
+import android.os.Parcel;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and writes Bundles in a compact binary format.
+ *
+ * A file starts with a magic number and a format version, followed by the root Bundle. A Bundle
+ * is its entry count followed by each key, a one byte type tag and the value. Strings are UTF-8
+ * with a length prefix and primitive arrays are written in bulk, big-endian. Values with no
+ * native encoding, such as Parcelables and Serializables, are stored as the bytes of a marshalled
+ * Parcel, which are only guaranteed to be readable on the same platform version.
+ *
+ * Writing goes through a fixed {@link #CHUNK_SIZE} buffer that is flushed to the channel
+ * whenever it fills, so writing a large Bundle never holds more than one chunk of it in memory.
+ */
+final class BundleFormat {
+  static final int MAGIC = 0x424E4452; // 'B' 'N' 'D' 'R'
+  static final int VERSION = 1;
+  static final int CHUNK_SIZE = 8192;
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private static final byte TYPE_NULL = 0;
+  private static final byte TYPE_BOOLEAN = 1;
+  private static final byte TYPE_BYTE = 2;
+  private static final byte TYPE_CHAR = 3;
+  private static final byte TYPE_SHORT = 4;
+  private static final byte TYPE_INT = 5;
+  private static final byte TYPE_LONG = 6;
+  private static final byte TYPE_FLOAT = 7;
+  private static final byte TYPE_DOUBLE = 8;
+  private static final byte TYPE_STRING = 9;
+  private static final byte TYPE_BOOLEAN_ARRAY = 10;
+  private static final byte TYPE_BYTE_ARRAY = 11;
+  private static final byte TYPE_CHAR_ARRAY = 12;
+  private static final byte TYPE_SHORT_ARRAY = 13;
+  private static final byte TYPE_INT_ARRAY = 14;
+  private static final byte TYPE_LONG_ARRAY = 15;
+  private static final byte TYPE_FLOAT_ARRAY = 16;
+  private static final byte TYPE_DOUBLE_ARRAY = 17;
+  private static final byte TYPE_STRING_ARRAY = 18;
+  private static final byte TYPE_INTEGER_LIST = 19;
+  private static final byte TYPE_STRING_LIST = 20;
+  private static final byte TYPE_BUNDLE = 21;
+  private static final byte TYPE_PARCEL = 22;
+
+  private BundleFormat() {
+    throw new AssertionError("No instances.");
+  }
+
+  /** Writes {@code bundle} to {@code channel}, starting at the channel's position. */
+  static void write(Bundle bundle, WritableByteChannel channel) throws IOException {
+    Writer writer = new Writer(channel);
+    writer.require(8);
+    writer.out.putInt(MAGIC);
+    writer.out.putInt(VERSION);
+    writer.writeBundle(bundle);
+    writer.flush();
+  }
+
+  /**
+   * Reads a Bundle from {@code buffer}, starting at its position. On return the buffer is
+   * positioned just past the Bundle.
+   */
+  static Bundle read(ByteBuffer buffer, ClassLoader classLoader) {
+    Reader reader = new Reader(buffer.slice(), classLoader);
+    if (reader.in.getInt() != MAGIC) {
+      throw new IllegalArgumentException("Not a Bundler file.");
+    }
+    int version = reader.in.getInt();
+    if (version > VERSION) {
+      throw new IllegalArgumentException("Unsupported Bundler file version " + version + ".");
+    }
+    Bundle bundle = reader.readBundle();
+    buffer.position(buffer.position() + reader.in.position());
+    return bundle;
+  }
+
+  private static boolean isIntegerList(List<?> list) {
+    if (list.isEmpty()) {
+      return false;
+    }
+    for (int i = 0, size = list.size(); i < size; i++) {
+      if (!(list.get(i) instanceof Integer)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isStringList(List<?> list) {
+    for (int i = 0, size = list.size(); i < size; i++) {
+      Object element = list.get(i);
+      if (element != null && !(element instanceof String)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static final class Writer {
+    final ByteBuffer out = ByteBuffer.allocate(CHUNK_SIZE);
+    private final WritableByteChannel channel;
+
+    Writer(WritableByteChannel channel) {
+      this.channel = channel;
+    }
+
+    /** Makes room for {@code bytes}, which must not exceed {@link #CHUNK_SIZE}. */
+    void require(int bytes) throws IOException {
+      if (out.remaining() < bytes) {
+        flush();
+      }
+    }
+
+    void flush() throws IOException {
+      out.flip();
+      while (out.hasRemaining()) {
+        channel.write(out);
+      }
+      out.clear();
+    }
+
+    void writeBundle(Bundle bundle) throws IOException {
+      require(4);
+      out.putInt(bundle.size());
+      for (String key : bundle.keySet()) {
+        writeString(key);
+        writeValue(bundle.get(key));
+      }
+    }
+
+    private void writeTag(byte type, int payload) throws IOException {
+      require(1 + payload);
+      out.put(type);
+    }
+
+    /** Writes a length prefix followed by {@code bytes}, bypassing the buffer if they won't fit. */
+    private void writeBytes(byte[] bytes) throws IOException {
+      require(4);
+      out.putInt(bytes.length);
+      if (bytes.length > out.remaining()) {
+        flush();
+        if (bytes.length > out.capacity()) {
+          ByteBuffer wrapped = ByteBuffer.wrap(bytes);
+          while (wrapped.hasRemaining()) {
+            channel.write(wrapped);
+          }
+          return;
+        }
+      }
+      out.put(bytes);
+    }
+
+    private void writeString(String value) throws IOException {
+      if (value == null) {
+        require(4);
+        out.putInt(-1);
+        return;
+      }
+      writeBytes(value.getBytes(UTF_8));
+    }
+
+    private void writeBooleans(boolean[] array) throws IOException {
+      require(4);
+      out.putInt(array.length);
+      for (boolean element : array) {
+        require(1);
+        out.put((byte) (element ? 1 : 0));
+      }
+    }
+
+    private void writeChars(char[] array) throws IOException {
+      require(4);
+      out.putInt(array.length);
+      for (int offset = 0, count; offset < array.length; offset += count) {
+        require(2);
+        count = Math.min(array.length - offset, out.remaining() / 2);
+        out.asCharBuffer().put(array, offset, count);
+        out.position(out.position() + count * 2);
+      }
+    }
+
+    private void writeShorts(short[] array) throws IOException {
+      require(4);
+      out.putInt(array.length);
+      for (int offset = 0, count; offset < array.length; offset += count) {
+        require(2);
+        count = Math.min(array.length - offset, out.remaining() / 2);
+        out.asShortBuffer().put(array, offset, count);
+        out.position(out.position() + count * 2);
+      }
+    }
+
+    private void writeInts(int[] array) throws IOException {
+      require(4);
+      out.putInt(array.length);
+      for (int offset = 0, count; offset < array.length; offset += count) {
+        require(4);
+        count = Math.min(array.length - offset, out.remaining() / 4);
+        out.asIntBuffer().put(array, offset, count);
+        out.position(out.position() + count * 4);
+      }
+    }
+
+    private void writeLongs(long[] array) throws IOException {
+      require(4);
+      out.putInt(array.length);
+      for (int offset = 0, count; offset < array.length; offset += count) {
+        require(8);
+        count = Math.min(array.length - offset, out.remaining() / 8);
+        out.asLongBuffer().put(array, offset, count);
+        out.position(out.position() + count * 8);
+      }
+    }
+
+    private void writeFloats(float[] array) throws IOException {
+      require(4);
+      out.putInt(array.length);
+      for (int offset = 0, count; offset < array.length; offset += count) {
+        require(4);
+        count = Math.min(array.length - offset, out.remaining() / 4);
+        out.asFloatBuffer().put(array, offset, count);
+        out.position(out.position() + count * 4);
+      }
+    }
+
+    private void writeDoubles(double[] array) throws IOException {
+      require(4);
+      out.putInt(array.length);
+      for (int offset = 0, count; offset < array.length; offset += count) {
+        require(8);
+        count = Math.min(array.length - offset, out.remaining() / 8);
+        out.asDoubleBuffer().put(array, offset, count);
+        out.position(out.position() + count * 8);
+      }
+    }
+
+    private void writeValue(Object value) throws IOException {
+      if (value == null) {
+        writeTag(TYPE_NULL, 0);
+      } else if (value instanceof Boolean) {
+        writeTag(TYPE_BOOLEAN, 1);
+        out.put((byte) ((Boolean) value ? 1 : 0));
+      } else if (value instanceof Byte) {
+        writeTag(TYPE_BYTE, 1);
+        out.put((Byte) value);
+      } else if (value instanceof Character) {
+        writeTag(TYPE_CHAR, 2);
+        out.putChar((Character) value);
+      } else if (value instanceof Short) {
+        writeTag(TYPE_SHORT, 2);
+        out.putShort((Short) value);
+      } else if (value instanceof Integer) {
+        writeTag(TYPE_INT, 4);
+        out.putInt((Integer) value);
+      } else if (value instanceof Long) {
+        writeTag(TYPE_LONG, 8);
+        out.putLong((Long) value);
+      } else if (value instanceof Float) {
+        writeTag(TYPE_FLOAT, 4);
+        out.putFloat((Float) value);
+      } else if (value instanceof Double) {
+        writeTag(TYPE_DOUBLE, 8);
+        out.putDouble((Double) value);
+      } else if (value instanceof String) {
+        writeTag(TYPE_STRING, 0);
+        writeString((String) value);
+      } else if (value instanceof boolean[]) {
+        writeTag(TYPE_BOOLEAN_ARRAY, 0);
+        writeBooleans((boolean[]) value);
+      } else if (value instanceof byte[]) {
+        writeTag(TYPE_BYTE_ARRAY, 0);
+        writeBytes((byte[]) value);
+      } else if (value instanceof char[]) {
+        writeTag(TYPE_CHAR_ARRAY, 0);
+        writeChars((char[]) value);
+      } else if (value instanceof short[]) {
+        writeTag(TYPE_SHORT_ARRAY, 0);
+        writeShorts((short[]) value);
+      } else if (value instanceof int[]) {
+        writeTag(TYPE_INT_ARRAY, 0);
+        writeInts((int[]) value);
+      } else if (value instanceof long[]) {
+        writeTag(TYPE_LONG_ARRAY, 0);
+        writeLongs((long[]) value);
+      } else if (value instanceof float[]) {
+        writeTag(TYPE_FLOAT_ARRAY, 0);
+        writeFloats((float[]) value);
+      } else if (value instanceof double[]) {
+        writeTag(TYPE_DOUBLE_ARRAY, 0);
+        writeDoubles((double[]) value);
+      } else if (value instanceof String[]) {
+        String[] array = (String[]) value;
+        writeTag(TYPE_STRING_ARRAY, 4);
+        out.putInt(array.length);
+        for (String element : array) {
+          writeString(element);
+        }
+      } else if (value instanceof Bundle) {
+        writeTag(TYPE_BUNDLE, 0);
+        writeBundle((Bundle) value);
+      } else if (value instanceof ArrayList && isIntegerList((ArrayList<?>) value)) {
+        ArrayList<?> list = (ArrayList<?>) value;
+        writeTag(TYPE_INTEGER_LIST, 4);
+        out.putInt(list.size());
+        for (int i = 0, size = list.size(); i < size; i++) {
+          require(4);
+          out.putInt((Integer) list.get(i));
+        }
+      } else if (value instanceof ArrayList && isStringList((ArrayList<?>) value)) {
+        ArrayList<?> list = (ArrayList<?>) value;
+        writeTag(TYPE_STRING_LIST, 4);
+        out.putInt(list.size());
+        for (int i = 0, size = list.size(); i < size; i++) {
+          writeString((String) list.get(i));
+        }
+      } else {
+        Parcel parcel = Parcel.obtain();
+        try {
+          parcel.writeValue(value);
+          byte[] bytes = parcel.marshall();
+          writeTag(TYPE_PARCEL, 0);
+          writeBytes(bytes);
+        } finally {
+          parcel.recycle();
+        }
+      }
+    }
+  }
+
+  private static final class Reader {
+    final ByteBuffer in;
+    private final ClassLoader classLoader;
+    private byte[] scratch = new byte[64];
+
+    Reader(ByteBuffer in, ClassLoader classLoader) {
+      this.in = in;
+      this.classLoader = classLoader;
+    }
+
+    Bundle readBundle() {
+      int size = in.getInt();
+      Bundle bundle = new Bundle(size);
+      for (int i = 0; i < size; i++) {
+        String key = readString();
+        readValue(bundle, key);
+      }
+      return bundle;
+    }
+
+    private String readString() {
+      int length = in.getInt();
+      if (length < 0) {
+        return null;
+      }
+      if (in.hasArray()) {
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length, UTF_8);
+        in.position(in.position() + length);
+        return value;
+      }
+      if (scratch.length < length) {
+        scratch = new byte[Math.max(length, scratch.length * 2)];
+      }
+      in.get(scratch, 0, length);
+      return new String(scratch, 0, length, UTF_8);
+    }
+
+    private void readValue(Bundle bundle, String key) {
+      byte type = in.get();
+      switch (type) {
+        case TYPE_NULL:
+          bundle.putString(key, null);
+          break;
+        case TYPE_BOOLEAN:
+          bundle.putBoolean(key, in.get() != 0);
+          break;
+        case TYPE_BYTE:
+          bundle.putByte(key, in.get());
+          break;
+        case TYPE_CHAR:
+          bundle.putChar(key, in.getChar());
+          break;
+        case TYPE_SHORT:
+          bundle.putShort(key, in.getShort());
+          break;
+        case TYPE_INT:
+          bundle.putInt(key, in.getInt());
+          break;
+        case TYPE_LONG:
+          bundle.putLong(key, in.getLong());
+          break;
+        case TYPE_FLOAT:
+          bundle.putFloat(key, in.getFloat());
+          break;
+        case TYPE_DOUBLE:
+          bundle.putDouble(key, in.getDouble());
+          break;
+        case TYPE_STRING:
+          bundle.putString(key, readString());
+          break;
+        case TYPE_BOOLEAN_ARRAY:
+          bundle.putBooleanArray(key, readBooleanArray());
+          break;
+        case TYPE_BYTE_ARRAY:
+          bundle.putByteArray(key, readByteArray());
+          break;
+        case TYPE_CHAR_ARRAY:
+          bundle.putCharArray(key, readCharArray());
+          break;
+        case TYPE_SHORT_ARRAY:
+          bundle.putShortArray(key, readShortArray());
+          break;
+        case TYPE_INT_ARRAY:
+          bundle.putIntArray(key, readIntArray());
+          break;
+        case TYPE_LONG_ARRAY:
+          bundle.putLongArray(key, readLongArray());
+          break;
+        case TYPE_FLOAT_ARRAY:
+          bundle.putFloatArray(key, readFloatArray());
+          break;
+        case TYPE_DOUBLE_ARRAY:
+          bundle.putDoubleArray(key, readDoubleArray());
+          break;
+        case TYPE_STRING_ARRAY:
+          bundle.putStringArray(key, readStringArray());
+          break;
+        case TYPE_INTEGER_LIST:
+          bundle.putIntegerArrayList(key, readIntegerList());
+          break;
+        case TYPE_STRING_LIST:
+          bundle.putStringArrayList(key, readStringList());
+          break;
+        case TYPE_BUNDLE:
+          bundle.putBundle(key, readBundle());
+          break;
+        case TYPE_PARCEL:
+          BundleValues.put(bundle, key, readParcelValue());
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown value type " + type + " for key " + key);
+      }
+    }
+
+    private boolean[] readBooleanArray() {
+      boolean[] array = new boolean[in.getInt()];
+      for (int i = 0; i < array.length; i++) {
+        array[i] = in.get() != 0;
+      }
+      return array;
+    }
+
+    private byte[] readByteArray() {
+      byte[] array = new byte[in.getInt()];
+      in.get(array);
+      return array;
+    }
+
+    private char[] readCharArray() {
+      char[] array = new char[in.getInt()];
+      in.asCharBuffer().get(array);
+      in.position(in.position() + array.length * 2);
+      return array;
+    }
+
+    private short[] readShortArray() {
+      short[] array = new short[in.getInt()];
+      in.asShortBuffer().get(array);
+      in.position(in.position() + array.length * 2);
+      return array;
+    }
+
+    private int[] readIntArray() {
+      int[] array = new int[in.getInt()];
+      in.asIntBuffer().get(array);
+      in.position(in.position() + array.length * 4);
+      return array;
+    }
+
+    private long[] readLongArray() {
+      long[] array = new long[in.getInt()];
+      in.asLongBuffer().get(array);
+      in.position(in.position() + array.length * 8);
+      return array;
+    }
+
+    private float[] readFloatArray() {
+      float[] array = new float[in.getInt()];
+      in.asFloatBuffer().get(array);
+      in.position(in.position() + array.length * 4);
+      return array;
+    }
+
+    private double[] readDoubleArray() {
+      double[] array = new double[in.getInt()];
+      in.asDoubleBuffer().get(array);
+      in.position(in.position() + array.length * 8);
+      return array;
+    }
+
+    private String[] readStringArray() {
+      String[] array = new String[in.getInt()];
+      for (int i = 0; i < array.length; i++) {
+        array[i] = readString();
+      }
+      return array;
+    }
+
+    private ArrayList<Integer> readIntegerList() {
+      int size = in.getInt();
+      ArrayList<Integer> list = new ArrayList<Integer>(size);
+      for (int i = 0; i < size; i++) {
+        list.add(in.getInt());
+      }
+      return list;
+    }
+
+    private ArrayList<String> readStringList() {
+      int size = in.getInt();
+      ArrayList<String> list = new ArrayList<String>(size);
+      for (int i = 0; i < size; i++) {
+        list.add(readString());
+      }
+      return list;
+    }
+
+    private Object readParcelValue() {
+      int length = in.getInt();
+      byte[] bytes = new byte[length];
+      in.get(bytes);
+      Parcel parcel = Parcel.obtain();
+      try {
+        parcel.unmarshall(bytes, 0, length);
+        parcel.setDataPosition(0);
+        return parcel.readValue(classLoader);
+      } finally {
+        parcel.recycle();
+      }
+    }
+  }
+}
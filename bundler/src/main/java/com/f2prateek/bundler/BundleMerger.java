@@ -0,0 +1,201 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+import android.os.Bundle;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Merges several Bundles into one in a single pass, into a Bundle sized for all of them.
+ * Usage: {@code Bundle merged = BundleMerger.create().deepMerge(true).merge(defaults, user).get();}
+ *
+ * Keys present in more than one source are settled by the {@link Resolver} registered for the
+ * key, else the one registered for the type of the incoming value, else by merging the two
+ * values if both are Bundles and deep merging is enabled, else by the default resolver, which
+ * keeps the last value.
+ */
+public final class BundleMerger {
+  /** Settles a key that is present in more than one source. */
+  public interface Resolver {
+    /**
+     * Returns the value to keep for {@code key}.
+     *
+     * @param key the conflicting key
+     * @param existing the value merged from earlier sources
+     * @param incoming the value from the next source
+     * @return the value to keep
+     */
+    Object resolve(String key, Object existing, Object incoming);
+  }
+
+  /** Keeps the value from the earliest source. */
+  public static final Resolver FIRST_WINS = new Resolver() {
+    @Override public Object resolve(String key, Object existing, Object incoming) {
+      return existing;
+    }
+  };
+
+  /** Keeps the value from the latest source, like {@link Bundle#putAll(Bundle)}. */
+  public static final Resolver LAST_WINS = new Resolver() {
+    @Override public Object resolve(String key, Object existing, Object incoming) {
+      return incoming;
+    }
+  };
+
+  private final Map<String, Resolver> keyResolvers = new LinkedHashMap<String, Resolver>();
+  private final Map<Class<?>, Resolver> typeResolvers = new LinkedHashMap<Class<?>, Resolver>();
+  private Resolver defaultResolver = LAST_WINS;
+  private boolean deepMerge;
+
+  /** Creates a merger that keeps the last value for every key. */
+  public static BundleMerger create() {
+    return new BundleMerger();
+  }
+
+  private BundleMerger() {
+  }
+
+  /**
+   * Sets the resolver for keys without a more specific one.
+   *
+   * @param resolver a Resolver
+   * @return this merger instance to chain method calls
+   */
+  public BundleMerger onConflict(Resolver resolver) {
+    defaultResolver = checkNotNull(resolver);
+    return this;
+  }
+
+  /**
+   * Sets the resolver for {@code key}, at any level of nesting.
+   *
+   * @param key a String, or null
+   * @param resolver a Resolver
+   * @return this merger instance to chain method calls
+   */
+  public BundleMerger onConflict(String key, Resolver resolver) {
+    keyResolvers.put(key, checkNotNull(resolver));
+    return this;
+  }
+
+  /**
+   * Sets the resolver for keys whose incoming value is an instance of {@code type}. Resolvers for
+   * types are tried in the order they were set.
+   *
+   * @param type a Class
+   * @param resolver a Resolver
+   * @return this merger instance to chain method calls
+   */
+  public BundleMerger onConflict(Class<?> type, Resolver resolver) {
+    typeResolvers.put(type, checkNotNull(resolver));
+    return this;
+  }
+
+  /**
+   * Sets whether two Bundle values for the same key are merged into a new Bundle with the same
+   * rules, instead of being resolved. Source Bundles are never modified.
+   *
+   * @param deepMerge true to merge nested Bundles
+   * @return this merger instance to chain method calls
+   */
+  public BundleMerger deepMerge(boolean deepMerge) {
+    this.deepMerge = deepMerge;
+    return this;
+  }
+
+  /**
+   * Merges {@code sources}, in order, into a new Bundle.
+   *
+   * @param sources the Bundles to merge; null sources are skipped
+   * @return a bundler that delegates to the merged Bundle
+   */
+  public Bundler merge(Bundle... sources) {
+    int capacity = 0;
+    for (Bundle source : sources) {
+      if (source != null) {
+        capacity += source.size();
+      }
+    }
+    Bundle target = new Bundle(capacity);
+    if (keyResolvers.isEmpty() && typeResolvers.isEmpty() && !deepMerge) {
+      if (defaultResolver == LAST_WINS) {
+        for (Bundle source : sources) {
+          if (source != null) {
+            target.putAll(source);
+          }
+        }
+        return Bundler.of(target);
+      }
+      if (defaultResolver == FIRST_WINS) {
+        for (int i = sources.length - 1; i >= 0; i--) {
+          if (sources[i] != null) {
+            target.putAll(sources[i]);
+          }
+        }
+        return Bundler.of(target);
+      }
+    }
+    for (Bundle source : sources) {
+      if (source != null) {
+        mergeInto(target, source);
+      }
+    }
+    return Bundler.of(target);
+  }
+
+  private void mergeInto(Bundle target, Bundle source) {
+    for (String key : source.keySet()) {
+      Object incoming = source.get(key);
+      if (!target.containsKey(key)) {
+        BundleValues.put(target, key, incoming);
+      } else {
+        BundleValues.put(target, key, resolve(key, target.get(key), incoming));
+      }
+    }
+  }
+
+  private Object resolve(String key, Object existing, Object incoming) {
+    Resolver resolver = keyResolvers.get(key);
+    if (resolver != null) {
+      return resolver.resolve(key, existing, incoming);
+    }
+    if (incoming != null) {
+      for (Map.Entry<Class<?>, Resolver> entry : typeResolvers.entrySet()) {
+        if (entry.getKey().isInstance(incoming)) {
+          return entry.getValue().resolve(key, existing, incoming);
+        }
+      }
+    }
+    if (deepMerge && existing instanceof Bundle && incoming instanceof Bundle) {
+      Bundle existingBundle = (Bundle) existing;
+      Bundle incomingBundle = (Bundle) incoming;
+      Bundle merged = new Bundle(existingBundle.size() + incomingBundle.size());
+      merged.putAll(existingBundle);
+      mergeInto(merged, incomingBundle);
+      return merged;
+    }
+    return defaultResolver.resolve(key, existing, incoming);
+  }
+
+  private static Resolver checkNotNull(Resolver resolver) {
+    if (resolver == null) {
+      throw new IllegalArgumentException("Resolver must not be null.");
+    }
+    return resolver;
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+import android.os.Bundle;
+import java.util.Arrays;
+
+/**
+ * A reusable selection of keys to copy out of a Bundle, optionally under new names. Only the
+ * selected keys are looked up and copied, in one pass into a Bundle sized for them, which is
+ * cheaper than copying a whole Bundle and removing what is not needed.
+ * Usage: {@code Bundle args = BundleProjection.of("id", "title").rename("ref", "source")
+ * .copy(extras).get();}
+ *
+ * Instances are immutable and safe to share, so a projection can be built once and kept in a
+ * static field. Values are shared with the source Bundle, not copied.
+ */
+public final class BundleProjection {
+  private final String[] sourceKeys;
+  private final String[] targetKeys;
+
+  /**
+   * Returns a projection that copies {@code keys} under their own names.
+   *
+   * @throws IllegalArgumentException if a key is given more than once
+   */
+  public static BundleProjection of(String... keys) {
+    return new BundleProjection(keys.clone(), keys.clone());
+  }
+
+  private BundleProjection(String[] sourceKeys, String[] targetKeys) {
+    for (int i = 0; i < targetKeys.length; i++) {
+      for (int j = i + 1; j < targetKeys.length; j++) {
+        if (equal(targetKeys[i], targetKeys[j])) {
+          throw new IllegalArgumentException("Duplicate target key " + targetKeys[i]);
+        }
+      }
+    }
+    this.sourceKeys = sourceKeys;
+    this.targetKeys = targetKeys;
+  }
+
+  /**
+   * Returns a projection that also copies {@code from} under the name {@code to}. If {@code from}
+   * is already selected, it is copied under the new name instead of its current one.
+   *
+   * @param from the key to read from the source Bundle, or null
+   * @param to the key to write in the target Bundle, or null
+   * @return the new projection
+   * @throws IllegalArgumentException if {@code to} is already a target key of another selection
+   */
+  public BundleProjection rename(String from, String to) {
+    for (int i = 0; i < sourceKeys.length; i++) {
+      if (equal(sourceKeys[i], from)) {
+        String[] newTargetKeys = targetKeys.clone();
+        newTargetKeys[i] = to;
+        return new BundleProjection(sourceKeys, newTargetKeys);
+      }
+    }
+    String[] newSourceKeys = Arrays.copyOf(sourceKeys, sourceKeys.length + 1);
+    String[] newTargetKeys = Arrays.copyOf(targetKeys, targetKeys.length + 1);
+    newSourceKeys[sourceKeys.length] = from;
+    newTargetKeys[targetKeys.length] = to;
+    return new BundleProjection(newSourceKeys, newTargetKeys);
+  }
+
+  /** Returns the number of keys this projection selects. */
+  public int size() {
+    return sourceKeys.length;
+  }
+
+  /**
+   * Copies the selected keys of {@code source} into a new Bundle, see
+   * {@link #copyInto(Bundle, Bundle)}.
+   *
+   * @return a bundler that delegates to the new Bundle
+   */
+  public Bundler copy(Bundle source) {
+    Bundle target = new Bundle(sourceKeys.length);
+    copyInto(source, target);
+    return Bundler.of(target);
+  }
+
+  /**
+   * Copies the selected keys of {@code source} into {@code target}, replacing any existing values
+   * for the target keys. Keys missing from {@code source} are read from its base layers, see
+   * {@link LayeredBundle}, and skipped if they are missing there too.
+   *
+   * @return the number of keys copied
+   */
+  public int copyInto(Bundle source, Bundle target) {
+    int copied = 0;
+    for (int i = 0; i < sourceKeys.length; i++) {
+      Bundle layer = source;
+      do {
+        Object value = layer.get(sourceKeys[i]);
+        if (value != null || layer.containsKey(sourceKeys[i])) {
+          BundleValues.put(target, targetKeys[i], value);
+          copied++;
+          break;
+        }
+        layer = LayeredBundle.baseOf(layer);
+      } while (layer != null);
+    }
+    return copied;
+  }
+
+  private static boolean equal(String a, String b) {
+    return a == null ? b == null : a.equals(b);
+  }
+}
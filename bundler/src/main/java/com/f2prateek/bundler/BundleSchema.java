@@ -0,0 +1,317 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Parcelable;
+import android.util.SparseArray;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Declares the keys and value types of a Bundle once, so that a {@link SchemaBundler} can store
+ * values in a fixed slot per key instead of a hash map, and only build the Bundle when it is
+ * needed. Keys are validated when the schema is built; puts are then plain array stores.
+ * Usage:
+ * <pre>{@code
+ * BundleSchema.Builder builder = BundleSchema.builder();
+ * BundleSchema.IntKey page = builder.intKey("page");
+ * BundleSchema.ObjectKey<String> title = builder.key("title", String.class);
+ * BundleSchema schema = builder.build();
+ * Bundle args = SchemaBundler.create(schema).put(page, 2).put(title, "Home").get();
+ * }</pre>
+ */
+public final class BundleSchema {
+  static final int BOOLEAN = 0;
+  static final int INT = 1;
+  static final int LONG = 2;
+  static final int FLOAT = 3;
+  static final int DOUBLE = 4;
+  static final int OBJECT = 5;
+
+  final Key[] keys;
+  final int primitiveCount;
+  final int objectCount;
+
+  /** Returns a builder to declare the keys of a new schema. */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  private BundleSchema(Key[] keys, int primitiveCount, int objectCount) {
+    this.keys = keys;
+    this.primitiveCount = primitiveCount;
+    this.objectCount = objectCount;
+  }
+
+  /** Returns the number of keys declared by this schema. */
+  public int size() {
+    return keys.length;
+  }
+
+  /** A key declared by a schema, with a fixed ordinal and a fixed slot for its value. */
+  public abstract static class Key {
+    final String name;
+    final int type;
+    final int ordinal;
+    final int slot;
+    BundleSchema schema;
+
+    Key(String name, int type, int ordinal, int slot) {
+      this.name = name;
+      this.type = type;
+      this.ordinal = ordinal;
+      this.slot = slot;
+    }
+
+    /** Returns the name of this key in the Bundle. */
+    public String name() {
+      return name;
+    }
+
+    /** Returns the position at which this key was declared. */
+    public int ordinal() {
+      return ordinal;
+    }
+  }
+
+  /** A key for a boolean value. */
+  public static final class BooleanKey extends Key {
+    BooleanKey(String name, int ordinal, int slot) {
+      super(name, BOOLEAN, ordinal, slot);
+    }
+  }
+
+  /** A key for an int value. */
+  public static final class IntKey extends Key {
+    IntKey(String name, int ordinal, int slot) {
+      super(name, INT, ordinal, slot);
+    }
+  }
+
+  /** A key for a long value. */
+  public static final class LongKey extends Key {
+    LongKey(String name, int ordinal, int slot) {
+      super(name, LONG, ordinal, slot);
+    }
+  }
+
+  /** A key for a float value. */
+  public static final class FloatKey extends Key {
+    FloatKey(String name, int ordinal, int slot) {
+      super(name, FLOAT, ordinal, slot);
+    }
+  }
+
+  /** A key for a double value. */
+  public static final class DoubleKey extends Key {
+    DoubleKey(String name, int ordinal, int slot) {
+      super(name, DOUBLE, ordinal, slot);
+    }
+  }
+
+  /**
+   * A key for an object value, such as a String, an array or a Parcelable.
+   *
+   * @param <T> the type of the value
+   */
+  public static final class ObjectKey<T> extends Key {
+    ObjectKey(String name, int ordinal, int slot) {
+      super(name, OBJECT, ordinal, slot);
+    }
+  }
+
+  /** Declares the keys of a schema. Keys must be declared before {@link #build()} is called. */
+  public static final class Builder {
+    private final List<Key> keys = new ArrayList<Key>();
+    private final Set<String> names = new HashSet<String>();
+    private int primitiveCount;
+    private int objectCount;
+    private boolean built;
+
+    private Builder() {
+    }
+
+    /** Declares a key for a boolean value. */
+    public BooleanKey booleanKey(String name) {
+      return add(new BooleanKey(checkName(name), keys.size(), primitiveCount++));
+    }
+
+    /** Declares a key for an int value. */
+    public IntKey intKey(String name) {
+      return add(new IntKey(checkName(name), keys.size(), primitiveCount++));
+    }
+
+    /** Declares a key for a long value. */
+    public LongKey longKey(String name) {
+      return add(new LongKey(checkName(name), keys.size(), primitiveCount++));
+    }
+
+    /** Declares a key for a float value. */
+    public FloatKey floatKey(String name) {
+      return add(new FloatKey(checkName(name), keys.size(), primitiveCount++));
+    }
+
+    /** Declares a key for a double value. */
+    public DoubleKey doubleKey(String name) {
+      return add(new DoubleKey(checkName(name), keys.size(), primitiveCount++));
+    }
+
+    /**
+     * Declares a key for values of {@code type}.
+     *
+     * @param name the name of the key in the Bundle
+     * @param type a type accepted by a Bundle, such as String, an array or a Parcelable
+     * @return the key
+     * @throws IllegalArgumentException if a Bundle cannot hold values of {@code type}
+     */
+    public <T> ObjectKey<T> key(String name, Class<T> type) {
+      if (!isSupported(type)) {
+        throw new IllegalArgumentException(
+            "Unsupported value type " + type.getName() + " for key " + name);
+      }
+      return add(new ObjectKey<T>(checkName(name), keys.size(), objectCount++));
+    }
+
+    /** Returns a schema declaring the keys added so far. */
+    public BundleSchema build() {
+      if (built) {
+        throw new IllegalStateException("Schema is already built.");
+      }
+      built = true;
+      BundleSchema schema =
+          new BundleSchema(keys.toArray(new Key[keys.size()]), primitiveCount, objectCount);
+      for (Key key : keys) {
+        key.schema = schema;
+      }
+      return schema;
+    }
+
+    private String checkName(String name) {
+      if (built) {
+        throw new IllegalStateException("Schema is already built.");
+      }
+      if (name == null) {
+        throw new IllegalArgumentException("Key name must not be null.");
+      }
+      if (!names.add(name)) {
+        throw new IllegalArgumentException("Duplicate key: " + name);
+      }
+      return name;
+    }
+
+    private <K extends Key> K add(K key) {
+      keys.add(key);
+      return key;
+    }
+
+    private static boolean isSupported(Class<?> type) {
+      return Serializable.class.isAssignableFrom(type)
+          || Parcelable.class.isAssignableFrom(type)
+          || CharSequence.class.isAssignableFrom(type)
+          || SparseArray.class.isAssignableFrom(type);
+    }
+  }
+
+  /** Inserts the values in {@code primitives} and {@code objects} that are {@code present}. */
+  void writeTo(Bundle target, boolean[] present, long[] primitives, Object[] objects) {
+    for (Key key : keys) {
+      if (!present[key.ordinal]) {
+        continue;
+      }
+      long bits = key.type == OBJECT ? 0L : primitives[key.slot];
+      switch (key.type) {
+        case BOOLEAN:
+          target.putBoolean(key.name, bits != 0L);
+          break;
+        case INT:
+          target.putInt(key.name, (int) bits);
+          break;
+        case LONG:
+          target.putLong(key.name, bits);
+          break;
+        case FLOAT:
+          target.putFloat(key.name, Float.intBitsToFloat((int) bits));
+          break;
+        case DOUBLE:
+          target.putDouble(key.name, Double.longBitsToDouble(bits));
+          break;
+        default:
+          BundleValues.put(target, key.name, objects[key.slot]);
+          break;
+      }
+    }
+  }
+
+  /** Inserts the present values into the extras of {@code target} with typed putExtra calls. */
+  void writeTo(Intent target, boolean[] present, long[] primitives, Object[] objects) {
+    for (Key key : keys) {
+      if (!present[key.ordinal]) {
+        continue;
+      }
+      long bits = key.type == OBJECT ? 0L : primitives[key.slot];
+      switch (key.type) {
+        case BOOLEAN:
+          target.putExtra(key.name, bits != 0L);
+          break;
+        case INT:
+          target.putExtra(key.name, (int) bits);
+          break;
+        case LONG:
+          target.putExtra(key.name, bits);
+          break;
+        case FLOAT:
+          target.putExtra(key.name, Float.intBitsToFloat((int) bits));
+          break;
+        case DOUBLE:
+          target.putExtra(key.name, Double.longBitsToDouble(bits));
+          break;
+        default:
+          BundleValues.putExtra(target, key.name, objects[key.slot]);
+          break;
+      }
+    }
+  }
+
+  /** Returns the estimated marshalled size of the values that are {@code present}. */
+  int estimatedSize(boolean[] present, Object[] objects) {
+    int size = 0;
+    for (Key key : keys) {
+      if (!present[key.ordinal]) {
+        continue;
+      }
+      size += BundleValues.estimatedSize(key.name);
+      switch (key.type) {
+        case LONG:
+        case DOUBLE:
+          size += 12;
+          break;
+        case OBJECT:
+          size += BundleValues.estimatedSize(objects[key.slot]);
+          break;
+        default:
+          size += 8;
+          break;
+      }
+    }
+    return size;
+  }
+}
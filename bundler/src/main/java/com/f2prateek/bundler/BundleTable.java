@@ -0,0 +1,563 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+import android.os.Bundle;
+import android.os.Parcel;
+import android.os.Parcelable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A table of rows that share the same keys, stored by column: the keys are held once and each
+ * column is a single {@code int}, {@code long}, {@code double} or {@code String} array. Compared
+ * with a list of Bundles, rows cost no per-row maps, boxes or key strings, and the table is
+ * written to a Parcel as one value. Cells can be addressed by column name, or by a column index
+ * from {@link #columnIndex(String)} to skip the name lookup in loops over many rows.
+ * Usage: {@code BundleTable feed = BundleTable.builder().intColumn("id").stringColumn("title")
+ * .build(); feed.addRow().setInt("id", 1).setString("title", "Home");
+ * Bundler.create().put("feed", feed).get();}
+ */
+public final class BundleTable implements Parcelable {
+  private static final int TYPE_INT = 0;
+  private static final int TYPE_LONG = 1;
+  private static final int TYPE_DOUBLE = 2;
+  private static final int TYPE_STRING = 3;
+  /** The type of a key that has only had null values so far in {@link #copyOf(List)}. */
+  private static final int TYPE_UNKNOWN = -1;
+  private static final String[] TYPE_NAMES = new String[] {"an int", "a long", "a double",
+      "a String"};
+
+  private final String[] names;
+  private final int[] types;
+  private final Object[] columns;
+  private int size;
+
+  /** Builds a table by declaring its columns. */
+  public static final class Builder {
+    private final List<String> names = new ArrayList<String>();
+    private final List<Integer> types = new ArrayList<Integer>();
+
+    Builder() {
+    }
+
+    /** Declares a column of {@code int} values. */
+    public Builder intColumn(String name) {
+      return column(name, TYPE_INT);
+    }
+
+    /** Declares a column of {@code long} values. */
+    public Builder longColumn(String name) {
+      return column(name, TYPE_LONG);
+    }
+
+    /** Declares a column of {@code double} values. */
+    public Builder doubleColumn(String name) {
+      return column(name, TYPE_DOUBLE);
+    }
+
+    /** Declares a column of String values. */
+    public Builder stringColumn(String name) {
+      return column(name, TYPE_STRING);
+    }
+
+    private Builder column(String name, int type) {
+      if (names.contains(name)) {
+        throw new IllegalArgumentException("Duplicate column " + name);
+      }
+      names.add(name);
+      types.add(type);
+      return this;
+    }
+
+    /** Returns an empty table with the declared columns. */
+    public BundleTable build() {
+      return build(0);
+    }
+
+    /** Returns an empty table with the declared columns and room for {@code capacity} rows. */
+    public BundleTable build(int capacity) {
+      if (capacity < 0) {
+        throw new IllegalArgumentException("capacity < 0");
+      }
+      int[] columnTypes = new int[types.size()];
+      Object[] columns = new Object[columnTypes.length];
+      for (int i = 0; i < columnTypes.length; i++) {
+        columnTypes[i] = types.get(i);
+        columns[i] = newColumn(columnTypes[i], capacity);
+      }
+      return new BundleTable(names.toArray(new String[names.size()]), columnTypes, columns, 0);
+    }
+  }
+
+  /** A view of one row of a table. It reads and writes through to the table's columns. */
+  public final class Row {
+    private final int index;
+
+    Row(int index) {
+      this.index = index;
+    }
+
+    /** Returns the index of this row in its table. */
+    public int index() {
+      return index;
+    }
+
+    /** Returns the value of the int column {@code name} in this row. */
+    public int getInt(String name) {
+      return ((int[]) column(name, TYPE_INT))[index];
+    }
+
+    /** Returns the value of the int column at {@code column} in this row. */
+    public int getInt(int column) {
+      return ((int[]) column(column, TYPE_INT))[index];
+    }
+
+    /** Returns the value of the long column {@code name} in this row. */
+    public long getLong(String name) {
+      return ((long[]) column(name, TYPE_LONG))[index];
+    }
+
+    /** Returns the value of the long column at {@code column} in this row. */
+    public long getLong(int column) {
+      return ((long[]) column(column, TYPE_LONG))[index];
+    }
+
+    /** Returns the value of the double column {@code name} in this row. */
+    public double getDouble(String name) {
+      return ((double[]) column(name, TYPE_DOUBLE))[index];
+    }
+
+    /** Returns the value of the double column at {@code column} in this row. */
+    public double getDouble(int column) {
+      return ((double[]) column(column, TYPE_DOUBLE))[index];
+    }
+
+    /** Returns the value of the String column {@code name} in this row, or null. */
+    public String getString(String name) {
+      return ((String[]) column(name, TYPE_STRING))[index];
+    }
+
+    /** Returns the value of the String column at {@code column} in this row, or null. */
+    public String getString(int column) {
+      return ((String[]) column(column, TYPE_STRING))[index];
+    }
+
+    /**
+     * Sets the value of the int column {@code name} in this row.
+     *
+     * @return this row to chain method calls
+     */
+    public Row setInt(String name, int value) {
+      ((int[]) column(name, TYPE_INT))[index] = value;
+      return this;
+    }
+
+    /**
+     * Sets the value of the int column at {@code column} in this row.
+     *
+     * @return this row to chain method calls
+     */
+    public Row setInt(int column, int value) {
+      ((int[]) column(column, TYPE_INT))[index] = value;
+      return this;
+    }
+
+    /**
+     * Sets the value of the long column {@code name} in this row.
+     *
+     * @return this row to chain method calls
+     */
+    public Row setLong(String name, long value) {
+      ((long[]) column(name, TYPE_LONG))[index] = value;
+      return this;
+    }
+
+    /**
+     * Sets the value of the long column at {@code column} in this row.
+     *
+     * @return this row to chain method calls
+     */
+    public Row setLong(int column, long value) {
+      ((long[]) column(column, TYPE_LONG))[index] = value;
+      return this;
+    }
+
+    /**
+     * Sets the value of the double column {@code name} in this row.
+     *
+     * @return this row to chain method calls
+     */
+    public Row setDouble(String name, double value) {
+      ((double[]) column(name, TYPE_DOUBLE))[index] = value;
+      return this;
+    }
+
+    /**
+     * Sets the value of the double column at {@code column} in this row.
+     *
+     * @return this row to chain method calls
+     */
+    public Row setDouble(int column, double value) {
+      ((double[]) column(column, TYPE_DOUBLE))[index] = value;
+      return this;
+    }
+
+    /**
+     * Sets the value of the String column {@code name} in this row.
+     *
+     * @return this row to chain method calls
+     */
+    public Row setString(String name, String value) {
+      ((String[]) column(name, TYPE_STRING))[index] = value;
+      return this;
+    }
+
+    /**
+     * Sets the value of the String column at {@code column} in this row.
+     *
+     * @return this row to chain method calls
+     */
+    public Row setString(int column, String value) {
+      ((String[]) column(column, TYPE_STRING))[index] = value;
+      return this;
+    }
+
+    /** Returns a new Bundle holding the values of this row. */
+    public Bundle toBundle() {
+      Bundle bundle = new Bundle(names.length);
+      for (int i = 0; i < names.length; i++) {
+        switch (types[i]) {
+          case TYPE_INT:
+            bundle.putInt(names[i], ((int[]) columns[i])[index]);
+            break;
+          case TYPE_LONG:
+            bundle.putLong(names[i], ((long[]) columns[i])[index]);
+            break;
+          case TYPE_DOUBLE:
+            bundle.putDouble(names[i], ((double[]) columns[i])[index]);
+            break;
+          default:
+            bundle.putString(names[i], ((String[]) columns[i])[index]);
+            break;
+        }
+      }
+      return bundle;
+    }
+  }
+
+  /** Returns a builder for a table. */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Returns a table holding {@code rows}. It has a column for every key found in any row, typed by
+   * the first non-null value for that key, which must be an Integer, Long, Double or String; a key
+   * with only null values makes a String column. Keys missing from a row are left at zero or null.
+   *
+   * @throws IllegalArgumentException if a value has an unsupported type, or one that differs from
+   * the type of its column
+   */
+  public static BundleTable copyOf(List<Bundle> rows) {
+    Map<String, Integer> columnTypes = new LinkedHashMap<String, Integer>();
+    for (int i = 0, count = rows.size(); i < count; i++) {
+      Bundle row = rows.get(i);
+      for (String key : row.keySet()) {
+        Integer type = columnTypes.get(key);
+        if (type == null || type == TYPE_UNKNOWN) {
+          columnTypes.put(key, typeOf(key, row.get(key)));
+        }
+      }
+    }
+    Builder builder = builder();
+    for (Map.Entry<String, Integer> column : columnTypes.entrySet()) {
+      int type = column.getValue();
+      builder.column(column.getKey(), type == TYPE_UNKNOWN ? TYPE_STRING : type);
+    }
+    BundleTable table = builder.build(rows.size());
+    for (int i = 0, count = rows.size(); i < count; i++) {
+      Bundle row = rows.get(i);
+      int index = table.size++;
+      for (int column = 0; column < table.names.length; column++) {
+        Object value = row.get(table.names[column]);
+        if (value != null) {
+          table.set(column, index, value);
+        }
+      }
+    }
+    return table;
+  }
+
+  private static int typeOf(String key, Object value) {
+    if (value == null) {
+      return TYPE_UNKNOWN;
+    } else if (value instanceof Integer) {
+      return TYPE_INT;
+    } else if (value instanceof Long) {
+      return TYPE_LONG;
+    } else if (value instanceof Double) {
+      return TYPE_DOUBLE;
+    } else if (value instanceof String) {
+      return TYPE_STRING;
+    }
+    throw new IllegalArgumentException(
+        "Unsupported column type " + value.getClass().getName() + " for key " + key);
+  }
+
+  /**
+   * Returns the table stored under {@code key} in {@code bundle}, or null if there is none.
+   *
+   * @param bundle a Bundle
+   * @param key a String, or null
+   * @return the table, or null
+   */
+  public static BundleTable of(Bundle bundle, String key) {
+    Parcelable value = bundle.getParcelable(key);
+    return value instanceof BundleTable ? (BundleTable) value : null;
+  }
+
+  private BundleTable(String[] names, int[] types, Object[] columns, int size) {
+    this.names = names;
+    this.types = types;
+    this.columns = columns;
+    this.size = size;
+  }
+
+  /** Returns the number of rows. */
+  public int size() {
+    return size;
+  }
+
+  /** Returns the number of columns. */
+  public int columnCount() {
+    return names.length;
+  }
+
+  /** Returns the name of the column at {@code column}. */
+  public String columnName(int column) {
+    return names[column];
+  }
+
+  /** Returns the index of the column {@code name}, or -1 if there is none. */
+  public int columnIndex(String name) {
+    for (int i = 0; i < names.length; i++) {
+      if (names[i] == null ? name == null : names[i].equals(name)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /** Appends a row with every value set to zero or null, and returns a view of it. */
+  public Row addRow() {
+    ensureCapacity(size + 1);
+    return new Row(size++);
+  }
+
+  /** Returns a view of the row at {@code index}. */
+  public Row row(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+    }
+    return new Row(index);
+  }
+
+  /** Returns a new list holding a Bundle for each row. */
+  public ArrayList<Bundle> toBundles() {
+    ArrayList<Bundle> bundles = new ArrayList<Bundle>(size);
+    for (int i = 0; i < size; i++) {
+      bundles.add(new Row(i).toBundle());
+    }
+    return bundles;
+  }
+
+  private Object column(String name, int type) {
+    int column = columnIndex(name);
+    if (column < 0) {
+      throw new IllegalArgumentException("No column named " + name);
+    }
+    return column(column, type);
+  }
+
+  private Object column(int column, int type) {
+    if (column < 0 || column >= names.length) {
+      throw new IndexOutOfBoundsException("Column: " + column + ", columns: " + names.length);
+    }
+    if (types[column] != type) {
+      throw new IllegalArgumentException("Column " + names[column] + " holds "
+          + TYPE_NAMES[types[column]] + ", not " + TYPE_NAMES[type]);
+    }
+    return columns[column];
+  }
+
+  private void set(int column, int index, Object value) {
+    int type = types[column];
+    if (type == TYPE_INT && value instanceof Integer) {
+      ((int[]) columns[column])[index] = (Integer) value;
+    } else if (type == TYPE_LONG && value instanceof Long) {
+      ((long[]) columns[column])[index] = (Long) value;
+    } else if (type == TYPE_DOUBLE && value instanceof Double) {
+      ((double[]) columns[column])[index] = (Double) value;
+    } else if (type == TYPE_STRING && value instanceof String) {
+      ((String[]) columns[column])[index] = (String) value;
+    } else {
+      throw new IllegalArgumentException("Column " + names[column] + " holds "
+          + TYPE_NAMES[type] + ", found " + value.getClass().getName() + " in row " + index);
+    }
+  }
+
+  private void ensureCapacity(int capacity) {
+    int current = columns.length == 0 ? Integer.MAX_VALUE : columnLength(0);
+    if (capacity > current) {
+      int newCapacity = Math.max(capacity, Math.max(8, current + (current >> 1)));
+      for (int i = 0; i < columns.length; i++) {
+        columns[i] = resize(types[i], columns[i], newCapacity);
+      }
+    }
+  }
+
+  private int columnLength(int column) {
+    switch (types[column]) {
+      case TYPE_INT:
+        return ((int[]) columns[column]).length;
+      case TYPE_LONG:
+        return ((long[]) columns[column]).length;
+      case TYPE_DOUBLE:
+        return ((double[]) columns[column]).length;
+      default:
+        return ((String[]) columns[column]).length;
+    }
+  }
+
+  private static Object newColumn(int type, int capacity) {
+    switch (type) {
+      case TYPE_INT:
+        return new int[capacity];
+      case TYPE_LONG:
+        return new long[capacity];
+      case TYPE_DOUBLE:
+        return new double[capacity];
+      default:
+        return new String[capacity];
+    }
+  }
+
+  private static Object resize(int type, Object column, int capacity) {
+    switch (type) {
+      case TYPE_INT:
+        return Arrays.copyOf((int[]) column, capacity);
+      case TYPE_LONG:
+        return Arrays.copyOf((long[]) column, capacity);
+      case TYPE_DOUBLE:
+        return Arrays.copyOf((double[]) column, capacity);
+      default:
+        return Arrays.copyOf((String[]) column, capacity);
+    }
+  }
+
+  @Override public int describeContents() {
+    return 0;
+  }
+
+  @Override public void writeToParcel(Parcel dest, int flags) {
+    dest.writeInt(size);
+    dest.writeInt(names.length);
+    for (int i = 0; i < names.length; i++) {
+      dest.writeString(names[i]);
+      dest.writeInt(types[i]);
+      switch (types[i]) {
+        case TYPE_INT:
+          int[] ints = (int[]) columns[i];
+          for (int row = 0; row < size; row++) {
+            dest.writeInt(ints[row]);
+          }
+          break;
+        case TYPE_LONG:
+          long[] longs = (long[]) columns[i];
+          for (int row = 0; row < size; row++) {
+            dest.writeLong(longs[row]);
+          }
+          break;
+        case TYPE_DOUBLE:
+          double[] doubles = (double[]) columns[i];
+          for (int row = 0; row < size; row++) {
+            dest.writeDouble(doubles[row]);
+          }
+          break;
+        default:
+          String[] strings = (String[]) columns[i];
+          for (int row = 0; row < size; row++) {
+            dest.writeString(strings[row]);
+          }
+          break;
+      }
+    }
+  }
+
+  public static final Creator<BundleTable> CREATOR = new Creator<BundleTable>() {
+    @Override public BundleTable createFromParcel(Parcel source) {
+      int size = source.readInt();
+      int columnCount = source.readInt();
+      String[] names = new String[columnCount];
+      int[] types = new int[columnCount];
+      Object[] columns = new Object[columnCount];
+      for (int i = 0; i < columnCount; i++) {
+        names[i] = source.readString();
+        types[i] = source.readInt();
+        switch (types[i]) {
+          case TYPE_INT:
+            int[] ints = new int[size];
+            for (int row = 0; row < size; row++) {
+              ints[row] = source.readInt();
+            }
+            columns[i] = ints;
+            break;
+          case TYPE_LONG:
+            long[] longs = new long[size];
+            for (int row = 0; row < size; row++) {
+              longs[row] = source.readLong();
+            }
+            columns[i] = longs;
+            break;
+          case TYPE_DOUBLE:
+            double[] doubles = new double[size];
+            for (int row = 0; row < size; row++) {
+              doubles[row] = source.readDouble();
+            }
+            columns[i] = doubles;
+            break;
+          default:
+            String[] strings = new String[size];
+            for (int row = 0; row < size; row++) {
+              strings[row] = source.readString();
+            }
+            columns[i] = strings;
+            break;
+        }
+      }
+      return new BundleTable(names, types, columns, size);
+    }
+
+    @Override public BundleTable[] newArray(int size) {
+      return new BundleTable[size];
+    }
+  };
+}
@@ -0,0 +1,392 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Parcelable;
+import android.util.SparseArray;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/** Helpers for values read back out of a {@link Bundle} as plain objects. */
+final class BundleValues {
+  private BundleValues() {
+    throw new AssertionError("No instances.");
+  }
+
+  /**
+   * Inserts {@code value} into {@code target} with the put method matching its runtime type.
+   * Lists are inserted as-is, since a Bundle does not distinguish between typed ArrayLists.
+   */
+  @SuppressWarnings("unchecked")
+  static void put(Bundle target, String key, Object value) {
+    if (value == null) {
+      target.putString(key, null);
+    } else if (value instanceof Boolean) {
+      target.putBoolean(key, (Boolean) value);
+    } else if (value instanceof Byte) {
+      target.putByte(key, (Byte) value);
+    } else if (value instanceof Character) {
+      target.putChar(key, (Character) value);
+    } else if (value instanceof Short) {
+      target.putShort(key, (Short) value);
+    } else if (value instanceof Integer) {
+      target.putInt(key, (Integer) value);
+    } else if (value instanceof Long) {
+      target.putLong(key, (Long) value);
+    } else if (value instanceof Float) {
+      target.putFloat(key, (Float) value);
+    } else if (value instanceof Double) {
+      target.putDouble(key, (Double) value);
+    } else if (value instanceof String) {
+      target.putString(key, (String) value);
+    } else if (value instanceof CharSequence) {
+      target.putCharSequence(key, (CharSequence) value);
+    } else if (value instanceof Bundle) {
+      target.putBundle(key, (Bundle) value);
+    } else if (value instanceof Parcelable) {
+      target.putParcelable(key, (Parcelable) value);
+    } else if (value instanceof boolean[]) {
+      target.putBooleanArray(key, (boolean[]) value);
+    } else if (value instanceof byte[]) {
+      target.putByteArray(key, (byte[]) value);
+    } else if (value instanceof char[]) {
+      target.putCharArray(key, (char[]) value);
+    } else if (value instanceof short[]) {
+      target.putShortArray(key, (short[]) value);
+    } else if (value instanceof int[]) {
+      target.putIntArray(key, (int[]) value);
+    } else if (value instanceof long[]) {
+      target.putLongArray(key, (long[]) value);
+    } else if (value instanceof float[]) {
+      target.putFloatArray(key, (float[]) value);
+    } else if (value instanceof double[]) {
+      target.putDoubleArray(key, (double[]) value);
+    } else if (value instanceof String[]) {
+      target.putStringArray(key, (String[]) value);
+    } else if (value instanceof CharSequence[]) {
+      target.putCharSequenceArray(key, (CharSequence[]) value);
+    } else if (value instanceof Parcelable[]) {
+      target.putParcelableArray(key, (Parcelable[]) value);
+    } else if (value instanceof ArrayList) {
+      target.putParcelableArrayList(key, (ArrayList<Parcelable>) value);
+    } else if (value instanceof SparseArray) {
+      target.putSparseParcelableArray(key, (SparseArray<Parcelable>) value);
+    } else if (value instanceof Serializable) {
+      target.putSerializable(key, (Serializable) value);
+    } else {
+      throw new IllegalArgumentException(
+          "Unsupported value type " + value.getClass().getName() + " for key " + key);
+    }
+  }
+
+  /**
+   * Inserts {@code value} into the extras of {@code target} with the putExtra method matching its
+   * runtime type, see {@link #put(Bundle, String, Object)}. An Intent has no putExtra method for a
+   * SparseArray, so one goes through a single-entry Bundle.
+   */
+  @SuppressWarnings("unchecked")
+  static void putExtra(Intent target, String key, Object value) {
+    if (value == null) {
+      target.putExtra(key, (String) null);
+    } else if (value instanceof Boolean) {
+      target.putExtra(key, (boolean) (Boolean) value);
+    } else if (value instanceof Byte) {
+      target.putExtra(key, (byte) (Byte) value);
+    } else if (value instanceof Character) {
+      target.putExtra(key, (char) (Character) value);
+    } else if (value instanceof Short) {
+      target.putExtra(key, (short) (Short) value);
+    } else if (value instanceof Integer) {
+      target.putExtra(key, (int) (Integer) value);
+    } else if (value instanceof Long) {
+      target.putExtra(key, (long) (Long) value);
+    } else if (value instanceof Float) {
+      target.putExtra(key, (float) (Float) value);
+    } else if (value instanceof Double) {
+      target.putExtra(key, (double) (Double) value);
+    } else if (value instanceof String) {
+      target.putExtra(key, (String) value);
+    } else if (value instanceof CharSequence) {
+      target.putExtra(key, (CharSequence) value);
+    } else if (value instanceof Bundle) {
+      target.putExtra(key, (Bundle) value);
+    } else if (value instanceof Parcelable) {
+      target.putExtra(key, (Parcelable) value);
+    } else if (value instanceof boolean[]) {
+      target.putExtra(key, (boolean[]) value);
+    } else if (value instanceof byte[]) {
+      target.putExtra(key, (byte[]) value);
+    } else if (value instanceof char[]) {
+      target.putExtra(key, (char[]) value);
+    } else if (value instanceof short[]) {
+      target.putExtra(key, (short[]) value);
+    } else if (value instanceof int[]) {
+      target.putExtra(key, (int[]) value);
+    } else if (value instanceof long[]) {
+      target.putExtra(key, (long[]) value);
+    } else if (value instanceof float[]) {
+      target.putExtra(key, (float[]) value);
+    } else if (value instanceof double[]) {
+      target.putExtra(key, (double[]) value);
+    } else if (value instanceof String[]) {
+      target.putExtra(key, (String[]) value);
+    } else if (value instanceof CharSequence[]) {
+      target.putExtra(key, (CharSequence[]) value);
+    } else if (value instanceof Parcelable[]) {
+      target.putExtra(key, (Parcelable[]) value);
+    } else if (value instanceof ArrayList) {
+      target.putParcelableArrayListExtra(key, (ArrayList<Parcelable>) value);
+    } else if (value instanceof SparseArray) {
+      Bundle single = new Bundle(1);
+      single.putSparseParcelableArray(key, (SparseArray<Parcelable>) value);
+      target.putExtras(single);
+    } else if (value instanceof Serializable) {
+      target.putExtra(key, (Serializable) value);
+    } else {
+      throw new IllegalArgumentException(
+          "Unsupported value type " + value.getClass().getName() + " for key " + key);
+    }
+  }
+
+  /** Returns true if {@code value} can be inserted into a Bundle. */
+  static boolean isSupported(Object value) {
+    return value == null
+        || value instanceof Serializable
+        || value instanceof Parcelable
+        || value instanceof CharSequence
+        || value instanceof SparseArray;
+  }
+
+  /**
+   * Inserts each mapping of {@code source} into {@code target} unless {@code target} already holds
+   * an equal value for the key, see {@link #valuesEqual}.
+   *
+   * @return the keys that were inserted, in the iteration order of {@code source}
+   */
+  static Set<String> update(Bundle target, Bundle source) {
+    Set<String> changed = new LinkedHashSet<String>();
+    for (String key : source.keySet()) {
+      Object value = source.get(key);
+      if (!target.containsKey(key) || !valuesEqual(target.get(key), value)) {
+        put(target, key, value);
+        changed.add(key);
+      }
+    }
+    return changed;
+  }
+
+  /**
+   * Returns true if {@code a} and {@code b} are equal, comparing arrays, lists, sparse arrays and
+   * nested Bundles by content.
+   */
+  static boolean valuesEqual(Object a, Object b) {
+    if (a == b) {
+      return true;
+    }
+    if (a == null || b == null) {
+      return false;
+    }
+    if (a instanceof Bundle && b instanceof Bundle) {
+      Bundle first = (Bundle) a;
+      Bundle second = (Bundle) b;
+      if (first.size() != second.size()) {
+        return false;
+      }
+      for (String key : first.keySet()) {
+        if (!second.containsKey(key) || !valuesEqual(first.get(key), second.get(key))) {
+          return false;
+        }
+      }
+      return true;
+    }
+    if (a instanceof Object[] && b instanceof Object[]) {
+      return a.getClass() == b.getClass()
+          && elementsEqual(Arrays.asList((Object[]) a), Arrays.asList((Object[]) b));
+    }
+    if (a instanceof List && b instanceof List) {
+      return elementsEqual((List<?>) a, (List<?>) b);
+    }
+    if (a instanceof SparseArray && b instanceof SparseArray) {
+      SparseArray<?> first = (SparseArray<?>) a;
+      SparseArray<?> second = (SparseArray<?>) b;
+      if (first.size() != second.size()) {
+        return false;
+      }
+      for (int i = 0, size = first.size(); i < size; i++) {
+        if (first.keyAt(i) != second.keyAt(i)
+            || !valuesEqual(first.valueAt(i), second.valueAt(i))) {
+          return false;
+        }
+      }
+      return true;
+    }
+    if (a.getClass().isArray()) {
+      return Arrays.deepEquals(new Object[] {a}, new Object[] {b});
+    }
+    return a.equals(b);
+  }
+
+  private static boolean elementsEqual(List<?> a, List<?> b) {
+    if (a.size() != b.size()) {
+      return false;
+    }
+    for (int i = 0, size = a.size(); i < size; i++) {
+      if (!valuesEqual(a.get(i), b.get(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns a copy of {@code bundle} in which arrays, lists, sparse arrays and nested Bundles are
+   * copied too. Other values, such as Strings and Parcelables, are shared.
+   */
+  static Bundle deepCopy(Bundle bundle) {
+    Bundle copy = new Bundle(bundle.size());
+    for (String key : bundle.keySet()) {
+      put(copy, key, deepCopy(bundle.get(key)));
+    }
+    return copy;
+  }
+
+  /** Returns a deep copy of {@code value}, see {@link #deepCopy(Bundle)}. */
+  @SuppressWarnings("unchecked")
+  static Object deepCopy(Object value) {
+    if (value instanceof Bundle) {
+      return deepCopy((Bundle) value);
+    } else if (value instanceof boolean[]) {
+      return ((boolean[]) value).clone();
+    } else if (value instanceof byte[]) {
+      return ((byte[]) value).clone();
+    } else if (value instanceof char[]) {
+      return ((char[]) value).clone();
+    } else if (value instanceof short[]) {
+      return ((short[]) value).clone();
+    } else if (value instanceof int[]) {
+      return ((int[]) value).clone();
+    } else if (value instanceof long[]) {
+      return ((long[]) value).clone();
+    } else if (value instanceof float[]) {
+      return ((float[]) value).clone();
+    } else if (value instanceof double[]) {
+      return ((double[]) value).clone();
+    } else if (value instanceof Object[]) {
+      Object[] copy = ((Object[]) value).clone();
+      for (int i = 0; i < copy.length; i++) {
+        copy[i] = deepCopy(copy[i]);
+      }
+      return copy;
+    } else if (value instanceof ArrayList) {
+      List<Object> list = (List<Object>) value;
+      ArrayList<Object> copy = new ArrayList<Object>(list.size());
+      for (int i = 0, size = list.size(); i < size; i++) {
+        copy.add(deepCopy(list.get(i)));
+      }
+      return copy;
+    } else if (value instanceof SparseArray) {
+      SparseArray<Object> copy = ((SparseArray<Object>) value).clone();
+      for (int i = 0, size = copy.size(); i < size; i++) {
+        copy.setValueAt(i, deepCopy(copy.valueAt(i)));
+      }
+      return copy;
+    }
+    return value;
+  }
+
+  /**
+   * Returns a rough count of the elements held by {@code value}: the length of arrays and lists,
+   * the number of entries of Bundles, including nested ones, and 1 for anything else.
+   */
+  static int elementCount(Object value) {
+    if (value instanceof Bundle) {
+      Bundle bundle = (Bundle) value;
+      int count = 0;
+      for (String key : bundle.keySet()) {
+        count += elementCount(bundle.get(key));
+      }
+      return count;
+    } else if (value instanceof Object[]) {
+      return ((Object[]) value).length;
+    } else if (value instanceof List) {
+      return ((List<?>) value).size();
+    } else if (value instanceof SparseArray) {
+      return ((SparseArray<?>) value).size();
+    } else if (value != null && value.getClass().isArray()) {
+      return Array.getLength(value);
+    }
+    return 1;
+  }
+
+  /**
+   * Returns a rough estimate of the bytes {@code value} takes up when marshalled, including its
+   * type tag. Parcelables, Serializables and other opaque values are counted as 64 bytes.
+   */
+  static int estimatedSize(Object value) {
+    if (value == null) {
+      return 4;
+    } else if (value instanceof Long || value instanceof Double) {
+      return 12;
+    } else if (value instanceof Boolean || value instanceof Byte || value instanceof Character
+        || value instanceof Short || value instanceof Integer || value instanceof Float) {
+      return 8;
+    } else if (value instanceof CharSequence) {
+      return 8 + 2 * ((CharSequence) value).length();
+    } else if (value instanceof Bundle) {
+      Bundle bundle = (Bundle) value;
+      int size = 12;
+      for (String key : bundle.keySet()) {
+        size += estimatedSize(key) + estimatedSize(bundle.get(key));
+      }
+      return size;
+    } else if (value instanceof byte[]) {
+      return 8 + ((byte[]) value).length;
+    } else if (value instanceof long[] || value instanceof double[]) {
+      return 8 + 8 * Array.getLength(value);
+    } else if (value instanceof Object[]) {
+      int size = 8;
+      for (Object element : (Object[]) value) {
+        size += estimatedSize(element);
+      }
+      return size;
+    } else if (value instanceof List) {
+      List<?> list = (List<?>) value;
+      int size = 8;
+      for (int i = 0, count = list.size(); i < count; i++) {
+        size += estimatedSize(list.get(i));
+      }
+      return size;
+    } else if (value instanceof SparseArray) {
+      SparseArray<?> array = (SparseArray<?>) value;
+      int size = 8;
+      for (int i = 0, count = array.size(); i < count; i++) {
+        size += 4 + estimatedSize(array.valueAt(i));
+      }
+      return size;
+    } else if (value.getClass().isArray()) {
+      return 8 + 4 * Array.getLength(value);
+    }
+    return 64;
+  }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+import android.os.Bundle;
+import android.os.Parcelable;
+import android.util.SparseArray;
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Visits the values of a Bundle in a single pass, with a typed callback for each kind of value,
+ * see {@link Bundler#accept(BundleVisitor)}. Primitive values are passed unboxed. Every callback
+ * returns true to continue and false to stop visiting; the default implementations do nothing
+ * and continue. Nested Bundles are visited between {@link #enterBundle(String, Bundle)} and
+ * {@link #exitBundle(String, Bundle)}.
+ */
+public abstract class BundleVisitor {
+  /**
+   * Visits {@code bundle} with {@code visitor}.
+   *
+   * @return false if the visitor stopped early
+   */
+  static boolean visit(Bundle bundle, BundleVisitor visitor) {
+    if (LayeredBundle.baseOf(bundle) == null) {
+      for (String key : bundle.keySet()) {
+        if (!visitValue(key, bundle.get(key), visitor)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    // Walk the overlay and then each base layer, skipping keys that an upper layer maps.
+    for (Bundle layer = bundle; layer != null; layer = LayeredBundle.baseOf(layer)) {
+      for (String key : layer.keySet()) {
+        if (LayeredBundle.BASE_KEY.equals(key) || LayeredBundle.layerOf(bundle, key) != layer) {
+          continue;
+        }
+        if (!visitValue(key, layer.get(key), visitor)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private static boolean visitValue(String key, Object value, BundleVisitor visitor) {
+    boolean proceed;
+    if (value == null) {
+      proceed = visitor.visitNull(key);
+    } else if (value instanceof Boolean) {
+      proceed = visitor.visitBoolean(key, (Boolean) value);
+    } else if (value instanceof Byte) {
+      proceed = visitor.visitByte(key, (Byte) value);
+    } else if (value instanceof Character) {
+      proceed = visitor.visitChar(key, (Character) value);
+    } else if (value instanceof Short) {
+      proceed = visitor.visitShort(key, (Short) value);
+    } else if (value instanceof Integer) {
+      proceed = visitor.visitInt(key, (Integer) value);
+    } else if (value instanceof Long) {
+      proceed = visitor.visitLong(key, (Long) value);
+    } else if (value instanceof Float) {
+      proceed = visitor.visitFloat(key, (Float) value);
+    } else if (value instanceof Double) {
+      proceed = visitor.visitDouble(key, (Double) value);
+    } else if (value instanceof String) {
+      proceed = visitor.visitString(key, (String) value);
+    } else if (value instanceof CharSequence) {
+      proceed = visitor.visitCharSequence(key, (CharSequence) value);
+    } else if (value instanceof Bundle) {
+      proceed = visitBundle(key, (Bundle) value, visitor);
+    } else if (value instanceof Parcelable) {
+      proceed = visitor.visitParcelable(key, (Parcelable) value);
+    } else if (value instanceof boolean[]) {
+      proceed = visitor.visitBooleanArray(key, (boolean[]) value);
+    } else if (value instanceof byte[]) {
+      proceed = visitor.visitByteArray(key, (byte[]) value);
+    } else if (value instanceof char[]) {
+      proceed = visitor.visitCharArray(key, (char[]) value);
+    } else if (value instanceof short[]) {
+      proceed = visitor.visitShortArray(key, (short[]) value);
+    } else if (value instanceof int[]) {
+      proceed = visitor.visitIntArray(key, (int[]) value);
+    } else if (value instanceof long[]) {
+      proceed = visitor.visitLongArray(key, (long[]) value);
+    } else if (value instanceof float[]) {
+      proceed = visitor.visitFloatArray(key, (float[]) value);
+    } else if (value instanceof double[]) {
+      proceed = visitor.visitDoubleArray(key, (double[]) value);
+    } else if (value instanceof String[]) {
+      proceed = visitor.visitStringArray(key, (String[]) value);
+    } else if (value instanceof CharSequence[]) {
+      proceed = visitor.visitCharSequenceArray(key, (CharSequence[]) value);
+    } else if (value instanceof Parcelable[]) {
+      proceed = visitor.visitParcelableArray(key, (Parcelable[]) value);
+    } else if (value instanceof List) {
+      proceed = visitor.visitList(key, (List<?>) value);
+    } else if (value instanceof SparseArray) {
+      proceed = visitor.visitSparseArray(key, (SparseArray<?>) value);
+    } else if (value instanceof Serializable) {
+      proceed = visitor.visitSerializable(key, (Serializable) value);
+    } else {
+      proceed = visitor.visitOther(key, value);
+    }
+    return proceed;
+  }
+
+  private static boolean visitBundle(String key, Bundle value, BundleVisitor visitor) {
+    if (visitor.enterBundle(key, value) && !visit(value, visitor)) {
+      return false;
+    }
+    return visitor.exitBundle(key, value);
+  }
+
+  /**
+   * Called before the values of a nested Bundle are visited. Returns false to skip them;
+   * {@link #exitBundle(String, Bundle)} is called either way.
+   */
+  public boolean enterBundle(String key, Bundle value) {
+    return true;
+  }
+
+  /** Called after the values of a nested Bundle are visited. Returns false to stop visiting. */
+  public boolean exitBundle(String key, Bundle value) {
+    return true;
+  }
+
+  /** Visits a null value. Returns false to stop visiting. */
+  public boolean visitNull(String key) {
+    return true;
+  }
+
+  /** Visits a boolean value. Returns false to stop visiting. */
+  public boolean visitBoolean(String key, boolean value) {
+    return true;
+  }
+
+  /** Visits a byte value. Returns false to stop visiting. */
+  public boolean visitByte(String key, byte value) {
+    return true;
+  }
+
+  /** Visits a char value. Returns false to stop visiting. */
+  public boolean visitChar(String key, char value) {
+    return true;
+  }
+
+  /** Visits a short value. Returns false to stop visiting. */
+  public boolean visitShort(String key, short value) {
+    return true;
+  }
+
+  /** Visits an int value. Returns false to stop visiting. */
+  public boolean visitInt(String key, int value) {
+    return true;
+  }
+
+  /** Visits a long value. Returns false to stop visiting. */
+  public boolean visitLong(String key, long value) {
+    return true;
+  }
+
+  /** Visits a float value. Returns false to stop visiting. */
+  public boolean visitFloat(String key, float value) {
+    return true;
+  }
+
+  /** Visits a double value. Returns false to stop visiting. */
+  public boolean visitDouble(String key, double value) {
+    return true;
+  }
+
+  /** Visits a boolean array value. Returns false to stop visiting. */
+  public boolean visitBooleanArray(String key, boolean[] value) {
+    return true;
+  }
+
+  /** Visits a byte array value. Returns false to stop visiting. */
+  public boolean visitByteArray(String key, byte[] value) {
+    return true;
+  }
+
+  /** Visits a char array value. Returns false to stop visiting. */
+  public boolean visitCharArray(String key, char[] value) {
+    return true;
+  }
+
+  /** Visits a short array value. Returns false to stop visiting. */
+  public boolean visitShortArray(String key, short[] value) {
+    return true;
+  }
+
+  /** Visits an int array value. Returns false to stop visiting. */
+  public boolean visitIntArray(String key, int[] value) {
+    return true;
+  }
+
+  /** Visits a long array value. Returns false to stop visiting. */
+  public boolean visitLongArray(String key, long[] value) {
+    return true;
+  }
+
+  /** Visits a float array value. Returns false to stop visiting. */
+  public boolean visitFloatArray(String key, float[] value) {
+    return true;
+  }
+
+  /** Visits a double array value. Returns false to stop visiting. */
+  public boolean visitDoubleArray(String key, double[] value) {
+    return true;
+  }
+
+  /** Visits a String array value. Returns false to stop visiting. */
+  public boolean visitStringArray(String key, String[] value) {
+    return true;
+  }
+
+  /** Visits a CharSequence array value. Returns false to stop visiting. */
+  public boolean visitCharSequenceArray(String key, CharSequence[] value) {
+    return true;
+  }
+
+  /** Visits a Parcelable array value. Returns false to stop visiting. */
+  public boolean visitParcelableArray(String key, Parcelable[] value) {
+    return true;
+  }
+
+  /** Visits a String value. Returns false to stop visiting. */
+  public boolean visitString(String key, String value) {
+    return true;
+  }
+
+  /** Visits a CharSequence value that is not a String. Returns false to stop visiting. */
+  public boolean visitCharSequence(String key, CharSequence value) {
+    return true;
+  }
+
+  /** Visits a Parcelable value that is not a Bundle. Returns false to stop visiting. */
+  public boolean visitParcelable(String key, Parcelable value) {
+    return true;
+  }
+
+  /** Visits an ArrayList value, of any element type. Returns false to stop visiting. */
+  public boolean visitList(String key, List<?> value) {
+    return true;
+  }
+
+  /** Visits a SparseArray value. Returns false to stop visiting. */
+  public boolean visitSparseArray(String key, SparseArray<?> value) {
+    return true;
+  }
+
+  /** Visits any other Serializable value. Returns false to stop visiting. */
+  public boolean visitSerializable(String key, Serializable value) {
+    return true;
+  }
+
+  /** Visits a value without a more specific callback. Returns false to stop visiting. */
+  public boolean visitOther(String key, Object value) {
+    return true;
+  }
+}
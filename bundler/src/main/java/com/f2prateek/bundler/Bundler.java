@@ -19,8 +19,19 @@ package com.f2prateek.bundler;
 import android.os.Bundle;
 import android.os.Parcelable;
 import android.util.SparseArray;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Fluent API for {@link android.os.Bundle}
@@ -29,10 +40,37 @@ import java.util.ArrayList;
 public class Bundler {
 
   private final Bundle delegate;
+  private final Bundler parent;
+  /** The key of {@link #delegate} in the parent's Bundle, for nested bundlers. */
+  private final String nestedKey;
+  private MarshalledBundle marshalled;
+  private final StringPool strings;
+  private BundlerMetrics metrics;
+  /** The pending suppliers of this bundler and its nested bundlers, on the root bundler only. */
+  private List<Deferred> deferred;
+  /** The pending supplier of each key of this bundler, whose value is not in {@link #delegate}. */
+  private Map<String, Deferred> suppliers;
+  /**
+   * The Bundles this bundler copied mappings from, whose nested Bundles it shares and
+   * {@link #nest} copies first.
+   */
+  private List<Bundle> sources;
 
   /** Returns a bundler that delegates to a copy of the source bundle. */
   public static Bundler copyOf(Bundle source) {
-    return create().putAll(source);
+    BundlerMetrics metrics = BundlerMetrics.getDefault();
+    long start = metrics != null ? System.nanoTime() : 0L;
+    Bundle copy = new Bundle(source);
+    StringPool strings = StringPool.getDefault();
+    if (strings != null) {
+      strings.intern(copy);
+    }
+    if (metrics != null) {
+      metrics.copyOf(copy, start);
+    }
+    Bundler bundler = new Bundler(copy);
+    bundler.share(source);
+    return bundler;
   }
 
   /** Returns a bundler that delegates to the source bundle. */
@@ -40,6 +78,37 @@ public class Bundler {
     return new Bundler(source);
   }
 
+  /**
+   * Returns a bundler that delegates to a Bundle read from {@code buffer}, which is usually a
+   * {@link java.nio.MappedByteBuffer} of a file written by {@link #writeTo(WritableByteChannel)}.
+   * Reading starts at the buffer's position and leaves it just past the Bundle.
+   */
+  public static Bundler readFrom(ByteBuffer buffer) {
+    return readFrom(buffer, Bundler.class.getClassLoader());
+  }
+
+  /**
+   * Returns a bundler that delegates to a Bundle read from {@code buffer}, using
+   * {@code classLoader} to instantiate Parcelable and Serializable values.
+   */
+  public static Bundler readFrom(ByteBuffer buffer, ClassLoader classLoader) {
+    return new Bundler(BundleFormat.read(buffer, classLoader));
+  }
+
+  /**
+   * Sets the fields of {@code target} from the mappings of {@code source} with the same names, as
+   * inserted by {@link #putFields(Object)}. Fields without a mapping are left unchanged.
+   *
+   * @return the target object
+   * @throws IllegalArgumentException if a mapping cannot be assigned to its field, for example a
+   * String or null mapping for an int field, or if a field hides an inherited field with the same
+   * name
+   */
+  public static <T> T readFields(Bundle source, T target) {
+    FieldBinder.of(target.getClass()).read(source, target);
+    return target;
+  }
+
   /** Creates a bundler instance. */
   public static Bundler create() {
     return new Bundler(new Bundle());
@@ -47,7 +116,32 @@ public class Bundler {
 
   /** Constructs a new Bundler instance that delegates to {@code delegate}. */
   private Bundler(Bundle delegate) {
+    this(delegate, null, null);
+  }
+
+  private Bundler(Bundle delegate, Bundler parent, String nestedKey) {
     this.delegate = delegate;
+    this.parent = parent;
+    this.nestedKey = nestedKey;
+    this.strings = parent != null ? parent.strings : StringPool.getDefault();
+    this.metrics = parent != null ? parent.metrics : BundlerMetrics.getDefault();
+  }
+
+  /**
+   * Sets the metrics that receive this bundler's events, replacing the default ones installed
+   * with {@link BundlerMetrics#setDefault(BundlerMetrics)} when it was created.
+   *
+   * @param metrics a BundlerMetrics, or null to disable metrics for this bundler
+   * @return this bundler instance to chain method calls
+   */
+  public Bundler metrics(BundlerMetrics metrics) {
+    this.metrics = metrics;
+    return this;
+  }
+
+  /** Returns the metrics receiving this bundler's events, or null if there are none. */
+  BundlerMetrics metrics() {
+    return metrics;
   }
 
   /**
@@ -59,7 +153,12 @@ public class Bundler {
    * @return this bundler instance to chain method calls
    */
   public Bundler put(String key, boolean value) {
+    long start = metrics != null ? metrics.start() : 0L;
     delegate.putBoolean(key, value);
+    invalidate();
+    if (metrics != null) {
+      metrics.put(key, value, start);
+    }
     return this;
   }
 
@@ -72,7 +171,30 @@ public class Bundler {
    * @return this bundler instance to chain method calls
    */
   public Bundler put(String key, boolean[] value) {
+    long start = metrics != null ? metrics.start() : 0L;
     delegate.putBooleanArray(key, value);
+    invalidate();
+    if (metrics != null) {
+      metrics.put(key, value, start);
+    }
+    return this;
+  }
+
+  /**
+   * Inserts a FlagSet value into the mapping of the underlying Bundle as a single long array,
+   * replacing any existing value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value a FlagSet, or null
+   * @return this bundler instance to chain method calls
+   */
+  public Bundler put(String key, FlagSet value) {
+    long start = metrics != null ? metrics.start() : 0L;
+    delegate.putLongArray(key, value == null ? null : value.toLongArray());
+    invalidate();
+    if (metrics != null) {
+      metrics.put(key, value, start);
+    }
     return this;
   }
 
@@ -85,7 +207,12 @@ public class Bundler {
    * @return this bundler instance to chain method calls
    */
   public Bundler put(String key, int value) {
+    long start = metrics != null ? metrics.start() : 0L;
     delegate.putInt(key, value);
+    invalidate();
+    if (metrics != null) {
+      metrics.put(key, value, start);
+    }
     return this;
   }
 
@@ -98,7 +225,30 @@ public class Bundler {
    * @return this bundler instance to chain method calls
    */
   public Bundler put(String key, int[] value) {
+    long start = metrics != null ? metrics.start() : 0L;
     delegate.putIntArray(key, value);
+    invalidate();
+    if (metrics != null) {
+      metrics.put(key, value, start);
+    }
+    return this;
+  }
+
+  /**
+   * Inserts an IntList value into the mapping of the underlying Bundle as an int array, replacing
+   * any existing value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value an IntList, or null
+   * @return this bundler instance to chain method calls
+   */
+  public Bundler put(String key, IntList value) {
+    long start = metrics != null ? metrics.start() : 0L;
+    delegate.putIntArray(key, value == null ? null : value.toSharedArray());
+    invalidate();
+    if (metrics != null) {
+      metrics.put(key, value, start);
+    }
     return this;
   }
 
@@ -111,7 +261,12 @@ public class Bundler {
    * @return this bundler instance to chain method calls
    */
   public Bundler putIntegerArrayList(String key, ArrayList<Integer> value) {
+    long start = metrics != null ? metrics.start() : 0L;
     delegate.putIntegerArrayList(key, value);
+    invalidate();
+    if (metrics != null) {
+      metrics.put(key, value, start);
+    }
     return this;
   }
 
@@ -124,7 +279,32 @@ public class Bundler {
    * @return this bundler instance to chain method calls
    */
   public Bundler put(String key, Bundle value) {
+    long start = metrics != null ? metrics.start() : 0L;
     delegate.putBundle(key, value);
+    invalidate();
+    if (metrics != null) {
+      metrics.put(key, value, start);
+    }
+    return this;
+  }
+
+  /**
+   * Inserts a Bundle value into the mapping of the underlying Bundle as a {@link MarshalledBundle},
+   * replacing any existing value for the given key.  The value is marshalled now and only
+   * unmarshalled when read with {@link MarshalledBundle#getBundle(Bundle, String)}, so restoring
+   * the underlying Bundle does not unparcel it.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value a Bundle object, or null
+   * @return this bundler instance to chain method calls
+   */
+  public Bundler putLazy(String key, Bundle value) {
+    long start = metrics != null ? metrics.start() : 0L;
+    delegate.putParcelable(key, value == null ? null : MarshalledBundle.of(value));
+    invalidate();
+    if (metrics != null) {
+      metrics.put(key, value, start);
+    }
     return this;
   }
 
@@ -137,7 +317,12 @@ public class Bundler {
    * @return this bundler instance to chain method calls
    */
   public Bundler put(String key, byte value) {
+    long start = metrics != null ? metrics.start() : 0L;
     delegate.putByte(key, value);
+    invalidate();
+    if (metrics != null) {
+      metrics.put(key, value, start);
+    }
     return this;
   }
 
@@ -150,7 +335,12 @@ public class Bundler {
    * @return this bundler instance to chain method calls
    */
   public Bundler put(String key, byte[] value) {
+    long start = metrics != null ? metrics.start() : 0L;
     delegate.putByteArray(key, value);
+    invalidate();
+    if (metrics != null) {
+      metrics.put(key, value, start);
+    }
     return this;
   }
 
@@ -163,7 +353,12 @@ public class Bundler {
    * @return this bundler instance to chain method calls
    */
   public Bundler put(String key, String value) {
-    delegate.putString(key, value);
+    long start = metrics != null ? metrics.start() : 0L;
+    delegate.putString(key, strings != null ? strings.intern(value) : value);
+    invalidate();
+    if (metrics != null) {
+      metrics.put(key, value, start);
+    }
     return this;
   }
 
@@ -176,7 +371,12 @@ public class Bundler {
    * @return this bundler instance to chain method calls
    */
   public Bundler put(String key, String[] value) {
-    delegate.putStringArray(key, value);
+    long start = metrics != null ? metrics.start() : 0L;
+    delegate.putStringArray(key, strings != null ? strings.intern(value) : value);
+    invalidate();
+    if (metrics != null) {
+      metrics.put(key, value, start);
+    }
     return this;
   }
 
@@ -189,7 +389,12 @@ public class Bundler {
    * @return this bundler instance to chain method calls
    */
   public Bundler putStringArrayList(String key, ArrayList<String> value) {
+    long start = metrics != null ? metrics.start() : 0L;
     delegate.putStringArrayList(key, value);
+    invalidate();
+    if (metrics != null) {
+      metrics.put(key, value, start);
+    }
     return this;
   }
 
@@ -202,7 +407,12 @@ public class Bundler {
    * @return this bundler instance to chain method calls
    */
   public Bundler put(String key, long value) {
+    long start = metrics != null ? metrics.start() : 0L;
     delegate.putLong(key, value);
+    invalidate();
+    if (metrics != null) {
+      metrics.put(key, value, start);
+    }
     return this;
   }
 
@@ -215,7 +425,30 @@ public class Bundler {
    * @return this bundler instance to chain method calls
    */
   public Bundler put(String key, long[] value) {
+    long start = metrics != null ? metrics.start() : 0L;
     delegate.putLongArray(key, value);
+    invalidate();
+    if (metrics != null) {
+      metrics.put(key, value, start);
+    }
+    return this;
+  }
+
+  /**
+   * Inserts a LongList value into the mapping of the underlying Bundle as a long array, replacing
+   * any existing value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value a LongList, or null
+   * @return this bundler instance to chain method calls
+   */
+  public Bundler put(String key, LongList value) {
+    long start = metrics != null ? metrics.start() : 0L;
+    delegate.putLongArray(key, value == null ? null : value.toSharedArray());
+    invalidate();
+    if (metrics != null) {
+      metrics.put(key, value, start);
+    }
     return this;
   }
 
@@ -228,7 +461,12 @@ public class Bundler {
    * @return this bundler instance to chain method calls
    */
   public Bundler put(String key, float value) {
+    long start = metrics != null ? metrics.start() : 0L;
     delegate.putFloat(key, value);
+    invalidate();
+    if (metrics != null) {
+      metrics.put(key, value, start);
+    }
     return this;
   }
 
@@ -241,7 +479,12 @@ public class Bundler {
    * @return this bundler instance to chain method calls
    */
   public Bundler put(String key, float[] value) {
+    long start = metrics != null ? metrics.start() : 0L;
     delegate.putFloatArray(key, value);
+    invalidate();
+    if (metrics != null) {
+      metrics.put(key, value, start);
+    }
     return this;
   }
 
@@ -254,7 +497,12 @@ public class Bundler {
    * @return this bundler instance to chain method calls
    */
   public Bundler put(String key, char value) {
+    long start = metrics != null ? metrics.start() : 0L;
     delegate.putChar(key, value);
+    invalidate();
+    if (metrics != null) {
+      metrics.put(key, value, start);
+    }
     return this;
   }
 
@@ -267,7 +515,12 @@ public class Bundler {
    * @return this bundler instance to chain method calls
    */
   public Bundler put(String key, char[] value) {
+    long start = metrics != null ? metrics.start() : 0L;
     delegate.putCharArray(key, value);
+    invalidate();
+    if (metrics != null) {
+      metrics.put(key, value, start);
+    }
     return this;
   }
 
@@ -280,7 +533,12 @@ public class Bundler {
    * @return this bundler instance to chain method calls
    */
   public Bundler put(String key, CharSequence value) {
+    long start = metrics != null ? metrics.start() : 0L;
     delegate.putCharSequence(key, value);
+    invalidate();
+    if (metrics != null) {
+      metrics.put(key, value, start);
+    }
     return this;
   }
 
@@ -293,7 +551,12 @@ public class Bundler {
    * @return this bundler instance to chain method calls
    */
   public Bundler put(String key, CharSequence[] value) {
+    long start = metrics != null ? metrics.start() : 0L;
     delegate.putCharSequenceArray(key, value);
+    invalidate();
+    if (metrics != null) {
+      metrics.put(key, value, start);
+    }
     return this;
   }
 
@@ -306,7 +569,12 @@ public class Bundler {
    * @return this bundler instance to chain method calls
    */
   public Bundler putCharSequenceArrayList(String key, ArrayList<CharSequence> value) {
+    long start = metrics != null ? metrics.start() : 0L;
     delegate.putCharSequenceArrayList(key, value);
+    invalidate();
+    if (metrics != null) {
+      metrics.put(key, value, start);
+    }
     return this;
   }
 
@@ -319,7 +587,12 @@ public class Bundler {
    * @return this bundler instance to chain method calls
    */
   public Bundler put(String key, double value) {
+    long start = metrics != null ? metrics.start() : 0L;
     delegate.putDouble(key, value);
+    invalidate();
+    if (metrics != null) {
+      metrics.put(key, value, start);
+    }
     return this;
   }
 
@@ -332,7 +605,30 @@ public class Bundler {
    * @return this bundler instance to chain method calls
    */
   public Bundler put(String key, double[] value) {
+    long start = metrics != null ? metrics.start() : 0L;
     delegate.putDoubleArray(key, value);
+    invalidate();
+    if (metrics != null) {
+      metrics.put(key, value, start);
+    }
+    return this;
+  }
+
+  /**
+   * Inserts a DoubleList value into the mapping of the underlying Bundle as a double array,
+   * replacing any existing value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value a DoubleList, or null
+   * @return this bundler instance to chain method calls
+   */
+  public Bundler put(String key, DoubleList value) {
+    long start = metrics != null ? metrics.start() : 0L;
+    delegate.putDoubleArray(key, value == null ? null : value.toSharedArray());
+    invalidate();
+    if (metrics != null) {
+      metrics.put(key, value, start);
+    }
     return this;
   }
 
@@ -345,7 +641,12 @@ public class Bundler {
    * @return this bundler instance to chain method calls
    */
   public Bundler put(String key, Parcelable value) {
+    long start = metrics != null ? metrics.start() : 0L;
     delegate.putParcelable(key, value);
+    invalidate();
+    if (metrics != null) {
+      metrics.put(key, value, start);
+    }
     return this;
   }
 
@@ -359,7 +660,12 @@ public class Bundler {
    * @return this bundler instance to chain method calls
    */
   public Bundler put(String key, Parcelable[] value) {
+    long start = metrics != null ? metrics.start() : 0L;
     delegate.putParcelableArray(key, value);
+    invalidate();
+    if (metrics != null) {
+      metrics.put(key, value, start);
+    }
     return this;
   }
 
@@ -373,7 +679,12 @@ public class Bundler {
    * @return this bundler instance to chain method calls
    */
   public Bundler putParcelableArrayList(String key, ArrayList<? extends Parcelable> value) {
+    long start = metrics != null ? metrics.start() : 0L;
     delegate.putParcelableArrayList(key, value);
+    invalidate();
+    if (metrics != null) {
+      metrics.put(key, value, start);
+    }
     return this;
   }
 
@@ -387,7 +698,12 @@ public class Bundler {
    * @return this bundler instance to chain method calls
    */
   public Bundler putSparseParcelableArray(String key, SparseArray<? extends Parcelable> value) {
+    long start = metrics != null ? metrics.start() : 0L;
     delegate.putSparseParcelableArray(key, value);
+    invalidate();
+    if (metrics != null) {
+      metrics.put(key, value, start);
+    }
     return this;
   }
 
@@ -400,7 +716,12 @@ public class Bundler {
    * @return this bundler instance to chain method calls
    */
   public Bundler put(String key, short value) {
+    long start = metrics != null ? metrics.start() : 0L;
     delegate.putShort(key, value);
+    invalidate();
+    if (metrics != null) {
+      metrics.put(key, value, start);
+    }
     return this;
   }
 
@@ -413,7 +734,12 @@ public class Bundler {
    * @return this bundler instance to chain method calls
    */
   public Bundler put(String key, short[] value) {
+    long start = metrics != null ? metrics.start() : 0L;
     delegate.putShortArray(key, value);
+    invalidate();
+    if (metrics != null) {
+      metrics.put(key, value, start);
+    }
     return this;
   }
 
@@ -426,10 +752,140 @@ public class Bundler {
    * @return this bundler instance to chain method calls
    */
   public Bundler put(String key, Serializable value) {
+    long start = metrics != null ? metrics.start() : 0L;
     delegate.putSerializable(key, value);
+    invalidate();
+    if (metrics != null) {
+      metrics.put(key, value, start);
+    }
+    return this;
+  }
+
+  /**
+   * Inserts a value computed by {@code supplier} into the mapping of the underlying Bundle,
+   * replacing any existing value for the given key.  The supplier is called once, only when the
+   * Bundle is needed by {@link #get()}, {@link #copy()}, {@link #deepCopy()}, {@link #marshal()},
+   * {@link #writeTo(WritableByteChannel)} or a fragment bundler's build, and never if the key is
+   * overwritten first.  Until then the key is absent from the underlying Bundle.
+   *
+   * @param key a String, or null
+   * @param supplier a Supplier of a value of any type accepted by a Bundle
+   * @return this bundler instance to chain method calls
+   */
+  public Bundler put(String key, Supplier<?> supplier) {
+    Deferred value = new Deferred(this, key, supplier);
+    delegate.remove(key);
+    if (suppliers == null) {
+      suppliers = new HashMap<String, Deferred>();
+    }
+    suppliers.put(key, value);
+    Bundler root = root();
+    if (root.deferred == null) {
+      root.deferred = new ArrayList<Deferred>();
+    }
+    root.deferred.add(value);
+    invalidate();
     return this;
   }
 
+  /**
+   * Calls the pending suppliers inserted with {@link #put(String, Supplier)} on {@code executor},
+   * in parallel, and waits for their values.  Suppliers must then be independent of each other.
+   *
+   * @param executor the executor to call suppliers on
+   * @return this bundler instance to chain method calls
+   */
+  public Bundler evaluate(ExecutorService executor) {
+    Bundler root = root();
+    List<Deferred> pending = root.deferred;
+    if (pending == null) {
+      return this;
+    }
+    root.deferred = null;
+    List<Future<Object>> results = new ArrayList<Future<Object>>(pending.size());
+    for (final Deferred value : pending) {
+      if (value.isCurrent()) {
+        results.add(executor.submit(new Callable<Object>() {
+          @Override public Object call() {
+            return value.supplier.get();
+          }
+        }));
+      } else {
+        results.add(null);
+      }
+    }
+    List<Deferred> failed = null;
+    Throwable failure = null;
+    for (int i = 0, size = pending.size(); i < size; i++) {
+      Deferred value = pending.get(i);
+      Future<Object> result = results.get(i);
+      if (result == null) {
+        continue;
+      }
+      try {
+        Object computed = result.get();
+        if (value.isCurrent()) {
+          value.complete(computed, metrics);
+        }
+      } catch (InterruptedException e) {
+        root.restore(pending.subList(i, size));
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while evaluating suppliers.", e);
+      } catch (ExecutionException e) {
+        if (failed == null) {
+          failed = new ArrayList<Deferred>();
+          failure = e.getCause();
+        }
+        failed.add(value);
+      }
+    }
+    if (failed != null) {
+      root.restore(failed);
+      throw new IllegalStateException("Failed to evaluate supplier.", failure);
+    }
+    return this;
+  }
+
+  /**
+   * Returns a bundler that writes directly into the Bundle value for the given key, inserting a
+   * new Bundle if the key does not map to one.  Call {@link #up()} to continue with this bundler.
+   * The nested Bundle is not copied, unless this bundler shares it with a Bundle it was copied
+   * from with {@link #copyOf(Bundle)} or {@link #putAll(Bundle)}, which is never modified.
+   * Usage: {@code Bundler.create().nest("config").put("retries", 3).up().put("id", 1).get();}
+   *
+   * @param key a String, or null
+   * @return a bundler for the nested Bundle
+   */
+  public Bundler nest(String key) {
+    Bundle child = delegate.getBundle(key);
+    if (child == null) {
+      child = new Bundle();
+      delegate.putBundle(key, child);
+      invalidate();
+    } else if (isShared(key, child)) {
+      Bundle original = child;
+      child = new Bundle(original);
+      delegate.putBundle(key, child);
+      Bundler nested = new Bundler(child, this, key);
+      nested.share(original);
+      return nested;
+    }
+    return new Bundler(child, this, key);
+  }
+
+  /**
+   * Returns the bundler this one was nested from with {@link #nest(String)}.
+   *
+   * @return the parent bundler
+   * @throws IllegalStateException if this bundler is not nested
+   */
+  public Bundler up() {
+    if (parent == null) {
+      throw new IllegalStateException("Bundler is not nested.");
+    }
+    return parent;
+  }
+
   /**
    * Inserts all mappings from the given Bundle into the underlying Bundle.
    *
@@ -438,16 +894,301 @@ public class Bundler {
    */
   public Bundler putAll(Bundle bundle) {
     delegate.putAll(bundle);
+    share(bundle);
+    invalidate();
+    if (metrics != null) {
+      metrics.putAll(bundle);
+    }
+    return this;
+  }
+
+  /**
+   * Inserts all values of the given schema bundler into the underlying Bundle, without building
+   * an intermediate Bundle.
+   *
+   * @param schemaBundler a SchemaBundler
+   * @return this bundler instance to chain method calls
+   */
+  public Bundler putAll(SchemaBundler schemaBundler) {
+    schemaBundler.writeTo(delegate);
+    invalidate();
+    if (metrics != null) {
+      metrics.putAll(schemaBundler);
+    }
+    return this;
+  }
+
+  /**
+   * Makes the given layer the base of the underlying Bundle. The base is referenced, not copied,
+   * so its values are read through {@link LayeredBundle#get(Bundle, String)} and values put into
+   * this bundler take precedence over it.
+   *
+   * Plain Bundle getters only see the values put into this bundler, not those of the base. Hand
+   * {@link LayeredBundle#flatten(Bundle)} to code that reads the Bundle with plain getters.
+   *
+   * @param base a LayeredBundle
+   * @return this bundler instance to chain method calls
+   */
+  public Bundler base(LayeredBundle base) {
+    delegate.putParcelable(LayeredBundle.BASE_KEY, base);
+    invalidate();
+    return this;
+  }
+
+  /**
+   * Inserts every field of {@code source} into the mapping of the underlying Bundle, keyed by field
+   * name, replacing any existing values for those keys. Static and transient fields are skipped.
+   * The fields of a class are looked up once and cached, so this suits objects that cannot be
+   * made Parcelable, like third-party models.
+   *
+   * @param source an object whose fields hold values of types accepted by a Bundle
+   * @return this bundler instance to chain method calls
+   * @throws IllegalArgumentException if a field holds a value a Bundle cannot hold, or if a field
+   * hides an inherited field with the same name
+   */
+  public Bundler putFields(Object source) {
+    FieldBinder.of(source.getClass()).write(source, delegate);
+    invalidate();
+    return this;
+  }
+
+  /**
+   * Removes all mappings from the underlying Bundle, keeping its storage for reuse.  Any reference
+   * obtained from {@link #get()} is cleared too, so only reset bundlers whose contents were handed
+   * out with {@link #copy()}.  Metrics set with {@link #metrics(BundlerMetrics)} are replaced by
+   * the ones a new bundler would use.
+   *
+   * @return this bundler instance to chain method calls
+   */
+  public Bundler reset() {
+    delegate.clear();
+    sources = null;
+    suppliers = null;
+    if (parent == null) {
+      deferred = null;
+    }
+    metrics = parent != null ? parent.metrics : BundlerMetrics.getDefault();
+    invalidate();
     return this;
   }
 
+  /** Returns true if this bundler was returned by {@link #nest(String)}. */
+  boolean isNested() {
+    return parent != null;
+  }
+
   /** Get a reference underlying delegate. */
   public Bundle get() {
+    evaluate();
     return delegate;
   }
 
   /** Get a copy of the underlying delegate. */
   public Bundle copy() {
-    return new Bundle(delegate);
+    evaluate();
+    if (metrics == null) {
+      return new Bundle(delegate);
+    }
+    long start = System.nanoTime();
+    Bundle copy = new Bundle(delegate);
+    metrics.copy(copy, start);
+    return copy;
+  }
+
+  /**
+   * Get a deep copy of the underlying delegate.  Unlike {@link #copy()}, primitive and object
+   * arrays, ArrayLists, SparseArrays and nested Bundles are copied rather than shared, so the copy
+   * can be handed to another thread.  Immutable values and Parcelables are still shared.
+   */
+  public Bundle deepCopy() {
+    evaluate();
+    return BundleValues.deepCopy(delegate);
+  }
+
+  /**
+   * Get a deep copy of the underlying delegate, see {@link #deepCopy()}.  Values holding at least
+   * {@code threshold} elements, such as large arrays or nested Bundles, are copied on
+   * {@code executor} while the calling thread copies the rest.  The underlying delegate must not
+   * be mutated until this method returns.
+   *
+   * @param executor the executor to copy large values on
+   * @param threshold the element count from which a value is copied on the executor
+   * @return the copy
+   */
+  public Bundle deepCopy(ExecutorService executor, int threshold) {
+    evaluate();
+    Bundle copy = new Bundle(delegate.size());
+    Map<String, Future<Object>> pending = new LinkedHashMap<String, Future<Object>>();
+    for (String key : delegate.keySet()) {
+      final Object value = delegate.get(key);
+      if (BundleValues.elementCount(value) >= threshold) {
+        pending.put(key, executor.submit(new Callable<Object>() {
+          @Override public Object call() {
+            return BundleValues.deepCopy(value);
+          }
+        }));
+      } else {
+        BundleValues.put(copy, key, BundleValues.deepCopy(value));
+      }
+    }
+    try {
+      for (Map.Entry<String, Future<Object>> entry : pending.entrySet()) {
+        BundleValues.put(copy, entry.getKey(), entry.getValue().get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while copying.", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Failed to copy.", e.getCause());
+    }
+    return copy;
+  }
+
+  /**
+   * Visits the mappings of the underlying Bundle, and of nested Bundles, with {@code visitor}.
+   * Mappings of a base layer, see {@link #base(LayeredBundle)}, are visited unless this bundler
+   * replaces them.
+   *
+   * @param visitor a BundleVisitor
+   * @return true if every mapping was visited, false if the visitor stopped early
+   */
+  public boolean accept(BundleVisitor visitor) {
+    evaluate();
+    return BundleVisitor.visit(delegate, visitor);
+  }
+
+  /**
+   * Writes the underlying delegate to {@code channel}, usually a
+   * {@link java.nio.channels.FileChannel}, in a compact versioned binary format. Primitives,
+   * Strings, their arrays and lists, and nested Bundles are encoded natively; other values are
+   * stored as marshalled Parcel bytes.
+   *
+   * @param channel the channel to write to, starting at its current position
+   * @throws IOException if the channel cannot be written
+   */
+  public void writeTo(WritableByteChannel channel) throws IOException {
+    evaluate();
+    BundleFormat.write(delegate, channel);
+  }
+
+  /**
+   * Get the underlying delegate marshalled into bytes. The result is cached and reused until this
+   * bundler is mutated again; changes made to the delegate directly are not tracked.
+   */
+  public MarshalledBundle marshal() {
+    evaluate();
+    if (marshalled == null) {
+      marshalled = MarshalledBundle.of(delegate);
+    }
+    return marshalled;
+  }
+
+  /**
+   * Calls the pending suppliers inserted with {@link #put(String, Supplier)}. If a supplier
+   * throws, it and the suppliers after it stay pending.
+   */
+  private void evaluate() {
+    Bundler root = root();
+    List<Deferred> pending = root.deferred;
+    if (pending == null) {
+      return;
+    }
+    root.deferred = null;
+    int completed = 0;
+    try {
+      for (int size = pending.size(); completed < size; completed++) {
+        Deferred value = pending.get(completed);
+        if (value.isCurrent()) {
+          value.complete(value.supplier.get(), metrics);
+        }
+      }
+    } finally {
+      if (completed < pending.size()) {
+        root.restore(pending.subList(completed, pending.size()));
+      }
+    }
+  }
+
+  /**
+   * Makes {@code values} pending again, ahead of any suppliers inserted while they were being
+   * evaluated.
+   */
+  private void restore(List<Deferred> values) {
+    List<Deferred> restored = new ArrayList<Deferred>(values);
+    if (deferred != null) {
+      restored.addAll(deferred);
+    }
+    deferred = restored;
+  }
+
+  /** Records {@code source} as a Bundle whose nested Bundles this bundler now shares. */
+  private void share(Bundle source) {
+    if (sources == null) {
+      sources = new ArrayList<Bundle>(1);
+    }
+    sources.add(source);
+  }
+
+  /** Returns true if {@code child}, the value of {@code key}, is also the value in a source. */
+  private boolean isShared(String key, Bundle child) {
+    if (sources != null) {
+      for (int i = 0, size = sources.size(); i < size; i++) {
+        if (sources.get(i).get(key) == child) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /** Returns true if this bundler's Bundle is still reachable from the root bundler's Bundle. */
+  private boolean isAttached() {
+    return parent == null || (parent.delegate.get(nestedKey) == delegate && parent.isAttached());
+  }
+
+  private Bundler root() {
+    Bundler root = this;
+    while (root.parent != null) {
+      root = root.parent;
+    }
+    return root;
+  }
+
+  private void invalidate() {
+    marshalled = null;
+    if (parent != null) {
+      parent.invalidate();
+    }
+  }
+
+  /**
+   * A value to be computed by a supplier. It is only evaluated while it is still the pending
+   * supplier of its key, no value has been inserted for the key since, and its bundler's Bundle is
+   * still reachable from the root, so overwritten suppliers never run.
+   */
+  private static final class Deferred {
+    final Bundler owner;
+    final String key;
+    final Supplier<?> supplier;
+
+    Deferred(Bundler owner, String key, Supplier<?> supplier) {
+      this.owner = owner;
+      this.key = key;
+      this.supplier = supplier;
+    }
+
+    boolean isCurrent() {
+      return owner.suppliers != null && owner.suppliers.get(key) == this
+          && !owner.delegate.containsKey(key) && owner.isAttached();
+    }
+
+    void complete(Object value, BundlerMetrics metrics) {
+      long start = metrics != null ? metrics.start() : 0L;
+      BundleValues.put(owner.delegate, key, value);
+      owner.suppliers.remove(key);
+      if (metrics != null) {
+        metrics.put(key, value, start);
+      }
+    }
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+import android.os.Bundle;
+
+/**
+ * Receives events from bundlers, for example to find the screens that build heavy arguments or
+ * to trace how long building them takes. Override the callbacks of interest; the others do
+ * nothing.
+ *
+ * A metrics instance is installed for every bundler created afterwards with
+ * {@link #setDefault(BundlerMetrics)}, or for a single bundler with
+ * {@link Bundler#metrics(BundlerMetrics)}. Bundlers without metrics only pay for a null check.
+ * Sizes are rough estimates of the marshalled size in bytes, and are only computed for sampled
+ * events; primitive values are not boxed to report them. Callbacks run on the thread that used
+ * the bundler and should return quickly.
+ */
+public abstract class BundlerMetrics {
+  /** Returned by {@link #start()} for an event that is not sampled. */
+  static final long NOT_SAMPLED = Long.MIN_VALUE;
+
+  private static volatile BundlerMetrics defaultMetrics;
+
+  private final int sampleInterval;
+  private int count;
+
+  /** Returns the metrics installed for new bundlers, or null if there are none. */
+  public static BundlerMetrics getDefault() {
+    return defaultMetrics;
+  }
+
+  /** Installs {@code metrics} for bundlers created from now on, or removes them if null. */
+  public static void setDefault(BundlerMetrics metrics) {
+    defaultMetrics = metrics;
+  }
+
+  /** Creates metrics that receive every event. */
+  protected BundlerMetrics() {
+    this(1);
+  }
+
+  /**
+   * Creates metrics that receive one in every {@code sampleInterval} events. Sampling is
+   * approximate when bundlers are used from several threads.
+   */
+  protected BundlerMetrics(int sampleInterval) {
+    if (sampleInterval <= 0) {
+      throw new IllegalArgumentException("sampleInterval <= 0");
+    }
+    this.sampleInterval = sampleInterval;
+  }
+
+  /**
+   * Called after a single value is inserted.
+   *
+   * @param key the key, or null
+   * @param type the class of the value, boxed for primitives, or null for a null value
+   * @param estimatedBytes the estimated size of the mapping
+   */
+  protected void onPut(String key, Class<?> type, int estimatedBytes) {
+  }
+
+  /**
+   * Called after a single value is inserted. The default implementation calls
+   * {@link #onPut(String, Class, int)}.
+   *
+   * @param key the key, or null
+   * @param type the class of the value, boxed for primitives, or null for a null value
+   * @param estimatedBytes the estimated size of the mapping
+   * @param nanos the time the insertion took
+   */
+  protected void onPut(String key, Class<?> type, int estimatedBytes, long nanos) {
+    onPut(key, type, estimatedBytes);
+  }
+
+  /**
+   * Called after all mappings of a Bundle are inserted.
+   *
+   * @param keyCount the number of mappings inserted
+   * @param estimatedBytes the estimated size of the mappings
+   */
+  protected void onPutAll(int keyCount, int estimatedBytes) {
+  }
+
+  /**
+   * Called after a bundler's content is copied with {@link Bundler#copy()}.
+   *
+   * @param keyCount the number of mappings copied
+   * @param nanos the time the copy took
+   */
+  protected void onCopy(int keyCount, long nanos) {
+  }
+
+  /**
+   * Called after a bundler is created with {@link Bundler#copyOf(Bundle)}.
+   *
+   * @param keyCount the number of mappings copied
+   * @param nanos the time the copy took
+   */
+  protected void onCopyOf(int keyCount, long nanos) {
+  }
+
+  /**
+   * Called after a fragment bundler sets the arguments of its fragment.
+   *
+   * @param fragmentType the class of the fragment
+   * @param keyCount the number of arguments
+   * @param estimatedBytes the estimated size of the arguments
+   * @param nanos the time building took
+   */
+  protected void onBuild(Class<?> fragmentType, int keyCount, int estimatedBytes, long nanos) {
+  }
+
+  /**
+   * Decides whether the next put is sampled, before its value is inserted, and returns its start
+   * time if it is or {@link #NOT_SAMPLED} otherwise.
+   */
+  final long start() {
+    return sample() ? System.nanoTime() : NOT_SAMPLED;
+  }
+
+  final void put(String key, Object value, long start) {
+    if (start != NOT_SAMPLED) {
+      onPut(key, value == null ? null : value.getClass(),
+          BundleValues.estimatedSize(key) + BundleValues.estimatedSize(value),
+          System.nanoTime() - start);
+    }
+  }
+
+  final void put(String key, boolean value, long start) {
+    put(key, Boolean.class, 8, start);
+  }
+
+  final void put(String key, byte value, long start) {
+    put(key, Byte.class, 8, start);
+  }
+
+  final void put(String key, char value, long start) {
+    put(key, Character.class, 8, start);
+  }
+
+  final void put(String key, short value, long start) {
+    put(key, Short.class, 8, start);
+  }
+
+  final void put(String key, int value, long start) {
+    put(key, Integer.class, 8, start);
+  }
+
+  final void put(String key, long value, long start) {
+    put(key, Long.class, 12, start);
+  }
+
+  final void put(String key, float value, long start) {
+    put(key, Float.class, 8, start);
+  }
+
+  final void put(String key, double value, long start) {
+    put(key, Double.class, 12, start);
+  }
+
+  private void put(String key, Class<?> type, int valueBytes, long start) {
+    if (start != NOT_SAMPLED) {
+      onPut(key, type, BundleValues.estimatedSize(key) + valueBytes, System.nanoTime() - start);
+    }
+  }
+
+  final void putAll(Bundle bundle) {
+    if (sample()) {
+      onPutAll(bundle.size(), BundleValues.estimatedSize(bundle));
+    }
+  }
+
+  final void putAll(SchemaBundler schemaBundler) {
+    if (sample()) {
+      onPutAll(schemaBundler.size(), schemaBundler.estimatedSize());
+    }
+  }
+
+  final void copy(Bundle copy, long start) {
+    if (sample()) {
+      onCopy(copy.size(), System.nanoTime() - start);
+    }
+  }
+
+  final void copyOf(Bundle copy, long start) {
+    if (sample()) {
+      onCopyOf(copy.size(), System.nanoTime() - start);
+    }
+  }
+
+  final void build(Object fragment, Bundle arguments, long start) {
+    if (sample()) {
+      long nanos = System.nanoTime() - start;
+      onBuild(fragment.getClass(), arguments.size(), BundleValues.estimatedSize(arguments), nanos);
+    }
+  }
+
+  private boolean sample() {
+    if (sampleInterval == 1) {
+      return true;
+    }
+    if (++count < sampleInterval) {
+      return false;
+    }
+    count = 0;
+    return true;
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+/**
+ * A bounded pool of {@link Bundler} instances, for code that builds many short-lived bundles.
+ * Bundlers are reset when released, so no mappings leak from one use to the next.
+ * Usage:
+ * {@code Bundler bundler = pool.acquire(); Bundle args = bundler.put(....).copy();}
+ * {@code pool.release(bundler);}
+ */
+public final class BundlerPool {
+  private final Bundler[] pool;
+  private int size;
+
+  /** Creates a pool that holds at most {@code maxSize} idle bundlers. */
+  public BundlerPool(int maxSize) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("maxSize <= 0");
+    }
+    pool = new Bundler[maxSize];
+  }
+
+  /** Returns an idle bundler from this pool, or a new one if the pool is empty. */
+  public synchronized Bundler acquire() {
+    if (size == 0) {
+      return Bundler.create();
+    }
+    Bundler bundler = pool[--size];
+    pool[size] = null;
+    return bundler;
+  }
+
+  /**
+   * Resets {@code bundler} and returns it to this pool. The bundler must have been created with
+   * {@link Bundler#create()} or {@link #acquire()}, and no reference to its underlying Bundle may
+   * be retained, since it is cleared.
+   *
+   * @param bundler the bundler to recycle
+   * @throws IllegalArgumentException if the bundler was returned by {@link Bundler#nest(String)}
+   * @throws IllegalStateException if the bundler is already in this pool
+   */
+  public synchronized void release(Bundler bundler) {
+    if (bundler.isNested()) {
+      throw new IllegalArgumentException("Nested bundlers cannot be released.");
+    }
+    for (int i = 0; i < size; i++) {
+      if (pool[i] == bundler) {
+        throw new IllegalStateException("Bundler is already released.");
+      }
+    }
+    bundler.reset();
+    if (size < pool.length) {
+      pool[size++] = bundler;
+    }
+  }
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+import android.content.Intent;
+import android.os.Bundle;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Copies the fields of plain objects into and out of a Bundle, keyed by field name. Fields are
+ * discovered once per class, including inherited ones, and the resolved accessors are cached, so
+ * later calls only read and write the fields. Static, transient and synthetic fields are skipped.
+ * Primitive fields are accessed through their typed accessors and never boxed.
+ *
+ * A class whose fields share a name with inherited fields is rejected, as both would map to the
+ * same key. Reading a mapping that can not be assigned to its field, including a null mapping for
+ * a primitive field, throws instead of leaving the field at a default value.
+ */
+final class FieldBinder {
+  private static final ConcurrentHashMap<Class<?>, FieldBinder> BINDERS =
+      new ConcurrentHashMap<Class<?>, FieldBinder>();
+
+  private final Binding[] bindings;
+
+  /**
+   * Returns the binder for {@code type}, discovering its fields on first use.
+   *
+   * @throws IllegalArgumentException if two bound fields of {@code type} have the same name
+   */
+  static FieldBinder of(Class<?> type) {
+    FieldBinder binder = BINDERS.get(type);
+    if (binder == null) {
+      binder = new FieldBinder(type);
+      FieldBinder existing = BINDERS.putIfAbsent(type, binder);
+      if (existing != null) {
+        binder = existing;
+      }
+    }
+    return binder;
+  }
+
+  private FieldBinder(Class<?> type) {
+    List<Binding> bindings = new ArrayList<Binding>();
+    Map<String, Field> names = new HashMap<String, Field>();
+    for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+      for (Field field : c.getDeclaredFields()) {
+        int modifiers = field.getModifiers();
+        if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)
+            || field.isSynthetic()) {
+          continue;
+        }
+        Field hiding = names.put(field.getName(), field);
+        if (hiding != null) {
+          throw new IllegalArgumentException("Field " + field.getName() + " of "
+              + hiding.getDeclaringClass().getName() + " hides a field of "
+              + c.getName() + " with the same key.");
+        }
+        field.setAccessible(true);
+        bindings.add(binding(field));
+      }
+    }
+    this.bindings = bindings.toArray(new Binding[bindings.size()]);
+  }
+
+  /** Inserts the fields of {@code source} into {@code target}. */
+  void write(Object source, Bundle target) {
+    try {
+      for (Binding binding : bindings) {
+        binding.write(source, target);
+      }
+    } catch (IllegalAccessException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  /** Inserts the fields of {@code source} into the extras of {@code target}. */
+  void write(Object source, Intent target) {
+    try {
+      for (Binding binding : bindings) {
+        binding.write(source, target);
+      }
+    } catch (IllegalAccessException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  /**
+   * Sets the fields of {@code target} that have a mapping in {@code source} or its base layers,
+   * see {@link LayeredBundle}.
+   */
+  void read(Bundle source, Object target) {
+    try {
+      for (Binding binding : bindings) {
+        Bundle layer = LayeredBundle.layerOf(source, binding.key);
+        if (layer != null) {
+          binding.read(layer, target);
+        }
+      }
+    } catch (IllegalAccessException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static Binding binding(Field field) {
+    Class<?> type = field.getType();
+    if (type == boolean.class) {
+      return new BooleanBinding(field);
+    } else if (type == byte.class) {
+      return new ByteBinding(field);
+    } else if (type == char.class) {
+      return new CharBinding(field);
+    } else if (type == short.class) {
+      return new ShortBinding(field);
+    } else if (type == int.class) {
+      return new IntBinding(field);
+    } else if (type == long.class) {
+      return new LongBinding(field);
+    } else if (type == float.class) {
+      return new FloatBinding(field);
+    } else if (type == double.class) {
+      return new DoubleBinding(field);
+    }
+    return new ObjectBinding(field);
+  }
+
+  private abstract static class Binding {
+    final Field field;
+    final String key;
+
+    Binding(Field field) {
+      this.field = field;
+      this.key = field.getName();
+    }
+
+    abstract void write(Object source, Bundle target) throws IllegalAccessException;
+
+    abstract void write(Object source, Intent target) throws IllegalAccessException;
+
+    abstract void read(Bundle source, Object target) throws IllegalAccessException;
+
+    /** Returns {@code value}, or throws if it is not a {@code type}. */
+    final Object checked(Object value, Class<?> type) {
+      if (!type.isInstance(value)) {
+        throw new IllegalArgumentException("Value for key " + key + " is "
+            + (value == null ? "null" : "a " + value.getClass().getName()) + ", not a "
+            + field.getType().getName());
+      }
+      return value;
+    }
+  }
+
+  private static final class BooleanBinding extends Binding {
+    BooleanBinding(Field field) {
+      super(field);
+    }
+
+    @Override void write(Object source, Bundle target) throws IllegalAccessException {
+      target.putBoolean(key, field.getBoolean(source));
+    }
+
+    @Override void write(Object source, Intent target) throws IllegalAccessException {
+      target.putExtra(key, field.getBoolean(source));
+    }
+
+    @Override void read(Bundle source, Object target) throws IllegalAccessException {
+      field.setBoolean(target, (Boolean) checked(source.get(key), Boolean.class));
+    }
+  }
+
+  private static final class ByteBinding extends Binding {
+    ByteBinding(Field field) {
+      super(field);
+    }
+
+    @Override void write(Object source, Bundle target) throws IllegalAccessException {
+      target.putByte(key, field.getByte(source));
+    }
+
+    @Override void write(Object source, Intent target) throws IllegalAccessException {
+      target.putExtra(key, field.getByte(source));
+    }
+
+    @Override void read(Bundle source, Object target) throws IllegalAccessException {
+      field.setByte(target, (Byte) checked(source.get(key), Byte.class));
+    }
+  }
+
+  private static final class CharBinding extends Binding {
+    CharBinding(Field field) {
+      super(field);
+    }
+
+    @Override void write(Object source, Bundle target) throws IllegalAccessException {
+      target.putChar(key, field.getChar(source));
+    }
+
+    @Override void write(Object source, Intent target) throws IllegalAccessException {
+      target.putExtra(key, field.getChar(source));
+    }
+
+    @Override void read(Bundle source, Object target) throws IllegalAccessException {
+      field.setChar(target, (Character) checked(source.get(key), Character.class));
+    }
+  }
+
+  private static final class ShortBinding extends Binding {
+    ShortBinding(Field field) {
+      super(field);
+    }
+
+    @Override void write(Object source, Bundle target) throws IllegalAccessException {
+      target.putShort(key, field.getShort(source));
+    }
+
+    @Override void write(Object source, Intent target) throws IllegalAccessException {
+      target.putExtra(key, field.getShort(source));
+    }
+
+    @Override void read(Bundle source, Object target) throws IllegalAccessException {
+      field.setShort(target, (Short) checked(source.get(key), Short.class));
+    }
+  }
+
+  private static final class IntBinding extends Binding {
+    IntBinding(Field field) {
+      super(field);
+    }
+
+    @Override void write(Object source, Bundle target) throws IllegalAccessException {
+      target.putInt(key, field.getInt(source));
+    }
+
+    @Override void write(Object source, Intent target) throws IllegalAccessException {
+      target.putExtra(key, field.getInt(source));
+    }
+
+    @Override void read(Bundle source, Object target) throws IllegalAccessException {
+      field.setInt(target, (Integer) checked(source.get(key), Integer.class));
+    }
+  }
+
+  private static final class LongBinding extends Binding {
+    LongBinding(Field field) {
+      super(field);
+    }
+
+    @Override void write(Object source, Bundle target) throws IllegalAccessException {
+      target.putLong(key, field.getLong(source));
+    }
+
+    @Override void write(Object source, Intent target) throws IllegalAccessException {
+      target.putExtra(key, field.getLong(source));
+    }
+
+    @Override void read(Bundle source, Object target) throws IllegalAccessException {
+      field.setLong(target, (Long) checked(source.get(key), Long.class));
+    }
+  }
+
+  private static final class FloatBinding extends Binding {
+    FloatBinding(Field field) {
+      super(field);
+    }
+
+    @Override void write(Object source, Bundle target) throws IllegalAccessException {
+      target.putFloat(key, field.getFloat(source));
+    }
+
+    @Override void write(Object source, Intent target) throws IllegalAccessException {
+      target.putExtra(key, field.getFloat(source));
+    }
+
+    @Override void read(Bundle source, Object target) throws IllegalAccessException {
+      field.setFloat(target, (Float) checked(source.get(key), Float.class));
+    }
+  }
+
+  private static final class DoubleBinding extends Binding {
+    DoubleBinding(Field field) {
+      super(field);
+    }
+
+    @Override void write(Object source, Bundle target) throws IllegalAccessException {
+      target.putDouble(key, field.getDouble(source));
+    }
+
+    @Override void write(Object source, Intent target) throws IllegalAccessException {
+      target.putExtra(key, field.getDouble(source));
+    }
+
+    @Override void read(Bundle source, Object target) throws IllegalAccessException {
+      field.setDouble(target, (Double) checked(source.get(key), Double.class));
+    }
+  }
+
+  private static final class ObjectBinding extends Binding {
+    ObjectBinding(Field field) {
+      super(field);
+    }
+
+    @Override void write(Object source, Bundle target) throws IllegalAccessException {
+      BundleValues.put(target, key, field.get(source));
+    }
+
+    @Override void write(Object source, Intent target) throws IllegalAccessException {
+      BundleValues.putExtra(target, key, field.get(source));
+    }
+
+    @Override void read(Bundle source, Object target) throws IllegalAccessException {
+      Object value = source.get(key);
+      field.set(target, value == null ? null : checked(value, field.getType()));
+    }
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An ordered declaration of boolean flag names. Each flag is assigned a bit, so a
+ * {@link FlagSet} of this schema is stored as a single long array under one key.
+ * Usage: {@code FlagSchema schema = FlagSchema.of("show_header", "show_footer");}
+ */
+public final class FlagSchema {
+  private final String[] names;
+  private final Map<String, Integer> indices;
+
+  /**
+   * Returns a schema declaring the given flags. A flag's bit is its position in {@code names}, so
+   * new flags should only be appended to keep previously stored sets readable.
+   *
+   * @param names the flag names, which must be non-null and distinct
+   * @return the schema
+   */
+  public static FlagSchema of(String... names) {
+    Map<String, Integer> indices = new HashMap<String, Integer>(names.length * 2);
+    for (int i = 0; i < names.length; i++) {
+      if (names[i] == null) {
+        throw new IllegalArgumentException("Flag name must not be null.");
+      }
+      if (indices.put(names[i], i) != null) {
+        throw new IllegalArgumentException("Duplicate flag name: " + names[i]);
+      }
+    }
+    return new FlagSchema(names.clone(), indices);
+  }
+
+  private FlagSchema(String[] names, Map<String, Integer> indices) {
+    this.names = names;
+    this.indices = indices;
+  }
+
+  /** Returns the number of flags declared by this schema. */
+  public int size() {
+    return names.length;
+  }
+
+  /** Returns the bit index of the flag {@code name}. */
+  public int indexOf(String name) {
+    Integer index = indices.get(name);
+    if (index == null) {
+      throw new IllegalArgumentException("Unknown flag: " + name);
+    }
+    return index;
+  }
+
+  /** Returns the name of the flag at bit {@code index}. */
+  public String nameAt(int index) {
+    return names[index];
+  }
+
+  /** Number of longs needed to hold one bit per flag. */
+  int wordCount() {
+    return (names.length + 63) >>> 6;
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+import android.os.Bundle;
+import java.util.Arrays;
+
+/**
+ * A set of boolean flags declared by a {@link FlagSchema}, packed into the bits of a long array.
+ * Usage:
+ * {@code Bundler.create().put("flags", FlagSet.create(schema).set("show_header", true)).get();}
+ */
+public final class FlagSet {
+  private final FlagSchema schema;
+  private final long[] words;
+
+  /** Returns a flag set for {@code schema} with every flag cleared. */
+  public static FlagSet create(FlagSchema schema) {
+    return new FlagSet(schema, new long[schema.wordCount()]);
+  }
+
+  /**
+   * Returns the flag set stored under {@code key} in {@code bundle}, or a set with every flag
+   * cleared if there is no mapping. Flags missing from the stored value, such as those appended
+   * to the schema after it was written, read as false.
+   *
+   * @param schema the schema the set was written with
+   * @param bundle a Bundle
+   * @param key a String, or null
+   * @return the flag set
+   */
+  public static FlagSet of(FlagSchema schema, Bundle bundle, String key) {
+    long[] stored = bundle.getLongArray(key);
+    if (stored == null) {
+      return create(schema);
+    }
+    return new FlagSet(schema, Arrays.copyOf(stored, schema.wordCount()));
+  }
+
+  private FlagSet(FlagSchema schema, long[] words) {
+    this.schema = schema;
+    this.words = words;
+  }
+
+  /** Returns the schema declaring these flags. */
+  public FlagSchema schema() {
+    return schema;
+  }
+
+  /**
+   * Sets the flag {@code name} to {@code value}.
+   *
+   * @param name a flag declared by the schema
+   * @param value the flag value
+   * @return this flag set to chain method calls
+   */
+  public FlagSet set(String name, boolean value) {
+    return set(schema.indexOf(name), value);
+  }
+
+  /**
+   * Sets the flag at bit {@code index} to {@code value}.
+   *
+   * @param index a bit index, as returned by {@link FlagSchema#indexOf(String)}
+   * @param value the flag value
+   * @return this flag set to chain method calls
+   */
+  public FlagSet set(int index, boolean value) {
+    checkIndex(index);
+    if (value) {
+      words[index >>> 6] |= 1L << index;
+    } else {
+      words[index >>> 6] &= ~(1L << index);
+    }
+    return this;
+  }
+
+  /** Returns the value of the flag {@code name}. */
+  public boolean get(String name) {
+    return get(schema.indexOf(name));
+  }
+
+  /** Returns the value of the flag at bit {@code index}. */
+  public boolean get(int index) {
+    checkIndex(index);
+    return (words[index >>> 6] & (1L << index)) != 0;
+  }
+
+  /** Returns a copy of the packed bits, as stored in a Bundle. */
+  public long[] toLongArray() {
+    return words.clone();
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= schema.size()) {
+      throw new IndexOutOfBoundsException("Flag index " + index + " out of range.");
+    }
+  }
+
+  @Override public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof FlagSet)) {
+      return false;
+    }
+    FlagSet other = (FlagSet) o;
+    return schema == other.schema && Arrays.equals(words, other.words);
+  }
+
+  @Override public int hashCode() {
+    return Arrays.hashCode(words);
+  }
+}
@@ -6,6 +6,9 @@ import android.os.Parcelable;
 import android.util.SparseArray;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 /**
  * A Bundler that can create and set Bundle arguments to Fragments
@@ -15,8 +18,10 @@ import java.util.ArrayList;
  * @param <F> The fragment type you're bundling to.
  */
 public class FragmentBundler<F extends Fragment> {
-  private final F fragment;
+  private F fragment;
   private final Bundler bundler = Bundler.create();
+  /** The registry tokens put with {@link #putReference}, by the key they were put under. */
+  private LinkedHashMap<String, String> tokens;
 
   private FragmentBundler(F fragment) {
     this.fragment = fragment;
@@ -48,16 +53,82 @@ public class FragmentBundler<F extends Fragment> {
     }
   }
 
+  /**
+   * Clears this bundler's content and points it at another fragment instance, so the bundler and
+   * its storage can be reused for the next fragment instead of being reallocated.
+   *
+   * @param fragment the fragment instance
+   * @return this bundler instance to chain method calls
+   */
+  public FragmentBundler<F> reset(F fragment) {
+    this.fragment = fragment;
+    bundler.reset();
+    if (tokens != null) {
+      ArgumentRegistry registry = ArgumentRegistry.getDefault();
+      for (String token : tokens.values()) {
+        registry.discard(token);
+      }
+      tokens = null;
+    }
+    return this;
+  }
+
   /**
    * Sets this bundle's contents to the fragment arguments and returns the fragment.
    *
    * @return the fragment with this bundler's content set as arguments
    */
   public F build() {
-    fragment.setArguments(bundler.copy());
+    BundlerMetrics metrics = bundler.metrics();
+    long start = metrics != null ? System.nanoTime() : 0L;
+    Bundle arguments = new Bundle(bundler.get());
+    if (tokens != null) {
+      ArgumentRegistry.getDefault().retain(arguments, tokens);
+    }
+    fragment.setArguments(arguments);
+    if (metrics != null) {
+      metrics.build(fragment, arguments, start);
+    }
     return fragment;
   }
 
+  /**
+   * Sets the metrics that receive this bundler's events, including {@link #build()}, see
+   * {@link Bundler#metrics(BundlerMetrics)}.
+   *
+   * @param metrics a BundlerMetrics, or null to disable metrics for this bundler
+   * @return this bundler instance to chain method calls
+   */
+  public FragmentBundler<F> metrics(BundlerMetrics metrics) {
+    bundler.metrics(metrics);
+    return this;
+  }
+
+  /**
+   * Merges this bundler's content into the arguments of a fragment that was built earlier, so a
+   * visible fragment can be refreshed without creating and swapping in a new instance. Values
+   * equal to the current arguments are left alone; arrays and nested Bundles are compared by
+   * content. Values put with {@link #putReference(String, Object)} are retained for the fragment
+   * only once, however often it is updated.
+   *
+   * @param fragment the fragment instance to update
+   * @return the keys whose values were added or changed, for re-rendering only what changed
+   * @throws IllegalStateException if the fragment has no arguments, since arguments cannot be set
+   * once a fragment is active
+   */
+  public Set<String> update(F fragment) {
+    Bundle arguments = fragment.getArguments();
+    if (arguments == null) {
+      throw new IllegalStateException(
+          "Fragment has no arguments to update. Build it with build() before updating it.");
+    }
+    Set<String> changed = BundleValues.update(arguments, bundler.get());
+    if (tokens != null) {
+      ArgumentRegistry.getDefault().retain(arguments, tokens);
+    }
+    return changed;
+  }
+
   /**
    * Inserts a Boolean value into the mapping of the underlying Bundle, replacing
    * any existing value for the given key.  Either key or value may be null.
@@ -84,6 +155,19 @@ public class FragmentBundler<F extends Fragment> {
     return this;
   }
 
+  /**
+   * Inserts a FlagSet value into the mapping of the underlying Bundle as a single long array,
+   * replacing any existing value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value a FlagSet, or null
+   * @return this bundler instance to chain method calls
+   */
+  public FragmentBundler<F> put(String key, FlagSet value) {
+    bundler.put(key, value);
+    return this;
+  }
+
   /**
    * Inserts an int value into the mapping of the underlying Bundle, replacing
    * any existing value for the given key.
@@ -110,6 +194,19 @@ public class FragmentBundler<F extends Fragment> {
     return this;
   }
 
+  /**
+   * Inserts an IntList value into the mapping of the underlying Bundle as an int array, replacing
+   * any existing value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value an IntList, or null
+   * @return this bundler instance to chain method calls
+   */
+  public FragmentBundler<F> put(String key, IntList value) {
+    bundler.put(key, value);
+    return this;
+  }
+
   /**
    * Inserts an ArrayList<Integer> value into the mapping of the underlying Bundle, replacing
    * any existing value for the given key.  Either key or value may be null.
@@ -136,6 +233,20 @@ public class FragmentBundler<F extends Fragment> {
     return this;
   }
 
+  /**
+   * Inserts a Bundle value into the mapping of the underlying Bundle as a {@link MarshalledBundle},
+   * replacing any existing value for the given key.  The value is only unmarshalled when read
+   * with {@link MarshalledBundle#getBundle(Bundle, String)}.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value a Bundle object, or null
+   * @return this bundler instance to chain method calls
+   */
+  public FragmentBundler<F> putLazy(String key, Bundle value) {
+    bundler.putLazy(key, value);
+    return this;
+  }
+
   /**
    * Inserts a byte value into the mapping of the underlying Bundle, replacing
    * any existing value for the given key.
@@ -227,6 +338,19 @@ public class FragmentBundler<F extends Fragment> {
     return this;
   }
 
+  /**
+   * Inserts a LongList value into the mapping of the underlying Bundle as a long array, replacing
+   * any existing value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value a LongList, or null
+   * @return this bundler instance to chain method calls
+   */
+  public FragmentBundler<F> put(String key, LongList value) {
+    bundler.put(key, value);
+    return this;
+  }
+
   /**
    * Inserts a float value into the mapping of the underlying Bundle, replacing
    * any existing value for the given key.
@@ -344,6 +468,19 @@ public class FragmentBundler<F extends Fragment> {
     return this;
   }
 
+  /**
+   * Inserts a DoubleList value into the mapping of the underlying Bundle as a double array,
+   * replacing any existing value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value a DoubleList, or null
+   * @return this bundler instance to chain method calls
+   */
+  public FragmentBundler<F> put(String key, DoubleList value) {
+    bundler.put(key, value);
+    return this;
+  }
+
   /**
    * Inserts a Parcelable value into the mapping of the underlying Bundle, replacing
    * any existing value for the given key.  Either key or value may be null.
@@ -440,6 +577,78 @@ public class FragmentBundler<F extends Fragment> {
     return this;
   }
 
+  /**
+   * Inserts a value computed by {@code supplier} into the mapping of the underlying Bundle,
+   * replacing any existing value for the given key.  The supplier is called once, by
+   * {@link #build()} or {@link #update}, and never if the key is overwritten first.
+   *
+   * @param key a String, or null
+   * @param supplier a Supplier of a value of any type accepted by a Bundle
+   * @return this bundler instance to chain method calls
+   */
+  public FragmentBundler<F> put(String key, Supplier<?> supplier) {
+    bundler.put(key, supplier);
+    return this;
+  }
+
+  /**
+   * Calls the pending suppliers on {@code executor}, in parallel, see
+   * {@link Bundler#evaluate(ExecutorService)}.
+   *
+   * @param executor the executor to call suppliers on
+   * @return this bundler instance to chain method calls
+   */
+  public FragmentBundler<F> evaluate(ExecutorService executor) {
+    bundler.evaluate(executor);
+    return this;
+  }
+
+  /**
+   * Registers a value with the default {@link ArgumentRegistry} and inserts its token into the
+   * mapping of the underlying Bundle, replacing any existing value for the given key.  The value
+   * itself never goes through the Bundle; read it back with
+   * {@link ArgumentRegistry#resolve(Bundle, String)} and call
+   * {@link ArgumentRegistry#release(Bundle)} once the fragment is destroyed.  The value counts as
+   * referenced until the fragment is built, and is discarded if this bundler is reset before
+   * building or the key is overwritten; like any referenced value, it may be evicted when the
+   * registry is full.
+   * Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value an Object, or null
+   * @return this bundler instance to chain method calls
+   */
+  public FragmentBundler<F> putReference(String key, Object value) {
+    ArgumentRegistry registry = ArgumentRegistry.getDefault();
+    String previous = tokens == null ? null : tokens.remove(key);
+    if (previous != null) {
+      registry.discard(previous);
+    }
+    if (value == null) {
+      bundler.put(key, (String) null);
+      return this;
+    }
+    String token = registry.register(value, true);
+    if (tokens == null) {
+      tokens = new LinkedHashMap<String, String>();
+    }
+    tokens.put(key, token);
+    bundler.put(key, token);
+    return this;
+  }
+
+  /**
+   * Inserts every field of {@code source} into the mapping of the underlying Bundle, keyed by field
+   * name, see {@link Bundler#putFields(Object)}.
+   *
+   * @param source an object whose fields hold values of types accepted by a Bundle
+   * @return this bundler instance to chain method calls
+   */
+  public FragmentBundler<F> putFields(Object source) {
+    bundler.putFields(source);
+    return this;
+  }
+
   /**
    * Inserts all mappings from the given Bundle into the underlying Bundle.
    *
@@ -450,4 +659,36 @@ public class FragmentBundler<F extends Fragment> {
     bundler.putAll(bundle);
     return this;
   }
+
+  /**
+   * Inserts all values of the given schema bundler into the underlying Bundle.
+   *
+   * @param schemaBundler a SchemaBundler
+   * @return this bundler instance to chain method calls
+   */
+  public FragmentBundler<F> putAll(SchemaBundler schemaBundler) {
+    bundler.putAll(schemaBundler);
+    return this;
+  }
+
+  /**
+   * Makes the given layer the base of the fragment arguments, see
+   * {@link Bundler#base(LayeredBundle)}. Fragments built on the same base share it instead of
+   * each holding a copy of its values.
+   *
+   * Values of the base are not visible to the plain getters of the arguments:
+   * {@code getArguments().getString("env")} returns null when "env" is only in the base. The
+   * fragment must read them with {@link LayeredBundle#get(Bundle, String)},
+   * {@link Bundler#readFields(Bundle, Object)} or {@link BundleProjection}, or pass
+   * {@link LayeredBundle#flatten(Bundle)} to code that uses plain getters. The base is also saved
+   * with the arguments of every fragment built on it, so only use a base that is small next to the
+   * number of fragments sharing it.
+   *
+   * @param base a LayeredBundle
+   * @return this bundler instance to chain method calls
+   */
+  public FragmentBundler<F> base(LayeredBundle base) {
+    bundler.base(base);
+    return this;
+  }
 }
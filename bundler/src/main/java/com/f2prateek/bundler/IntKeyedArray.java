@@ -0,0 +1,285 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+import android.os.Bundle;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.util.SparseArray;
+import java.util.Arrays;
+
+/**
+ * A mapping from int keys, such as list positions, to Parcelable values, stored as a sorted int
+ * array and a parallel value array. Appending keys in ascending order is O(1) and lookups are a
+ * binary search. When every value has the same class, its name is written to a Parcel once rather
+ * than once per value, as it is for a SparseArray.
+ * Usage: {@code Bundler.create().put("rows", IntKeyedArray.create().append(3, state)).get();}
+ *
+ * @param <T> the type of the values
+ */
+public final class IntKeyedArray<T extends Parcelable> implements Parcelable {
+  private static final int[] EMPTY_KEYS = new int[0];
+  private static final Object[] EMPTY_VALUES = new Object[0];
+
+  private int[] keys;
+  private Object[] values;
+  private int size;
+
+  /** Returns an empty instance. */
+  public static <T extends Parcelable> IntKeyedArray<T> create() {
+    return new IntKeyedArray<T>(EMPTY_KEYS, EMPTY_VALUES, 0);
+  }
+
+  /** Returns an empty instance with room for {@code capacity} mappings before it grows. */
+  public static <T extends Parcelable> IntKeyedArray<T> create(int capacity) {
+    if (capacity < 0) {
+      throw new IllegalArgumentException("capacity < 0");
+    }
+    return new IntKeyedArray<T>(new int[capacity], new Object[capacity], 0);
+  }
+
+  /**
+   * Returns the instance stored under {@code key} in {@code bundle}, or null if there is none.
+   *
+   * @param bundle a Bundle
+   * @param key a String, or null
+   * @return the instance, or null
+   */
+  @SuppressWarnings("unchecked")
+  public static <T extends Parcelable> IntKeyedArray<T> of(Bundle bundle, String key) {
+    Parcelable value = bundle.getParcelable(key);
+    return value instanceof IntKeyedArray ? (IntKeyedArray<T>) value : null;
+  }
+
+  private IntKeyedArray(int[] keys, Object[] values, int size) {
+    this.keys = keys;
+    this.values = values;
+    this.size = size;
+  }
+
+  /**
+   * Maps {@code key} to {@code value}. This is O(1) when {@code key} is greater than every key
+   * in this instance, and falls back to {@link #put(int, Parcelable)} otherwise.
+   *
+   * @param key an int
+   * @param value a Parcelable, or null
+   * @return this instance to chain method calls
+   */
+  public IntKeyedArray<T> append(int key, T value) {
+    if (size > 0 && key <= keys[size - 1]) {
+      return put(key, value);
+    }
+    ensureCapacity(size + 1);
+    keys[size] = key;
+    values[size] = value;
+    size++;
+    return this;
+  }
+
+  /**
+   * Maps each of {@code keys} to the value at the same index of {@code values}. The keys must be
+   * ascending and greater than every key in this instance, as positions saved in order are; they
+   * are then copied in bulk.
+   *
+   * @param keys ascending int keys
+   * @param values the values for the keys
+   * @return this instance to chain method calls
+   * @throws IllegalArgumentException if the arrays differ in length or the keys are out of order
+   */
+  public IntKeyedArray<T> appendAll(int[] keys, T[] values) {
+    if (keys.length != values.length) {
+      throw new IllegalArgumentException("Keys and values must have the same length.");
+    }
+    boolean bounded = size > 0;
+    int previous = bounded ? this.keys[size - 1] : 0;
+    for (int key : keys) {
+      if (bounded && key <= previous) {
+        throw new IllegalArgumentException(
+            "Keys must be ascending and greater than existing keys, found " + key);
+      }
+      bounded = true;
+      previous = key;
+    }
+    ensureCapacity(size + keys.length);
+    System.arraycopy(keys, 0, this.keys, size, keys.length);
+    System.arraycopy(values, 0, this.values, size, values.length);
+    size += keys.length;
+    return this;
+  }
+
+  /**
+   * Maps {@code key} to {@code value}, replacing any existing value for the key.
+   *
+   * @param key an int
+   * @param value a Parcelable, or null
+   * @return this instance to chain method calls
+   */
+  public IntKeyedArray<T> put(int key, T value) {
+    int index = Arrays.binarySearch(keys, 0, size, key);
+    if (index >= 0) {
+      values[index] = value;
+      return this;
+    }
+    index = ~index;
+    ensureCapacity(size + 1);
+    System.arraycopy(keys, index, keys, index + 1, size - index);
+    System.arraycopy(values, index, values, index + 1, size - index);
+    keys[index] = key;
+    values[index] = value;
+    size++;
+    return this;
+  }
+
+  /** Returns the value for {@code key}, or null if there is none. */
+  public T get(int key) {
+    int index = indexOfKey(key);
+    return index < 0 ? null : valueAt(index);
+  }
+
+  /** Returns the index of {@code key}, or a negative number if there is no mapping for it. */
+  public int indexOfKey(int key) {
+    return Arrays.binarySearch(keys, 0, size, key);
+  }
+
+  /** Returns the number of mappings. */
+  public int size() {
+    return size;
+  }
+
+  /** Returns the key of the mapping at {@code index}, in ascending key order. */
+  public int keyAt(int index) {
+    checkIndex(index);
+    return keys[index];
+  }
+
+  /** Returns the value of the mapping at {@code index}, in ascending key order. */
+  @SuppressWarnings("unchecked")
+  public T valueAt(int index) {
+    checkIndex(index);
+    return (T) values[index];
+  }
+
+  /** Returns a new SparseArray holding the mappings of this instance. */
+  public SparseArray<T> toSparseArray() {
+    SparseArray<T> array = new SparseArray<T>(size);
+    for (int i = 0; i < size; i++) {
+      array.append(keys[i], valueAt(i));
+    }
+    return array;
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity > keys.length) {
+      int newCapacity = Math.max(capacity, Math.max(8, keys.length + (keys.length >> 1)));
+      keys = Arrays.copyOf(keys, newCapacity);
+      values = Arrays.copyOf(values, newCapacity);
+    }
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+    }
+  }
+
+  /** Returns the class shared by every value, or null if they differ or any is null. */
+  private Class<?> valueClass() {
+    if (size == 0 || values[0] == null) {
+      return null;
+    }
+    Class<?> type = values[0].getClass();
+    for (int i = 1; i < size; i++) {
+      if (values[i] == null || values[i].getClass() != type) {
+        return null;
+      }
+    }
+    return type;
+  }
+
+  @Override public int describeContents() {
+    int contents = 0;
+    for (int i = 0; i < size; i++) {
+      if (values[i] != null) {
+        contents |= ((Parcelable) values[i]).describeContents();
+      }
+    }
+    return contents;
+  }
+
+  @Override public void writeToParcel(Parcel dest, int flags) {
+    dest.writeInt(size);
+    for (int i = 0; i < size; i++) {
+      dest.writeInt(keys[i]);
+    }
+    Class<?> type = valueClass();
+    dest.writeString(type == null ? null : type.getName());
+    for (int i = 0; i < size; i++) {
+      if (type != null) {
+        ((Parcelable) values[i]).writeToParcel(dest, flags);
+      } else {
+        dest.writeParcelable((Parcelable) values[i], flags);
+      }
+    }
+  }
+
+  /**
+   * Reads values with the class loader of the enclosing Bundle when the platform passes one, as
+   * {@link Parcel#readParcelable(ClassLoader)} does, and with this library's loader otherwise.
+   */
+  public static final ClassLoaderCreator<IntKeyedArray<?>> CREATOR =
+      new ClassLoaderCreator<IntKeyedArray<?>>() {
+    @Override public IntKeyedArray<?> createFromParcel(Parcel source) {
+      return createFromParcel(source, null);
+    }
+
+    @Override public IntKeyedArray<?> createFromParcel(Parcel source, ClassLoader classLoader) {
+      if (classLoader == null) {
+        classLoader = IntKeyedArray.class.getClassLoader();
+      }
+      int size = source.readInt();
+      int[] keys = new int[size];
+      for (int i = 0; i < size; i++) {
+        keys[i] = source.readInt();
+      }
+      String type = source.readString();
+      Creator<?> creator = type == null ? null : creator(type, classLoader);
+      Object[] values = new Object[size];
+      for (int i = 0; i < size; i++) {
+        if (creator instanceof ClassLoaderCreator) {
+          values[i] = ((ClassLoaderCreator<?>) creator).createFromParcel(source, classLoader);
+        } else if (creator != null) {
+          values[i] = creator.createFromParcel(source);
+        } else {
+          values[i] = source.readParcelable(classLoader);
+        }
+      }
+      return new IntKeyedArray<Parcelable>(keys, values, size);
+    }
+
+    @Override public IntKeyedArray<?>[] newArray(int size) {
+      return new IntKeyedArray<?>[size];
+    }
+  };
+
+  private static Creator<?> creator(String type, ClassLoader classLoader) {
+    try {
+      return (Creator<?>) Class.forName(type, true, classLoader).getField("CREATOR").get(null);
+    } catch (Exception e) {
+      throw new IllegalStateException("Unable to find CREATOR for " + type, e);
+    }
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+import android.os.Bundle;
+import java.util.Arrays;
+
+/**
+ * A growable list of {@code int} values that never boxes its elements, stored in a Bundle as a
+ * {@code int} array. Reading one back with {@link #of(Bundle, String)} wraps the stored array
+ * without copying it.
+ * Usage: {@code Bundler.create().put("ids", IntList.create().add(1).add(2)).get();}
+ */
+public final class IntList {
+  private static final int[] EMPTY = new int[0];
+
+  private int[] elements;
+  private int size;
+  /** Whether a bundler stores {@link #elements}, which must then be copied before a change. */
+  private boolean shared;
+
+  /** Returns an empty list. */
+  public static IntList create() {
+    return new IntList(EMPTY, 0);
+  }
+
+  /** Returns an empty list with room for {@code capacity} elements before it grows. */
+  public static IntList create(int capacity) {
+    if (capacity < 0) {
+      throw new IllegalArgumentException("capacity < 0");
+    }
+    return new IntList(new int[capacity], 0);
+  }
+
+  /**
+   * Returns a list backed by {@code elements}, without copying them. Changes made with
+   * {@link #set(int, int)} write through to the array until the list grows
+   * or is inserted into a bundler.
+   */
+  public static IntList wrap(int[] elements) {
+    return new IntList(elements, elements.length);
+  }
+
+  /**
+   * Returns a list backed by the array stored under {@code key} in {@code bundle}, without copying
+   * it, or null if there is no mapping.
+   *
+   * @param bundle a Bundle
+   * @param key a String, or null
+   * @return the list, or null
+   */
+  public static IntList of(Bundle bundle, String key) {
+    int[] stored = bundle.getIntArray(key);
+    return stored == null ? null : wrap(stored);
+  }
+
+  private IntList(int[] elements, int size) {
+    this.elements = elements;
+    this.size = size;
+  }
+
+  /**
+   * Appends {@code value} to the end of this list.
+   *
+   * @param value the value to append
+   * @return this list to chain method calls
+   */
+  public IntList add(int value) {
+    if (size == elements.length) {
+      elements = Arrays.copyOf(elements, Math.max(8, size + (size >> 1)));
+      shared = false;
+    }
+    elements[size++] = value;
+    return this;
+  }
+
+  /** Returns the element at {@code index}. */
+  public int get(int index) {
+    checkIndex(index);
+    return elements[index];
+  }
+
+  /**
+   * Replaces the element at {@code index} with {@code value}.
+   *
+   * @param index the index of the element to replace
+   * @param value the new value
+   * @return this list to chain method calls
+   */
+  public IntList set(int index, int value) {
+    checkIndex(index);
+    if (shared) {
+      elements = elements.clone();
+      shared = false;
+    }
+    elements[index] = value;
+    return this;
+  }
+
+  /** Returns the number of elements in this list. */
+  public int size() {
+    return size;
+  }
+
+  /** Returns a new array holding the elements of this list. */
+  public int[] toArray() {
+    return Arrays.copyOf(elements, size);
+  }
+
+  /**
+   * Returns an array holding the elements of this list for a bundler to store. When the list is
+   * exactly full this is the backing array itself, which the list then copies before its next
+   * change.
+   */
+  int[] toSharedArray() {
+    if (size != elements.length) {
+      return toArray();
+    }
+    shared = true;
+    return elements;
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+    }
+  }
+
+  @Override public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof IntList)) {
+      return false;
+    }
+    IntList other = (IntList) o;
+    if (size != other.size) {
+      return false;
+    }
+    for (int i = 0; i < size; i++) {
+      if (elements[i] != other.elements[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override public int hashCode() {
+    int result = 1;
+    for (int i = 0; i < size; i++) {
+      result = 31 * result + elements[i];
+    }
+    return result;
+  }
+
+  @Override public String toString() {
+    return Arrays.toString(toArray());
+  }
+}
@@ -0,0 +1,530 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Parcelable;
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * A Bundler that writes extras directly into an Intent, without building a separate Bundle and
+ * copying it in with {@link Intent#putExtras(Bundle)}.
+ *
+ * Usage: {@code Intent intent = IntentBundler.create(context, FooActivity.class).put(....).get();}
+ */
+public class IntentBundler {
+  private final Intent intent;
+
+  private IntentBundler(Intent intent) {
+    this.intent = intent;
+  }
+
+  /**
+   * Constructs an IntentBundler that writes into the provided Intent
+   *
+   * @param intent the intent instance
+   * @return this bundler instance to chain method calls
+   */
+  public static IntentBundler of(Intent intent) {
+    return new IntentBundler(intent);
+  }
+
+  /**
+   * Constructs an IntentBundler for a new Intent for the provided component class
+   *
+   * @param context a Context of the application package implementing the class
+   * @param klass the component class
+   * @return this bundler instance to chain method calls
+   */
+  public static IntentBundler create(Context context, Class<?> klass) {
+    return of(new Intent(context, klass));
+  }
+
+  /** Get a reference to the underlying intent. */
+  public Intent get() {
+    return intent;
+  }
+
+  /**
+   * Inserts a Boolean value into the extras of the underlying Intent, replacing
+   * any existing value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value a Boolean, or null
+   * @return this bundler instance to chain method calls
+   */
+  public IntentBundler put(String key, boolean value) {
+    intent.putExtra(key, value);
+    return this;
+  }
+
+  /**
+   * Inserts a boolean array value into the extras of the underlying Intent, replacing
+   * any existing value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value a boolean array object, or null
+   * @return this bundler instance to chain method calls
+   */
+  public IntentBundler put(String key, boolean[] value) {
+    intent.putExtra(key, value);
+    return this;
+  }
+
+  /**
+   * Inserts a FlagSet value into the extras of the underlying Intent as a single long array,
+   * replacing any existing value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value a FlagSet, or null
+   * @return this bundler instance to chain method calls
+   */
+  public IntentBundler put(String key, FlagSet value) {
+    intent.putExtra(key, value == null ? null : value.toLongArray());
+    return this;
+  }
+
+  /**
+   * Inserts an int value into the extras of the underlying Intent, replacing
+   * any existing value for the given key.
+   *
+   * @param key a String, or null
+   * @param value an int, or null
+   * @return this bundler instance to chain method calls
+   */
+  public IntentBundler put(String key, int value) {
+    intent.putExtra(key, value);
+    return this;
+  }
+
+  /**
+   * Inserts an int array value into the extras of the underlying Intent, replacing
+   * any existing value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value an int array object, or null
+   * @return this bundler instance to chain method calls
+   */
+  public IntentBundler put(String key, int[] value) {
+    intent.putExtra(key, value);
+    return this;
+  }
+
+  /**
+   * Inserts an IntList value into the extras of the underlying Intent as an int array, replacing
+   * any existing value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value an IntList, or null
+   * @return this bundler instance to chain method calls
+   */
+  public IntentBundler put(String key, IntList value) {
+    intent.putExtra(key, value == null ? null : value.toSharedArray());
+    return this;
+  }
+
+  /**
+   * Inserts an ArrayList<Integer> value into the extras of the underlying Intent, replacing
+   * any existing value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value an ArrayList<Integer> object, or null
+   * @return this bundler instance to chain method calls
+   */
+  public IntentBundler putIntegerArrayList(String key, ArrayList<Integer> value) {
+    intent.putIntegerArrayListExtra(key, value);
+    return this;
+  }
+
+  /**
+   * Inserts a Bundle value into the extras of the underlying Intent, replacing
+   * any existing value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value a Bundle object, or null
+   * @return this bundler instance to chain method calls
+   */
+  public IntentBundler put(String key, Bundle value) {
+    intent.putExtra(key, value);
+    return this;
+  }
+
+  /**
+   * Inserts a Bundle value into the extras of the underlying Intent as a {@link MarshalledBundle},
+   * replacing any existing value for the given key.  The value is only unmarshalled when read
+   * with {@link MarshalledBundle#getBundle(Bundle, String)}.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value a Bundle object, or null
+   * @return this bundler instance to chain method calls
+   */
+  public IntentBundler putLazy(String key, Bundle value) {
+    intent.putExtra(key, value == null ? null : MarshalledBundle.of(value));
+    return this;
+  }
+
+  /**
+   * Inserts a byte value into the extras of the underlying Intent, replacing
+   * any existing value for the given key.
+   *
+   * @param key a String, or null
+   * @param value a byte
+   * @return this bundler instance to chain method calls
+   */
+  public IntentBundler put(String key, byte value) {
+    intent.putExtra(key, value);
+    return this;
+  }
+
+  /**
+   * Inserts a byte array value into the extras of the underlying Intent, replacing
+   * any existing value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value a byte array object, or null
+   * @return this bundler instance to chain method calls
+   */
+  public IntentBundler put(String key, byte[] value) {
+    intent.putExtra(key, value);
+    return this;
+  }
+
+  /**
+   * Inserts a String value into the extras of the underlying Intent, replacing
+   * any existing value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value a String, or null
+   * @return this bundler instance to chain method calls
+   */
+  public IntentBundler put(String key, String value) {
+    intent.putExtra(key, value);
+    return this;
+  }
+
+  /**
+   * Inserts a String array value into the extras of the underlying Intent, replacing
+   * any existing value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value a String array object, or null
+   * @return this bundler instance to chain method calls
+   */
+  public IntentBundler put(String key, String[] value) {
+    intent.putExtra(key, value);
+    return this;
+  }
+
+  /**
+   * Inserts an ArrayList<String> value into the extras of the underlying Intent, replacing
+   * any existing value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value an ArrayList<String> object, or null
+   * @return this bundler instance to chain method calls
+   */
+  public IntentBundler putStringArrayList(String key, ArrayList<String> value) {
+    intent.putStringArrayListExtra(key, value);
+    return this;
+  }
+
+  /**
+   * Inserts a long value into the extras of the underlying Intent, replacing
+   * any existing value for the given key.
+   *
+   * @param key a String, or null
+   * @param value a long
+   * @return this bundler instance to chain method calls
+   */
+  public IntentBundler put(String key, long value) {
+    intent.putExtra(key, value);
+    return this;
+  }
+
+  /**
+   * Inserts a long array value into the extras of the underlying Intent, replacing
+   * any existing value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value a long array object, or null
+   * @return this bundler instance to chain method calls
+   */
+  public IntentBundler put(String key, long[] value) {
+    intent.putExtra(key, value);
+    return this;
+  }
+
+  /**
+   * Inserts a LongList value into the extras of the underlying Intent as a long array, replacing
+   * any existing value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value a LongList, or null
+   * @return this bundler instance to chain method calls
+   */
+  public IntentBundler put(String key, LongList value) {
+    intent.putExtra(key, value == null ? null : value.toSharedArray());
+    return this;
+  }
+
+  /**
+   * Inserts a float value into the extras of the underlying Intent, replacing
+   * any existing value for the given key.
+   *
+   * @param key a String, or null
+   * @param value a float
+   * @return this bundler instance to chain method calls
+   */
+  public IntentBundler put(String key, float value) {
+    intent.putExtra(key, value);
+    return this;
+  }
+
+  /**
+   * Inserts a float array value into the extras of the underlying Intent, replacing
+   * any existing value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value a float array object, or null
+   * @return this bundler instance to chain method calls
+   */
+  public IntentBundler put(String key, float[] value) {
+    intent.putExtra(key, value);
+    return this;
+  }
+
+  /**
+   * Inserts a char value into the extras of the underlying Intent, replacing
+   * any existing value for the given key.
+   *
+   * @param key a String, or null
+   * @param value a char, or null
+   * @return this bundler instance to chain method calls
+   */
+  public IntentBundler put(String key, char value) {
+    intent.putExtra(key, value);
+    return this;
+  }
+
+  /**
+   * Inserts a char array value into the extras of the underlying Intent, replacing
+   * any existing value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value a char array object, or null
+   * @return this bundler instance to chain method calls
+   */
+  public IntentBundler put(String key, char[] value) {
+    intent.putExtra(key, value);
+    return this;
+  }
+
+  /**
+   * Inserts a CharSequence value into the extras of the underlying Intent, replacing
+   * any existing value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value a CharSequence, or null
+   * @return this bundler instance to chain method calls
+   */
+  public IntentBundler put(String key, CharSequence value) {
+    intent.putExtra(key, value);
+    return this;
+  }
+
+  /**
+   * Inserts a CharSequence array value into the extras of the underlying Intent, replacing
+   * any existing value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value a CharSequence array object, or null
+   * @return this bundler instance to chain method calls
+   */
+  public IntentBundler put(String key, CharSequence[] value) {
+    intent.putExtra(key, value);
+    return this;
+  }
+
+  /**
+   * Inserts an ArrayList<CharSequence> value into the extras of the underlying Intent, replacing
+   * any existing value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value an ArrayList<CharSequence> object, or null
+   * @return this bundler instance to chain method calls
+   */
+  public IntentBundler putCharSequenceArrayList(String key, ArrayList<CharSequence> value) {
+    intent.putCharSequenceArrayListExtra(key, value);
+    return this;
+  }
+
+  /**
+   * Inserts a double value into the extras of the underlying Intent, replacing
+   * any existing value for the given key.
+   *
+   * @param key a String, or null
+   * @param value a double
+   * @return this bundler instance to chain method calls
+   */
+  public IntentBundler put(String key, double value) {
+    intent.putExtra(key, value);
+    return this;
+  }
+
+  /**
+   * Inserts a double array value into the extras of the underlying Intent, replacing
+   * any existing value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value a double array object, or null
+   * @return this bundler instance to chain method calls
+   */
+  public IntentBundler put(String key, double[] value) {
+    intent.putExtra(key, value);
+    return this;
+  }
+
+  /**
+   * Inserts a DoubleList value into the extras of the underlying Intent as a double array,
+   * replacing any existing value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value a DoubleList, or null
+   * @return this bundler instance to chain method calls
+   */
+  public IntentBundler put(String key, DoubleList value) {
+    intent.putExtra(key, value == null ? null : value.toSharedArray());
+    return this;
+  }
+
+  /**
+   * Inserts a Parcelable value into the extras of the underlying Intent, replacing
+   * any existing value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value a Parcelable object, or null
+   * @return this bundler instance to chain method calls
+   */
+  public IntentBundler put(String key, Parcelable value) {
+    intent.putExtra(key, value);
+    return this;
+  }
+
+  /**
+   * Inserts an array of Parcelable values into the extras of the underlying Intent,
+   * replacing any existing value for the given key.  Either key or value may
+   * be null.
+   *
+   * @param key a String, or null
+   * @param value an array of Parcelable objects, or null
+   * @return this bundler instance to chain method calls
+   */
+  public IntentBundler put(String key, Parcelable[] value) {
+    intent.putExtra(key, value);
+    return this;
+  }
+
+  /**
+   * Inserts a List of Parcelable values into the extras of the underlying Intent,
+   * replacing any existing value for the given key.  Either key or value may
+   * be null.
+   *
+   * @param key a String, or null
+   * @param value an ArrayList of Parcelable objects, or null
+   * @return this bundler instance to chain method calls
+   */
+  public IntentBundler putParcelableArrayList(String key, ArrayList<? extends Parcelable> value) {
+    intent.putParcelableArrayListExtra(key, value);
+    return this;
+  }
+
+  /**
+   * Inserts a short value into the extras of the underlying Intent, replacing
+   * any existing value for the given key.
+   *
+   * @param key a String, or null
+   * @param value a short
+   * @return this bundler instance to chain method calls
+   */
+  public IntentBundler put(String key, short value) {
+    intent.putExtra(key, value);
+    return this;
+  }
+
+  /**
+   * Inserts a short array value into the extras of the underlying Intent, replacing
+   * any existing value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value a short array object, or null
+   * @return this bundler instance to chain method calls
+   */
+  public IntentBundler put(String key, short[] value) {
+    intent.putExtra(key, value);
+    return this;
+  }
+
+  /**
+   * Inserts a Serializable value into the extras of the underlying Intent, replacing
+   * any existing value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value a Serializable object, or null
+   * @return this bundler instance to chain method calls
+   */
+  public IntentBundler put(String key, Serializable value) {
+    intent.putExtra(key, value);
+    return this;
+  }
+
+  /**
+   * Inserts every field of {@code source} into the extras of the underlying Intent, keyed by field
+   * name, see {@link Bundler#putFields(Object)}.
+   *
+   * @param source an object whose fields hold values of types accepted by a Bundle
+   * @return this bundler instance to chain method calls
+   */
+  public IntentBundler putFields(Object source) {
+    FieldBinder.of(source.getClass()).write(source, intent);
+    return this;
+  }
+
+  /**
+   * Inserts all mappings from the given Bundle into the extras of the underlying Intent.
+   *
+   * @param bundle a Bundle
+   * @return this bundler instance to chain method calls
+   */
+  public IntentBundler putAll(Bundle bundle) {
+    intent.putExtras(bundle);
+    return this;
+  }
+
+  /**
+   * Inserts all values of the given schema bundler into the extras of the underlying Intent.
+   *
+   * @param schemaBundler a SchemaBundler
+   * @return this bundler instance to chain method calls
+   */
+  public IntentBundler putAll(SchemaBundler schemaBundler) {
+    schemaBundler.writeTo(intent);
+    return this;
+  }
+}
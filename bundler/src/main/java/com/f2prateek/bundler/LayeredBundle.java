@@ -0,0 +1,145 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+import android.os.Bundle;
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/**
+ * A frozen Bundle that many argument Bundles can share as their base layer. An argument Bundle
+ * only references the base, under a reserved key, and holds its own values as an overlay; reads
+ * through {@link #get(Bundle, String)} check the overlay first and then fall through to the base.
+ * Every argument Bundle built on the same base shares one instance in memory, so each costs only
+ * its overlay. {@link Bundler#readFields(Bundle, Object)}, {@link BundleProjection} and
+ * {@link Bundler#accept(BundleVisitor)} read through the base as well.
+ * Usage: {@code static final LayeredBundle BASE = LayeredBundle.freeze(environment);}
+ * {@code FragmentBundler.create(MyFragment.class).base(BASE).put("id", id).build();}
+ *
+ * The base is stored as an instance of this class rather than as a Bundle, so it can not be
+ * changed through the arguments of one fragment, for example with {@link Bundle#getBundle} or
+ * {@link Bundler#nest(String)}. Values read from it are shared by every fragment, so arrays and
+ * nested Bundles read from the base must not be modified. A layered Bundle crosses process
+ * boundaries like any other; the base is marshalled with it and read back as a separate
+ * instance. Use {@link #flatten(Bundle)} where code expects all values at the top level.
+ *
+ * Plain Bundle getters do not read through to the base: {@code arguments.getString("env")}
+ * returns null when "env" is only in the base. The base is written out again with every Bundle
+ * that references it, for example each time a fragment's arguments are saved, but it is marshalled
+ * only once per instance and later writes copy those bytes.
+ */
+public final class LayeredBundle implements Parcelable {
+  /** Key under which an argument Bundle references its base layer. */
+  static final String BASE_KEY = "com.f2prateek.bundler.LayeredBundle.base";
+
+  private final Bundle bundle;
+  private MarshalledBundle marshalled;
+
+  /**
+   * Returns a base layer holding a deep copy of {@code base}, so later changes to {@code base} do
+   * not leak into the Bundles that share it.
+   */
+  public static LayeredBundle freeze(Bundle base) {
+    return new LayeredBundle(BundleValues.deepCopy(base), null);
+  }
+
+  private LayeredBundle(Bundle bundle, MarshalledBundle marshalled) {
+    this.bundle = bundle;
+    this.marshalled = marshalled;
+  }
+
+  /** Returns the value for {@code key} in this layer and the layers below it, or null. */
+  public Object get(String key) {
+    return get(bundle, key);
+  }
+
+  /**
+   * Returns the value for {@code key} in {@code layered} or, if it has no mapping for the key, in
+   * its base layers, or null if there is none.
+   */
+  public static Object get(Bundle layered, String key) {
+    Bundle layer = layerOf(layered, key);
+    return layer == null ? null : layer.get(key);
+  }
+
+  /** Returns true if {@code layered} or one of its base layers has a mapping for {@code key}. */
+  public static boolean containsKey(Bundle layered, String key) {
+    return layerOf(layered, key) != null;
+  }
+
+  /**
+   * Returns a new Bundle with the values of {@code layered} and all its base layers at the top
+   * level, where values in upper layers replace those below them. A Bundle without a base layer
+   * is returned as a plain copy.
+   */
+  public static Bundle flatten(Bundle layered) {
+    Bundle base = baseOf(layered);
+    if (base == null) {
+      return new Bundle(layered);
+    }
+    Bundle flat = flatten(base);
+    flat.putAll(layered);
+    flat.remove(BASE_KEY);
+    return flat;
+  }
+
+  /** Returns the base layer of {@code layered}, or null if it has none. */
+  static Bundle baseOf(Bundle layered) {
+    Object base = layered.get(BASE_KEY);
+    return base instanceof LayeredBundle ? ((LayeredBundle) base).bundle : null;
+  }
+
+  /**
+   * Returns the upper-most of {@code layered} and its base layers that has a mapping for
+   * {@code key}, or null if none has.
+   */
+  static Bundle layerOf(Bundle layered, String key) {
+    Bundle layer = layered;
+    while (layer != null && !layer.containsKey(key)) {
+      layer = baseOf(layer);
+    }
+    return layer;
+  }
+
+  @Override public int describeContents() {
+    return bundle.describeContents();
+  }
+
+  @Override public void writeToParcel(Parcel dest, int flags) {
+    marshalled().writeToParcel(dest, flags);
+  }
+
+  /** Marshals the frozen layer on first use; it can not change, so the bytes stay valid. */
+  private synchronized MarshalledBundle marshalled() {
+    if (marshalled == null) {
+      marshalled = MarshalledBundle.of(bundle);
+    }
+    return marshalled;
+  }
+
+  public static final Creator<LayeredBundle> CREATOR = new Creator<LayeredBundle>() {
+    @Override public LayeredBundle createFromParcel(Parcel source) {
+      MarshalledBundle marshalled = MarshalledBundle.CREATOR.createFromParcel(source);
+      return new LayeredBundle(marshalled.toBundle(LayeredBundle.class.getClassLoader()),
+          marshalled);
+    }
+
+    @Override public LayeredBundle[] newArray(int size) {
+      return new LayeredBundle[size];
+    }
+  };
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+import android.os.Bundle;
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/**
+ * A {@link Bundle} that has been marshalled once into bytes. Writing it to a Parcel copies the
+ * bytes instead of walking the Bundle again, and the Bundle is only unmarshalled when a receiver
+ * calls {@link #toBundle()}. Each call returns a new Bundle, so a receiver that modifies it does
+ * not affect the others.
+ *
+ * Bundles holding file descriptors or binders cannot be marshalled.
+ */
+public final class MarshalledBundle implements Parcelable {
+  private final byte[] bytes;
+
+  /** Marshals {@code bundle} into a new instance. */
+  public static MarshalledBundle of(Bundle bundle) {
+    Parcel parcel = Parcel.obtain();
+    try {
+      parcel.writeBundle(bundle);
+      return new MarshalledBundle(parcel.marshall());
+    } finally {
+      parcel.recycle();
+    }
+  }
+
+  /** Returns an instance wrapping bytes previously returned by {@link #toByteArray()}. */
+  public static MarshalledBundle fromByteArray(byte[] bytes) {
+    return new MarshalledBundle(bytes.clone());
+  }
+
+  /**
+   * Returns the Bundle value for {@code key}, whether it was inserted with
+   * {@link Bundler#put(String, Bundle)} or {@link Bundler#putLazy(String, Bundle)}. A lazily
+   * inserted value is unmarshalled with the class loader of {@code source} on the first call and
+   * replaces the marshalled form in {@code source}, so later calls return the same Bundle. The
+   * class loader of {@code source} must be able to load this class, as it is for fragment
+   * arguments.
+   *
+   * @param source a Bundle
+   * @param key a String, or null
+   * @return the Bundle value, or null if there is no Bundle mapping for the key
+   */
+  public static Bundle getBundle(Bundle source, String key) {
+    Object value = source.get(key);
+    if (value instanceof MarshalledBundle) {
+      Bundle bundle = ((MarshalledBundle) value).toBundle(source.getClassLoader());
+      source.putBundle(key, bundle);
+      return bundle;
+    }
+    if (value instanceof Bundle) {
+      return (Bundle) value;
+    }
+    return null;
+  }
+
+  /** Returns an instance wrapping {@code bytes} without copying them. */
+  static MarshalledBundle wrap(byte[] bytes) {
+    return new MarshalledBundle(bytes);
+  }
+
+  private MarshalledBundle(byte[] bytes) {
+    this.bytes = bytes;
+  }
+
+  /** Returns a copy of the marshalled bytes. */
+  public byte[] toByteArray() {
+    return bytes.clone();
+  }
+
+  /** Returns the size of the marshalled bytes. */
+  public int size() {
+    return bytes.length;
+  }
+
+  /**
+   * Unmarshals the Bundle with this library's class loader. See {@link #toBundle(ClassLoader)}.
+   */
+  public Bundle toBundle() {
+    return toBundle(MarshalledBundle.class.getClassLoader());
+  }
+
+  /**
+   * Unmarshals a new Bundle on every call, so callers never share a mutable instance.
+   *
+   * @param classLoader the class loader used to instantiate Parcelable values
+   * @return the unmarshalled Bundle
+   */
+  public Bundle toBundle(ClassLoader classLoader) {
+    Parcel parcel = Parcel.obtain();
+    try {
+      parcel.unmarshall(bytes, 0, bytes.length);
+      parcel.setDataPosition(0);
+      return parcel.readBundle(classLoader);
+    } finally {
+      parcel.recycle();
+    }
+  }
+
+  @Override public int describeContents() {
+    return 0;
+  }
+
+  @Override public void writeToParcel(Parcel dest, int flags) {
+    dest.writeByteArray(bytes);
+  }
+
+  public static final Creator<MarshalledBundle> CREATOR = new Creator<MarshalledBundle>() {
+    @Override public MarshalledBundle createFromParcel(Parcel source) {
+      return new MarshalledBundle(source.createByteArray());
+    }
+
+    @Override public MarshalledBundle[] newArray(int size) {
+      return new MarshalledBundle[size];
+    }
+  };
+}
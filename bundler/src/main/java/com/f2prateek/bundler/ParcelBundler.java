@@ -0,0 +1,605 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.util.SparseArray;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Writes a Bundle straight into a Parcel in the platform's Bundle wire format, without building
+ * the Bundle first. Where a {@link Bundler} fills a map that {@link Parcel#writeBundle(Bundle)}
+ * then walks again, each put here is encoded immediately, so the payload is ready to send once
+ * the last value is written.
+ * Usage: {@code MarshalledBundle args = ParcelBundler.create().put("id", 1).put(...).build();}
+ *
+ * Primitives, Strings and their arrays are encoded directly; other values are written with
+ * {@link Parcel#writeValue(Object)}, exactly as a Bundle would write them. Unlike a Bundle, each
+ * key may only be written once. Duplicates are found by comparing against the keys written so far,
+ * which is cheaper than hashing for the handful of keys arguments usually have; past 16 keys a
+ * hash set of them is built once and used from then on. If writing a value throws, for example for
+ * an unsupported type, its key and partial entry are dropped before the next write, so the writer
+ * can still be used.
+ */
+public final class ParcelBundler {
+  private static final int BUNDLE_MAGIC = 0x4C444E42; // 'B' 'N' 'D' 'L'
+  /** Bundles write keys as tagged values before Lollipop (API 21), and as plain Strings since. */
+  private static final boolean TAGGED_KEYS = Build.VERSION.SDK_INT < 21;
+
+  // Value tags of Parcel#writeValue(Object).
+  private static final int VAL_NULL = -1;
+  private static final int VAL_STRING = 0;
+  private static final int VAL_INTEGER = 1;
+  private static final int VAL_BUNDLE = 3;
+  private static final int VAL_SHORT = 5;
+  private static final int VAL_LONG = 6;
+  private static final int VAL_FLOAT = 7;
+  private static final int VAL_DOUBLE = 8;
+  private static final int VAL_BOOLEAN = 9;
+  private static final int VAL_BYTEARRAY = 13;
+  private static final int VAL_STRINGARRAY = 14;
+  private static final int VAL_INTARRAY = 18;
+  private static final int VAL_LONGARRAY = 19;
+  private static final int VAL_BYTE = 20;
+  private static final int VAL_BOOLEANARRAY = 23;
+
+  private static final int LINEAR_KEYS = 16;
+
+  private final String[] keys = new String[LINEAR_KEYS];
+  private Set<String> keySet;
+  private int size;
+  private final int mapStart;
+  /** The position of the entry being written, or -1 once its value is written. */
+  private int entryStart = -1;
+  private String entryKey;
+  private Parcel parcel;
+
+  /** Creates a writer for a new Bundle. */
+  public static ParcelBundler create() {
+    return new ParcelBundler(Parcel.obtain());
+  }
+
+  private ParcelBundler(Parcel parcel) {
+    this.parcel = parcel;
+    parcel.writeInt(-1); // Length, written by finish().
+    parcel.writeInt(BUNDLE_MAGIC);
+    mapStart = parcel.dataPosition();
+    parcel.writeInt(0); // Entry count, written by finish().
+  }
+
+  /**
+   * Writes a boolean value for the given key.
+   *
+   * @param key a String, or null
+   * @param value a boolean
+   * @return this bundler instance to chain method calls
+   */
+  public ParcelBundler put(String key, boolean value) {
+    writeKey(key);
+    parcel.writeInt(VAL_BOOLEAN);
+    parcel.writeInt(value ? 1 : 0);
+    return endEntry();
+  }
+
+  /**
+   * Writes a boolean array value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value a boolean array object, or null
+   * @return this bundler instance to chain method calls
+   */
+  public ParcelBundler put(String key, boolean[] value) {
+    writeKey(key);
+    if (value == null) {
+      parcel.writeInt(VAL_NULL);
+    } else {
+      parcel.writeInt(VAL_BOOLEANARRAY);
+      parcel.writeBooleanArray(value);
+    }
+    return endEntry();
+  }
+
+  /**
+   * Writes an int value for the given key.
+   *
+   * @param key a String, or null
+   * @param value an int
+   * @return this bundler instance to chain method calls
+   */
+  public ParcelBundler put(String key, int value) {
+    writeKey(key);
+    parcel.writeInt(VAL_INTEGER);
+    parcel.writeInt(value);
+    return endEntry();
+  }
+
+  /**
+   * Writes an int array value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value an int array object, or null
+   * @return this bundler instance to chain method calls
+   */
+  public ParcelBundler put(String key, int[] value) {
+    writeKey(key);
+    if (value == null) {
+      parcel.writeInt(VAL_NULL);
+    } else {
+      parcel.writeInt(VAL_INTARRAY);
+      parcel.writeIntArray(value);
+    }
+    return endEntry();
+  }
+
+  /**
+   * Writes an ArrayList<Integer> value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value an ArrayList<Integer> object, or null
+   * @return this bundler instance to chain method calls
+   */
+  public ParcelBundler putIntegerArrayList(String key, ArrayList<Integer> value) {
+    writeKey(key);
+    parcel.writeValue(value);
+    return endEntry();
+  }
+
+  /**
+   * Writes a Bundle value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value a Bundle object, or null
+   * @return this bundler instance to chain method calls
+   */
+  public ParcelBundler put(String key, Bundle value) {
+    writeKey(key);
+    if (value == null) {
+      parcel.writeInt(VAL_NULL);
+    } else {
+      parcel.writeInt(VAL_BUNDLE);
+      parcel.writeBundle(value);
+    }
+    return endEntry();
+  }
+
+  /**
+   * Writes a byte value for the given key.
+   *
+   * @param key a String, or null
+   * @param value a byte
+   * @return this bundler instance to chain method calls
+   */
+  public ParcelBundler put(String key, byte value) {
+    writeKey(key);
+    parcel.writeInt(VAL_BYTE);
+    parcel.writeInt(value);
+    return endEntry();
+  }
+
+  /**
+   * Writes a byte array value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value a byte array object, or null
+   * @return this bundler instance to chain method calls
+   */
+  public ParcelBundler put(String key, byte[] value) {
+    writeKey(key);
+    if (value == null) {
+      parcel.writeInt(VAL_NULL);
+    } else {
+      parcel.writeInt(VAL_BYTEARRAY);
+      parcel.writeByteArray(value);
+    }
+    return endEntry();
+  }
+
+  /**
+   * Writes a String value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value a String, or null
+   * @return this bundler instance to chain method calls
+   */
+  public ParcelBundler put(String key, String value) {
+    writeKey(key);
+    if (value == null) {
+      parcel.writeInt(VAL_NULL);
+    } else {
+      parcel.writeInt(VAL_STRING);
+      parcel.writeString(value);
+    }
+    return endEntry();
+  }
+
+  /**
+   * Writes a String array value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value a String array object, or null
+   * @return this bundler instance to chain method calls
+   */
+  public ParcelBundler put(String key, String[] value) {
+    writeKey(key);
+    if (value == null) {
+      parcel.writeInt(VAL_NULL);
+    } else {
+      parcel.writeInt(VAL_STRINGARRAY);
+      parcel.writeStringArray(value);
+    }
+    return endEntry();
+  }
+
+  /**
+   * Writes an ArrayList<String> value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value an ArrayList<String> object, or null
+   * @return this bundler instance to chain method calls
+   */
+  public ParcelBundler putStringArrayList(String key, ArrayList<String> value) {
+    writeKey(key);
+    parcel.writeValue(value);
+    return endEntry();
+  }
+
+  /**
+   * Writes a long value for the given key.
+   *
+   * @param key a String, or null
+   * @param value a long
+   * @return this bundler instance to chain method calls
+   */
+  public ParcelBundler put(String key, long value) {
+    writeKey(key);
+    parcel.writeInt(VAL_LONG);
+    parcel.writeLong(value);
+    return endEntry();
+  }
+
+  /**
+   * Writes a long array value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value a long array object, or null
+   * @return this bundler instance to chain method calls
+   */
+  public ParcelBundler put(String key, long[] value) {
+    writeKey(key);
+    if (value == null) {
+      parcel.writeInt(VAL_NULL);
+    } else {
+      parcel.writeInt(VAL_LONGARRAY);
+      parcel.writeLongArray(value);
+    }
+    return endEntry();
+  }
+
+  /**
+   * Writes a float value for the given key.
+   *
+   * @param key a String, or null
+   * @param value a float
+   * @return this bundler instance to chain method calls
+   */
+  public ParcelBundler put(String key, float value) {
+    writeKey(key);
+    parcel.writeInt(VAL_FLOAT);
+    parcel.writeFloat(value);
+    return endEntry();
+  }
+
+  /**
+   * Writes a float array value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value a float array object, or null
+   * @return this bundler instance to chain method calls
+   */
+  public ParcelBundler put(String key, float[] value) {
+    writeKey(key);
+    parcel.writeValue(value);
+    return endEntry();
+  }
+
+  /**
+   * Writes a char value for the given key.
+   *
+   * @param key a String, or null
+   * @param value a char
+   * @return this bundler instance to chain method calls
+   */
+  public ParcelBundler put(String key, char value) {
+    writeKey(key);
+    parcel.writeValue(Character.valueOf(value));
+    return endEntry();
+  }
+
+  /**
+   * Writes a char array value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value a char array object, or null
+   * @return this bundler instance to chain method calls
+   */
+  public ParcelBundler put(String key, char[] value) {
+    writeKey(key);
+    parcel.writeValue(value);
+    return endEntry();
+  }
+
+  /**
+   * Writes a CharSequence value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value a CharSequence, or null
+   * @return this bundler instance to chain method calls
+   */
+  public ParcelBundler put(String key, CharSequence value) {
+    writeKey(key);
+    parcel.writeValue(value);
+    return endEntry();
+  }
+
+  /**
+   * Writes a CharSequence array value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value a CharSequence array object, or null
+   * @return this bundler instance to chain method calls
+   */
+  public ParcelBundler put(String key, CharSequence[] value) {
+    writeKey(key);
+    parcel.writeValue(value);
+    return endEntry();
+  }
+
+  /**
+   * Writes an ArrayList<CharSequence> value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value an ArrayList<CharSequence> object, or null
+   * @return this bundler instance to chain method calls
+   */
+  public ParcelBundler putCharSequenceArrayList(String key, ArrayList<CharSequence> value) {
+    writeKey(key);
+    parcel.writeValue(value);
+    return endEntry();
+  }
+
+  /**
+   * Writes a double value for the given key.
+   *
+   * @param key a String, or null
+   * @param value a double
+   * @return this bundler instance to chain method calls
+   */
+  public ParcelBundler put(String key, double value) {
+    writeKey(key);
+    parcel.writeInt(VAL_DOUBLE);
+    parcel.writeDouble(value);
+    return endEntry();
+  }
+
+  /**
+   * Writes a double array value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value a double array object, or null
+   * @return this bundler instance to chain method calls
+   */
+  public ParcelBundler put(String key, double[] value) {
+    writeKey(key);
+    parcel.writeValue(value);
+    return endEntry();
+  }
+
+  /**
+   * Writes a Parcelable value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value a Parcelable object, or null
+   * @return this bundler instance to chain method calls
+   */
+  public ParcelBundler put(String key, Parcelable value) {
+    writeKey(key);
+    parcel.writeValue(value);
+    return endEntry();
+  }
+
+  /**
+   * Writes a Parcelable array value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value a Parcelable array object, or null
+   * @return this bundler instance to chain method calls
+   */
+  public ParcelBundler put(String key, Parcelable[] value) {
+    writeKey(key);
+    parcel.writeValue(value);
+    return endEntry();
+  }
+
+  /**
+   * Writes an ArrayList of Parcelable values for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value an ArrayList of Parcelable objects, or null
+   * @return this bundler instance to chain method calls
+   */
+  public ParcelBundler putParcelableArrayList(String key, ArrayList<? extends Parcelable> value) {
+    writeKey(key);
+    parcel.writeValue(value);
+    return endEntry();
+  }
+
+  /**
+   * Writes a SparseArray of Parcelable values for the given key.  Either key or value may be
+   * null.
+   *
+   * @param key a String, or null
+   * @param value a SparseArray of Parcelable objects, or null
+   * @return this bundler instance to chain method calls
+   */
+  public ParcelBundler putSparseParcelableArray(String key,
+      SparseArray<? extends Parcelable> value) {
+    writeKey(key);
+    parcel.writeValue(value);
+    return endEntry();
+  }
+
+  /**
+   * Writes a short value for the given key.
+   *
+   * @param key a String, or null
+   * @param value a short
+   * @return this bundler instance to chain method calls
+   */
+  public ParcelBundler put(String key, short value) {
+    writeKey(key);
+    parcel.writeInt(VAL_SHORT);
+    parcel.writeInt(value);
+    return endEntry();
+  }
+
+  /**
+   * Writes a short array value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value a short array object, or null
+   * @return this bundler instance to chain method calls
+   */
+  public ParcelBundler put(String key, short[] value) {
+    writeKey(key);
+    parcel.writeValue(value);
+    return endEntry();
+  }
+
+  /**
+   * Writes a Serializable value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value a Serializable object, or null
+   * @return this bundler instance to chain method calls
+   */
+  public ParcelBundler put(String key, Serializable value) {
+    writeKey(key);
+    parcel.writeValue(value);
+    return endEntry();
+  }
+
+  /**
+   * Finishes the Bundle and returns it in marshalled form, ready to be written to a Parcel or
+   * unmarshalled with {@link MarshalledBundle#toBundle()}. This writer can not be used afterwards.
+   */
+  public MarshalledBundle build() {
+    checkNotBuilt();
+    try {
+      finish();
+      return MarshalledBundle.wrap(parcel.marshall());
+    } finally {
+      parcel.recycle();
+      parcel = null;
+    }
+  }
+
+  /** Returns the number of keys written so far. */
+  public int size() {
+    return entryStart < 0 ? size : size - 1;
+  }
+
+  private void writeKey(String key) {
+    checkNotBuilt();
+    rollBackFailedEntry();
+    addKey(key);
+    entryStart = parcel.dataPosition();
+    entryKey = key;
+    if (!TAGGED_KEYS) {
+      parcel.writeString(key);
+    } else if (key == null) {
+      parcel.writeInt(VAL_NULL);
+    } else {
+      parcel.writeInt(VAL_STRING);
+      parcel.writeString(key);
+    }
+  }
+
+  private void addKey(String key) {
+    if (keySet == null && size < LINEAR_KEYS) {
+      for (int i = 0; i < size; i++) {
+        if (key == null ? keys[i] == null : key.equals(keys[i])) {
+          throw new IllegalArgumentException("Duplicate key: " + key);
+        }
+      }
+      keys[size] = key;
+    } else {
+      if (keySet == null) {
+        keySet = new HashSet<String>(Arrays.asList(keys));
+      }
+      if (!keySet.add(key)) {
+        throw new IllegalArgumentException("Duplicate key: " + key);
+      }
+    }
+    size++;
+  }
+
+  private ParcelBundler endEntry() {
+    entryStart = -1;
+    entryKey = null;
+    return this;
+  }
+
+  /** Drops the key and partial value of an entry whose value failed to be written. */
+  private void rollBackFailedEntry() {
+    if (entryStart < 0) {
+      return;
+    }
+    parcel.setDataPosition(entryStart);
+    parcel.setDataSize(entryStart);
+    if (keySet != null) {
+      keySet.remove(entryKey);
+    } else {
+      keys[size - 1] = null;
+    }
+    size--;
+    endEntry();
+  }
+
+  /** Writes the length and entry count in front of the entries. */
+  private void finish() {
+    rollBackFailedEntry();
+    int end = parcel.dataPosition();
+    parcel.setDataPosition(mapStart - 8);
+    parcel.writeInt(end - mapStart);
+    parcel.setDataPosition(mapStart);
+    parcel.writeInt(size);
+    parcel.setDataPosition(end);
+  }
+
+  private void checkNotBuilt() {
+    if (parcel == null) {
+      throw new IllegalStateException("ParcelBundler is already built.");
+    }
+  }
+}
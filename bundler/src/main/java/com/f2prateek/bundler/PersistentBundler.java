@@ -0,0 +1,343 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+import android.os.Bundle;
+
+/**
+ * An immutable mapping of Bundle values. Every {@link #put} or {@link #remove} returns a new
+ * version in O(log n) that shares all untouched structure with the previous one, so keeping many
+ * versions, for undo history or navigation snapshots, costs little more than their differences.
+ * A Bundle is only created when crossing into platform APIs with {@link #toBundle()}.
+ *
+ * Values are stored by reference, so arrays and other mutable values must not be modified after
+ * they are inserted.
+ * Usage: {@code PersistentBundler next = previous.put("page", 2); Bundle state = next.toBundle();}
+ */
+public final class PersistentBundler {
+  private static final PersistentBundler EMPTY = new PersistentBundler(null, 0);
+
+  private final Node root;
+  private final int size;
+
+  /** Returns an empty instance. */
+  public static PersistentBundler empty() {
+    return EMPTY;
+  }
+
+  /** Returns an instance holding all mappings of the source bundle. */
+  public static PersistentBundler copyOf(Bundle source) {
+    PersistentBundler result = EMPTY;
+    for (String key : source.keySet()) {
+      result = result.put(key, source.get(key));
+    }
+    return result;
+  }
+
+  private PersistentBundler(Node root, int size) {
+    this.root = root;
+    this.size = size;
+  }
+
+  /**
+   * Returns a version of this instance that maps {@code key} to {@code value}, replacing any
+   * existing value for the given key.  Either key or value may be null.
+   *
+   * @param key a String, or null
+   * @param value a value of any type accepted by {@link Bundle}, or null
+   * @return the new version
+   */
+  public PersistentBundler put(String key, Object value) {
+    if (!BundleValues.isSupported(value)) {
+      throw new IllegalArgumentException(
+          "Unsupported value type " + value.getClass().getName() + " for key " + key);
+    }
+    int hash = hash(key);
+    Leaf leaf = new Leaf(hash, key, value);
+    if (root == null) {
+      return new PersistentBundler(BitmapNode.EMPTY.put(0, leaf, new boolean[1]), 1);
+    }
+    boolean[] added = new boolean[1];
+    Node newRoot = root.put(0, leaf, added);
+    return new PersistentBundler(newRoot, added[0] ? size + 1 : size);
+  }
+
+  /**
+   * Returns a version of this instance without a mapping for {@code key}, or this instance if it
+   * has no mapping for the key.
+   */
+  public PersistentBundler remove(String key) {
+    if (root == null || root.find(0, hash(key), key) == null) {
+      return this;
+    }
+    Node newRoot = root.remove(0, hash(key), key);
+    return newRoot == null ? EMPTY : new PersistentBundler(newRoot, size - 1);
+  }
+
+  /** Returns the value for {@code key}, or null if there is none. */
+  public Object get(String key) {
+    Leaf leaf = root == null ? null : root.find(0, hash(key), key);
+    return leaf == null ? null : leaf.value;
+  }
+
+  /** Returns true if this instance has a mapping for {@code key}. */
+  public boolean containsKey(String key) {
+    return root != null && root.find(0, hash(key), key) != null;
+  }
+
+  /** Returns the number of mappings. */
+  public int size() {
+    return size;
+  }
+
+  /** Returns a new Bundle holding all mappings of this instance. */
+  public Bundle toBundle() {
+    Bundle bundle = new Bundle(size);
+    if (root != null) {
+      root.copyInto(bundle);
+    }
+    return bundle;
+  }
+
+  private static int hash(String key) {
+    if (key == null) {
+      return 0;
+    }
+    int h = key.hashCode();
+    return h ^ (h >>> 16);
+  }
+
+  private static boolean equal(String a, String b) {
+    return a == null ? b == null : a.equals(b);
+  }
+
+  private static final class Leaf {
+    final int hash;
+    final String key;
+    final Object value;
+
+    Leaf(int hash, String key, Object value) {
+      this.hash = hash;
+      this.key = key;
+      this.value = value;
+    }
+  }
+
+  private abstract static class Node {
+    abstract Leaf find(int shift, int hash, String key);
+
+    /** Returns a node with {@code leaf} inserted, setting {@code added[0]} for a new key. */
+    abstract Node put(int shift, Leaf leaf, boolean[] added);
+
+    /** Returns a node without {@code key}, or null if it would be empty. */
+    abstract Node remove(int shift, int hash, String key);
+
+    abstract void copyInto(Bundle bundle);
+  }
+
+  /** A trie node with up to 32 slots, each holding a {@link Leaf} or a child {@link Node}. */
+  private static final class BitmapNode extends Node {
+    static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+    final int bitmap;
+    final Object[] slots;
+
+    BitmapNode(int bitmap, Object[] slots) {
+      this.bitmap = bitmap;
+      this.slots = slots;
+    }
+
+    private static int bit(int hash, int shift) {
+      return 1 << ((hash >>> shift) & 31);
+    }
+
+    private int index(int bit) {
+      return Integer.bitCount(bitmap & (bit - 1));
+    }
+
+    @Override Leaf find(int shift, int hash, String key) {
+      int bit = bit(hash, shift);
+      if ((bitmap & bit) == 0) {
+        return null;
+      }
+      Object slot = slots[index(bit)];
+      if (slot instanceof Leaf) {
+        Leaf leaf = (Leaf) slot;
+        return leaf.hash == hash && equal(leaf.key, key) ? leaf : null;
+      }
+      return ((Node) slot).find(shift + 5, hash, key);
+    }
+
+    @Override Node put(int shift, Leaf leaf, boolean[] added) {
+      int bit = bit(leaf.hash, shift);
+      int index = index(bit);
+      if ((bitmap & bit) == 0) {
+        Object[] newSlots = new Object[slots.length + 1];
+        System.arraycopy(slots, 0, newSlots, 0, index);
+        newSlots[index] = leaf;
+        System.arraycopy(slots, index, newSlots, index + 1, slots.length - index);
+        added[0] = true;
+        return new BitmapNode(bitmap | bit, newSlots);
+      }
+      Object slot = slots[index];
+      Object newSlot;
+      if (slot instanceof Leaf) {
+        Leaf existing = (Leaf) slot;
+        if (existing.hash == leaf.hash && equal(existing.key, leaf.key)) {
+          newSlot = leaf;
+        } else {
+          newSlot = merge(shift + 5, existing, leaf);
+          added[0] = true;
+        }
+      } else {
+        newSlot = ((Node) slot).put(shift + 5, leaf, added);
+      }
+      Object[] newSlots = slots.clone();
+      newSlots[index] = newSlot;
+      return new BitmapNode(bitmap, newSlots);
+    }
+
+    @Override Node remove(int shift, int hash, String key) {
+      int bit = bit(hash, shift);
+      if ((bitmap & bit) == 0) {
+        return this;
+      }
+      int index = index(bit);
+      Object slot = slots[index];
+      if (slot instanceof Leaf) {
+        Leaf leaf = (Leaf) slot;
+        if (leaf.hash != hash || !equal(leaf.key, key)) {
+          return this;
+        }
+        return without(bit, index);
+      }
+      Node child = (Node) slot;
+      Node newChild = child.remove(shift + 5, hash, key);
+      if (newChild == child) {
+        return this;
+      }
+      if (newChild == null) {
+        return without(bit, index);
+      }
+      Object[] newSlots = slots.clone();
+      newSlots[index] = newChild;
+      return new BitmapNode(bitmap, newSlots);
+    }
+
+    private Node without(int bit, int index) {
+      if (slots.length == 1) {
+        return null;
+      }
+      Object[] newSlots = new Object[slots.length - 1];
+      System.arraycopy(slots, 0, newSlots, 0, index);
+      System.arraycopy(slots, index + 1, newSlots, index, slots.length - index - 1);
+      return new BitmapNode(bitmap & ~bit, newSlots);
+    }
+
+    @Override void copyInto(Bundle bundle) {
+      for (Object slot : slots) {
+        if (slot instanceof Leaf) {
+          Leaf leaf = (Leaf) slot;
+          BundleValues.put(bundle, leaf.key, leaf.value);
+        } else {
+          ((Node) slot).copyInto(bundle);
+        }
+      }
+    }
+
+    /** Returns a node holding two leaves with distinct keys that share a slot above shift. */
+    private static Node merge(int shift, Leaf a, Leaf b) {
+      if (a.hash == b.hash) {
+        return new CollisionNode(a.hash, new Leaf[] {a, b});
+      }
+      int positionA = (a.hash >>> shift) & 31;
+      int positionB = (b.hash >>> shift) & 31;
+      if (positionA == positionB) {
+        return new BitmapNode(1 << positionA, new Object[] {merge(shift + 5, a, b)});
+      }
+      Object[] slots = positionA < positionB ? new Object[] {a, b} : new Object[] {b, a};
+      return new BitmapNode((1 << positionA) | (1 << positionB), slots);
+    }
+  }
+
+  /** A node holding leaves whose keys have the same hash. */
+  private static final class CollisionNode extends Node {
+    final int hash;
+    final Leaf[] leaves;
+
+    CollisionNode(int hash, Leaf[] leaves) {
+      this.hash = hash;
+      this.leaves = leaves;
+    }
+
+    private int indexOf(String key) {
+      for (int i = 0; i < leaves.length; i++) {
+        if (equal(leaves[i].key, key)) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    @Override Leaf find(int shift, int hash, String key) {
+      if (hash != this.hash) {
+        return null;
+      }
+      int index = indexOf(key);
+      return index < 0 ? null : leaves[index];
+    }
+
+    @Override Node put(int shift, Leaf leaf, boolean[] added) {
+      if (leaf.hash != hash) {
+        BitmapNode parent = new BitmapNode(BitmapNode.bit(hash, shift), new Object[] {this});
+        return parent.put(shift, leaf, added);
+      }
+      int index = indexOf(leaf.key);
+      Leaf[] newLeaves;
+      if (index < 0) {
+        newLeaves = new Leaf[leaves.length + 1];
+        System.arraycopy(leaves, 0, newLeaves, 0, leaves.length);
+        newLeaves[leaves.length] = leaf;
+        added[0] = true;
+      } else {
+        newLeaves = leaves.clone();
+        newLeaves[index] = leaf;
+      }
+      return new CollisionNode(hash, newLeaves);
+    }
+
+    @Override Node remove(int shift, int hash, String key) {
+      int index = hash == this.hash ? indexOf(key) : -1;
+      if (index < 0) {
+        return this;
+      }
+      if (leaves.length == 1) {
+        return null;
+      }
+      Leaf[] newLeaves = new Leaf[leaves.length - 1];
+      System.arraycopy(leaves, 0, newLeaves, 0, index);
+      System.arraycopy(leaves, index + 1, newLeaves, index, leaves.length - index - 1);
+      return new CollisionNode(hash, newLeaves);
+    }
+
+    @Override void copyInto(Bundle bundle) {
+      for (Leaf leaf : leaves) {
+        BundleValues.put(bundle, leaf.key, leaf.value);
+      }
+    }
+  }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+import android.content.Intent;
+import android.os.Bundle;
+import java.util.Arrays;
+
+/**
+ * A builder for Bundles declared by a {@link BundleSchema}. Values are stored in a fixed slot per
+ * key, so a put is an array store without hashing or boxing, and the Bundle is only built when
+ * {@link #get()}, {@link #copy()} or {@link #writeTo(Bundle)} is called. This suits argument
+ * shapes that are built very often.
+ * Usage: {@code Bundle args = SchemaBundler.create(schema).put(page, 2).put(title, "Home").get();}
+ */
+public final class SchemaBundler {
+  private final BundleSchema schema;
+  private final boolean[] present;
+  private final long[] primitives;
+  private final Object[] objects;
+  private int size;
+  private Bundle bundle;
+
+  /** Creates a bundler for the keys declared by {@code schema}. */
+  public static SchemaBundler create(BundleSchema schema) {
+    return new SchemaBundler(schema);
+  }
+
+  private SchemaBundler(BundleSchema schema) {
+    this.schema = schema;
+    this.present = new boolean[schema.keys.length];
+    this.primitives = new long[schema.primitiveCount];
+    this.objects = new Object[schema.objectCount];
+  }
+
+  /**
+   * Inserts a boolean value, replacing any existing value for the given key.
+   *
+   * @param key a key declared by this bundler's schema
+   * @param value a boolean
+   * @return this bundler instance to chain method calls
+   */
+  public SchemaBundler put(BundleSchema.BooleanKey key, boolean value) {
+    primitives[mark(key)] = value ? 1L : 0L;
+    return this;
+  }
+
+  /**
+   * Inserts an int value, replacing any existing value for the given key.
+   *
+   * @param key a key declared by this bundler's schema
+   * @param value an int
+   * @return this bundler instance to chain method calls
+   */
+  public SchemaBundler put(BundleSchema.IntKey key, int value) {
+    primitives[mark(key)] = value;
+    return this;
+  }
+
+  /**
+   * Inserts a long value, replacing any existing value for the given key.
+   *
+   * @param key a key declared by this bundler's schema
+   * @param value a long
+   * @return this bundler instance to chain method calls
+   */
+  public SchemaBundler put(BundleSchema.LongKey key, long value) {
+    primitives[mark(key)] = value;
+    return this;
+  }
+
+  /**
+   * Inserts a float value, replacing any existing value for the given key.
+   *
+   * @param key a key declared by this bundler's schema
+   * @param value a float
+   * @return this bundler instance to chain method calls
+   */
+  public SchemaBundler put(BundleSchema.FloatKey key, float value) {
+    primitives[mark(key)] = Float.floatToRawIntBits(value);
+    return this;
+  }
+
+  /**
+   * Inserts a double value, replacing any existing value for the given key.
+   *
+   * @param key a key declared by this bundler's schema
+   * @param value a double
+   * @return this bundler instance to chain method calls
+   */
+  public SchemaBundler put(BundleSchema.DoubleKey key, double value) {
+    primitives[mark(key)] = Double.doubleToRawLongBits(value);
+    return this;
+  }
+
+  /**
+   * Inserts an object value, replacing any existing value for the given key.
+   *
+   * @param key a key declared by this bundler's schema
+   * @param value a value of the key's type, or null
+   * @return this bundler instance to chain method calls
+   */
+  public <T> SchemaBundler put(BundleSchema.ObjectKey<T> key, T value) {
+    objects[mark(key)] = value;
+    return this;
+  }
+
+  /** Returns true if a value was inserted for {@code key}. */
+  public boolean containsKey(BundleSchema.Key key) {
+    checkSchema(key);
+    return present[key.ordinal];
+  }
+
+  /** Returns the number of keys with a value. */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Removes all values, keeping the storage for reuse.
+   *
+   * @return this bundler instance to chain method calls
+   */
+  public SchemaBundler reset() {
+    Arrays.fill(present, false);
+    Arrays.fill(objects, null);
+    size = 0;
+    bundle = null;
+    return this;
+  }
+
+  /**
+   * Get a Bundle holding the inserted values. It is built on the first call and returned again
+   * until the next put, so it must not be modified.
+   */
+  public Bundle get() {
+    if (bundle == null) {
+      bundle = copy();
+    }
+    return bundle;
+  }
+
+  /** Get a new Bundle holding the inserted values. */
+  public Bundle copy() {
+    Bundle copy = new Bundle(size);
+    writeTo(copy);
+    return copy;
+  }
+
+  /**
+   * Inserts the values of this bundler into {@code target}, replacing any existing values for the
+   * same keys.
+   *
+   * @param target a Bundle
+   */
+  public void writeTo(Bundle target) {
+    schema.writeTo(target, present, primitives, objects);
+  }
+
+  /** Returns the estimated marshalled size of the values of this bundler, see BundlerMetrics. */
+  int estimatedSize() {
+    return schema.estimatedSize(present, objects);
+  }
+
+  /** Inserts the values of this bundler into the extras of {@code target}. */
+  void writeTo(Intent target) {
+    schema.writeTo(target, present, primitives, objects);
+  }
+
+  /** Marks {@code key} as present and returns its slot. */
+  private int mark(BundleSchema.Key key) {
+    checkSchema(key);
+    if (!present[key.ordinal]) {
+      present[key.ordinal] = true;
+      size++;
+    }
+    bundle = null;
+    return key.slot;
+  }
+
+  private void checkSchema(BundleSchema.Key key) {
+    if (key.schema != schema) {
+      throw new IllegalArgumentException("Key " + key.name + " is not declared by this schema.");
+    }
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+import android.os.Bundle;
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+
+/**
+ * A bounded pool of String values, so that equal strings put into many bundlers, such as locale
+ * codes or category names, share a single instance instead of each keeping its own copy.
+ *
+ * Pooling is opt-in: install a pool with {@link #setDefault(StringPool)} and bundlers created
+ * afterwards pool the values inserted with {@link Bundler#put(String, String)},
+ * {@link Bundler#put(String, String[])} and {@link Bundler#copyOf(Bundle)}. Strings are referenced
+ * weakly and leave the pool once no Bundle uses them. Once the pool holds {@code maxSize} strings,
+ * new strings are no longer added but pooled ones are still shared.
+ */
+public final class StringPool {
+  private static volatile StringPool defaultPool;
+
+  private final WeakHashMap<String, WeakReference<String>> strings =
+      new WeakHashMap<String, WeakReference<String>>();
+  private final int maxSize;
+
+  /** Returns the pool installed for new bundlers, or null if there is none. */
+  public static StringPool getDefault() {
+    return defaultPool;
+  }
+
+  /** Installs {@code pool} for bundlers created from now on, or removes it if null. */
+  public static void setDefault(StringPool pool) {
+    defaultPool = pool;
+  }
+
+  /** Creates a pool that holds up to {@code maxSize} strings. */
+  public static StringPool create(int maxSize) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("maxSize <= 0");
+    }
+    return new StringPool(maxSize);
+  }
+
+  private StringPool(int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /** Returns the pooled instance equal to {@code value}, pooling {@code value} if there is none. */
+  public synchronized String intern(String value) {
+    if (value == null) {
+      return null;
+    }
+    WeakReference<String> reference = strings.get(value);
+    String pooled = reference == null ? null : reference.get();
+    if (pooled != null) {
+      return pooled;
+    }
+    if (strings.size() < maxSize) {
+      strings.put(value, new WeakReference<String>(value));
+    }
+    return value;
+  }
+
+  /**
+   * Returns an array of the pooled instances of {@code values}. It is {@code values} itself if
+   * every element is already pooled, and a copy otherwise; {@code values} is never modified.
+   */
+  synchronized String[] intern(String[] values) {
+    if (values == null) {
+      return null;
+    }
+    String[] interned = values;
+    for (int i = 0; i < values.length; i++) {
+      String pooled = intern(values[i]);
+      if (pooled != values[i]) {
+        if (interned == values) {
+          interned = values.clone();
+        }
+        interned[i] = pooled;
+      }
+    }
+    return interned;
+  }
+
+  /** Replaces the String and String array values of {@code bundle} with pooled instances. */
+  void intern(Bundle bundle) {
+    for (String key : bundle.keySet()) {
+      Object value = bundle.get(key);
+      if (value instanceof String) {
+        bundle.putString(key, intern((String) value));
+      } else if (value instanceof String[]) {
+        bundle.putStringArray(key, intern((String[]) value));
+      }
+    }
+  }
+
+  /** Returns the number of strings in this pool, including ones not yet cleared by the GC. */
+  public synchronized int size() {
+    return strings.size();
+  }
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+/**
+ * Computes a value when it is first needed, see {@link Bundler#put(String, Supplier)}.
+ *
+ * @param <T> the type of the value
+ */
+public interface Supplier<T> {
+  /** Returns the value, of a type accepted by a Bundle, or null. */
+  T get();
+}
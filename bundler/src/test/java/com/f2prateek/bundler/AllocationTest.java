@@ -0,0 +1,554 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+import android.app.Fragment;
+import android.os.Bundle;
+import android.os.Parcelable;
+import android.util.SparseArray;
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Guards against allocation regressions by measuring the bytes allocated per operation on the
+ * current thread. Each path is held to a budget measured in the same run: every put to the bytes
+ * the equivalent direct Bundle put allocates, primitive puts to a put that cannot box, and copies
+ * to a plain copy of the same Bundle. The slack absorbs measurement noise but not an extra box,
+ * array or map entry. Skipped on JVMs that cannot measure thread allocation.
+ */
+@RunWith(RobolectricTestRunner.class) //
+@Config(manifest = Config.NONE) //
+public class AllocationTest {
+  private static final int WARMUP = 2000;
+  private static final int ITERATIONS = 2000;
+  /** Less than the 16 bytes of the smallest box or array, so neither fits within it. */
+  private static final long SLACK = 8;
+  /** Covers the bundler and bookkeeping a copy creates, far less than copying {@link #source}. */
+  private static final long COPY_SLACK = 128;
+
+  private com.sun.management.ThreadMXBean threads;
+  private Bundle source;
+
+  /** A put of one value type, through a bundler or straight into a Bundle. */
+  private abstract static class Put {
+    abstract void viaBundler();
+
+    abstract void viaBundle();
+  }
+
+  @Before public void setUp() {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+    threads = (com.sun.management.ThreadMXBean) bean;
+    assumeTrue(threads.isThreadAllocatedMemorySupported());
+    threads.setThreadAllocatedMemoryEnabled(true);
+
+    source = new Bundle();
+    for (int i = 0; i < 100; i++) {
+      source.putInt("key" + i, i);
+    }
+  }
+
+  @Test public void putsAllocateNoMoreThanBundlePuts() {
+    final Bundler bundler = Bundler.create();
+    final Bundle target = new Bundle();
+    final boolean[] booleans = new boolean[] {true};
+    final FlagSet flags = FlagSet.create(FlagSchema.of("a")).set("a", true);
+    final int[] ints = new int[] {1};
+    final ArrayList<Integer> integerList = new ArrayList<Integer>();
+    final Bundle bundle = new Bundle();
+    final byte[] bytes = new byte[] {1};
+    final String[] strings = new String[] {"a"};
+    final ArrayList<String> stringList = new ArrayList<String>();
+    final long[] longs = new long[] {1};
+    final float[] floats = new float[] {1};
+    final char[] chars = new char[] {'a'};
+    final CharSequence charSequence = new StringBuilder("a");
+    final CharSequence[] charSequences = new CharSequence[] {"a"};
+    final ArrayList<CharSequence> charSequenceList = new ArrayList<CharSequence>();
+    final double[] doubles = new double[] {1};
+    final IntList intList = IntList.create().add(1);
+    final LongList longList = LongList.create().add(1);
+    final DoubleList doubleList = DoubleList.create().add(1);
+    final Parcelable[] parcelables = new Parcelable[] {bundle};
+    final ArrayList<Parcelable> parcelableList = new ArrayList<Parcelable>();
+    final SparseArray<Parcelable> sparseArray = new SparseArray<Parcelable>();
+    final short[] shorts = new short[] {1};
+    final Serializable serializable = new StringBuilder("a").toString();
+
+    Map<String, Put> puts = new LinkedHashMap<String, Put>();
+    puts.put("boolean", new Put() {
+      @Override void viaBundler() {
+        bundler.put("key", true);
+      }
+
+      @Override void viaBundle() {
+        target.putBoolean("key", true);
+      }
+    });
+    puts.put("boolean[]", new Put() {
+      @Override void viaBundler() {
+        bundler.put("key", booleans);
+      }
+
+      @Override void viaBundle() {
+        target.putBooleanArray("key", booleans);
+      }
+    });
+    puts.put("FlagSet", new Put() {
+      @Override void viaBundler() {
+        bundler.put("key", flags);
+      }
+
+      @Override void viaBundle() {
+        target.putLongArray("key", flags.toLongArray());
+      }
+    });
+    puts.put("int", new Put() {
+      @Override void viaBundler() {
+        bundler.put("key", 1000);
+      }
+
+      @Override void viaBundle() {
+        target.putInt("key", 1000);
+      }
+    });
+    puts.put("int[]", new Put() {
+      @Override void viaBundler() {
+        bundler.put("key", ints);
+      }
+
+      @Override void viaBundle() {
+        target.putIntArray("key", ints);
+      }
+    });
+    puts.put("IntList", new Put() {
+      @Override void viaBundler() {
+        bundler.put("key", intList);
+      }
+
+      @Override void viaBundle() {
+        target.putIntArray("key", intList.toArray());
+      }
+    });
+    puts.put("ArrayList<Integer>", new Put() {
+      @Override void viaBundler() {
+        bundler.putIntegerArrayList("key", integerList);
+      }
+
+      @Override void viaBundle() {
+        target.putIntegerArrayList("key", integerList);
+      }
+    });
+    puts.put("Bundle", new Put() {
+      @Override void viaBundler() {
+        bundler.put("key", bundle);
+      }
+
+      @Override void viaBundle() {
+        target.putBundle("key", bundle);
+      }
+    });
+    puts.put("byte", new Put() {
+      @Override void viaBundler() {
+        bundler.put("key", (byte) 1);
+      }
+
+      @Override void viaBundle() {
+        target.putByte("key", (byte) 1);
+      }
+    });
+    puts.put("byte[]", new Put() {
+      @Override void viaBundler() {
+        bundler.put("key", bytes);
+      }
+
+      @Override void viaBundle() {
+        target.putByteArray("key", bytes);
+      }
+    });
+    puts.put("String", new Put() {
+      @Override void viaBundler() {
+        bundler.put("key", "a");
+      }
+
+      @Override void viaBundle() {
+        target.putString("key", "a");
+      }
+    });
+    puts.put("String[]", new Put() {
+      @Override void viaBundler() {
+        bundler.put("key", strings);
+      }
+
+      @Override void viaBundle() {
+        target.putStringArray("key", strings);
+      }
+    });
+    puts.put("ArrayList<String>", new Put() {
+      @Override void viaBundler() {
+        bundler.putStringArrayList("key", stringList);
+      }
+
+      @Override void viaBundle() {
+        target.putStringArrayList("key", stringList);
+      }
+    });
+    puts.put("long", new Put() {
+      @Override void viaBundler() {
+        bundler.put("key", 1000L);
+      }
+
+      @Override void viaBundle() {
+        target.putLong("key", 1000L);
+      }
+    });
+    puts.put("long[]", new Put() {
+      @Override void viaBundler() {
+        bundler.put("key", longs);
+      }
+
+      @Override void viaBundle() {
+        target.putLongArray("key", longs);
+      }
+    });
+    puts.put("LongList", new Put() {
+      @Override void viaBundler() {
+        bundler.put("key", longList);
+      }
+
+      @Override void viaBundle() {
+        target.putLongArray("key", longList.toArray());
+      }
+    });
+    puts.put("float", new Put() {
+      @Override void viaBundler() {
+        bundler.put("key", 1.5f);
+      }
+
+      @Override void viaBundle() {
+        target.putFloat("key", 1.5f);
+      }
+    });
+    puts.put("float[]", new Put() {
+      @Override void viaBundler() {
+        bundler.put("key", floats);
+      }
+
+      @Override void viaBundle() {
+        target.putFloatArray("key", floats);
+      }
+    });
+    puts.put("char", new Put() {
+      @Override void viaBundler() {
+        bundler.put("key", '\u1000');
+      }
+
+      @Override void viaBundle() {
+        target.putChar("key", '\u1000');
+      }
+    });
+    puts.put("char[]", new Put() {
+      @Override void viaBundler() {
+        bundler.put("key", chars);
+      }
+
+      @Override void viaBundle() {
+        target.putCharArray("key", chars);
+      }
+    });
+    puts.put("CharSequence", new Put() {
+      @Override void viaBundler() {
+        bundler.put("key", charSequence);
+      }
+
+      @Override void viaBundle() {
+        target.putCharSequence("key", charSequence);
+      }
+    });
+    puts.put("CharSequence[]", new Put() {
+      @Override void viaBundler() {
+        bundler.put("key", charSequences);
+      }
+
+      @Override void viaBundle() {
+        target.putCharSequenceArray("key", charSequences);
+      }
+    });
+    puts.put("ArrayList<CharSequence>", new Put() {
+      @Override void viaBundler() {
+        bundler.putCharSequenceArrayList("key", charSequenceList);
+      }
+
+      @Override void viaBundle() {
+        target.putCharSequenceArrayList("key", charSequenceList);
+      }
+    });
+    puts.put("double", new Put() {
+      @Override void viaBundler() {
+        bundler.put("key", 1.5d);
+      }
+
+      @Override void viaBundle() {
+        target.putDouble("key", 1.5d);
+      }
+    });
+    puts.put("double[]", new Put() {
+      @Override void viaBundler() {
+        bundler.put("key", doubles);
+      }
+
+      @Override void viaBundle() {
+        target.putDoubleArray("key", doubles);
+      }
+    });
+    puts.put("DoubleList", new Put() {
+      @Override void viaBundler() {
+        bundler.put("key", doubleList);
+      }
+
+      @Override void viaBundle() {
+        target.putDoubleArray("key", doubleList.toArray());
+      }
+    });
+    puts.put("Parcelable", new Put() {
+      @Override void viaBundler() {
+        bundler.put("key", (Parcelable) bundle);
+      }
+
+      @Override void viaBundle() {
+        target.putParcelable("key", bundle);
+      }
+    });
+    puts.put("Parcelable[]", new Put() {
+      @Override void viaBundler() {
+        bundler.put("key", parcelables);
+      }
+
+      @Override void viaBundle() {
+        target.putParcelableArray("key", parcelables);
+      }
+    });
+    puts.put("ArrayList<Parcelable>", new Put() {
+      @Override void viaBundler() {
+        bundler.putParcelableArrayList("key", parcelableList);
+      }
+
+      @Override void viaBundle() {
+        target.putParcelableArrayList("key", parcelableList);
+      }
+    });
+    puts.put("SparseArray<Parcelable>", new Put() {
+      @Override void viaBundler() {
+        bundler.putSparseParcelableArray("key", sparseArray);
+      }
+
+      @Override void viaBundle() {
+        target.putSparseParcelableArray("key", sparseArray);
+      }
+    });
+    puts.put("short", new Put() {
+      @Override void viaBundler() {
+        bundler.put("key", (short) 1000);
+      }
+
+      @Override void viaBundle() {
+        target.putShort("key", (short) 1000);
+      }
+    });
+    puts.put("short[]", new Put() {
+      @Override void viaBundler() {
+        bundler.put("key", shorts);
+      }
+
+      @Override void viaBundle() {
+        target.putShortArray("key", shorts);
+      }
+    });
+    puts.put("Serializable", new Put() {
+      @Override void viaBundler() {
+        bundler.put("key", serializable);
+      }
+
+      @Override void viaBundle() {
+        target.putSerializable("key", serializable);
+      }
+    });
+
+    Map<String, String> overBudget = new LinkedHashMap<String, String>();
+    for (Map.Entry<String, Put> entry : puts.entrySet()) {
+      final Put put = entry.getValue();
+      long budget = bytesPerOperation(new Runnable() {
+        @Override public void run() {
+          put.viaBundle();
+        }
+      });
+      long bytesPerPut = bytesPerOperation(new Runnable() {
+        @Override public void run() {
+          put.viaBundler();
+        }
+      });
+      if (bytesPerPut > budget + SLACK) {
+        overBudget.put(entry.getKey(), bytesPerPut + " bytes, budget " + budget);
+      }
+    }
+    assertThat(overBudget).isEmpty();
+  }
+
+  @Test public void primitivePutsDoNotBox() {
+    final Bundler bundler = Bundler.create();
+    final String value = "value";
+    long nonBoxing = bytesPerOperation(new Runnable() {
+      @Override public void run() {
+        bundler.put("key", value);
+      }
+    });
+
+    // Values within the JDK's box caches, so only boxing added by the bundler could allocate.
+    Map<String, Runnable> primitives = new LinkedHashMap<String, Runnable>();
+    primitives.put("boolean", new Runnable() {
+      @Override public void run() {
+        bundler.put("key", true);
+      }
+    });
+    primitives.put("byte", new Runnable() {
+      @Override public void run() {
+        bundler.put("key", (byte) 1);
+      }
+    });
+    primitives.put("char", new Runnable() {
+      @Override public void run() {
+        bundler.put("key", 'a');
+      }
+    });
+    primitives.put("short", new Runnable() {
+      @Override public void run() {
+        bundler.put("key", (short) 1);
+      }
+    });
+    primitives.put("int", new Runnable() {
+      @Override public void run() {
+        bundler.put("key", 1);
+      }
+    });
+    primitives.put("long", new Runnable() {
+      @Override public void run() {
+        bundler.put("key", 1L);
+      }
+    });
+
+    Map<String, Long> boxing = new LinkedHashMap<String, Long>();
+    for (Map.Entry<String, Runnable> put : primitives.entrySet()) {
+      long bytesPerPut = bytesPerOperation(put.getValue());
+      if (bytesPerPut > nonBoxing + SLACK) {
+        boxing.put(put.getKey(), bytesPerPut);
+      }
+    }
+    assertThat(nonBoxing).isLessThanOrEqualTo(SLACK);
+    assertThat(boxing).isEmpty();
+  }
+
+  @Test public void unsampledMetricsDoNotBox() {
+    final Bundler bundler = Bundler.create().metrics(new BundlerMetrics(Integer.MAX_VALUE) {
+    });
+    final Bundle target = new Bundle();
+    final String value = "value";
+    long budget = bytesPerOperation(new Runnable() {
+      @Override public void run() {
+        target.putInt("int", 1000);
+        target.putLong("long", 1000L);
+        target.putDouble("double", 1.5d);
+        target.putString("string", value);
+      }
+    });
+    long bytesPerPut = bytesPerOperation(new Runnable() {
+      @Override public void run() {
+        bundler.put("int", 1000).put("long", 1000L).put("double", 1.5d).put("string", value);
+      }
+    });
+
+    assertThat(bytesPerPut).isLessThanOrEqualTo(budget + SLACK);
+  }
+
+  @Test public void copyAllocatesOneCopy() {
+    final Bundler bundler = Bundler.copyOf(source);
+
+    long bytesPerCopy = bytesPerOperation(new Runnable() {
+      @Override public void run() {
+        bundler.copy();
+      }
+    });
+
+    assertThat(bytesPerCopy).isLessThanOrEqualTo(copyBudget());
+  }
+
+  @Test public void copyOfAllocatesOneCopy() {
+    long bytesPerCopy = bytesPerOperation(new Runnable() {
+      @Override public void run() {
+        Bundler.copyOf(source);
+      }
+    });
+
+    assertThat(bytesPerCopy).isLessThanOrEqualTo(copyBudget());
+  }
+
+  @Test public void buildAllocatesOneCopy() {
+    final FragmentBundler<Fragment> bundler =
+        FragmentBundler.create(new Fragment()).putAll(source);
+
+    long bytesPerBuild = bytesPerOperation(new Runnable() {
+      @Override public void run() {
+        bundler.build();
+      }
+    });
+
+    assertThat(bytesPerBuild).isLessThanOrEqualTo(copyBudget());
+  }
+
+  /** Returns the budget for copying {@link #source}, relative to a plain copy of it. */
+  private long copyBudget() {
+    long bytesPerCopy = bytesPerOperation(new Runnable() {
+      @Override public void run() {
+        new Bundle(source);
+      }
+    });
+    return bytesPerCopy + COPY_SLACK;
+  }
+
+  private long bytesPerOperation(Runnable operation) {
+    for (int i = 0; i < WARMUP; i++) {
+      operation.run();
+    }
+    long threadId = Thread.currentThread().getId();
+    long before = threads.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < ITERATIONS; i++) {
+      operation.run();
+    }
+    return (threads.getThreadAllocatedBytes(threadId) - before) / ITERATIONS;
+  }
+}
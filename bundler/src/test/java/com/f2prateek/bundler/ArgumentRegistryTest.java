@@ -0,0 +1,149 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+import android.os.Bundle;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class) //
+@Config(manifest = Config.NONE) //
+public class ArgumentRegistryTest {
+
+  @Test public void resolvesRegisteredValues() {
+    ArgumentRegistry registry = new ArgumentRegistry(2);
+    Object value = new Object();
+
+    String token = registry.register(value);
+
+    assertThat(registry.resolve(token)).isSameAs(value);
+    assertThat(registry.resolve("unknown")).isNull();
+    assertThat(registry.resolve((String) null)).isNull();
+  }
+
+  @Test public void evictsUnreferencedValuesFirst() {
+    ArgumentRegistry registry = new ArgumentRegistry(2);
+    String referenced = registry.register("referenced");
+    registry.retain(new Bundle(), Arrays.asList(referenced));
+    String unreferenced = registry.register("unreferenced");
+
+    String latest = registry.register("latest");
+
+    assertThat(registry.resolve(referenced)).isEqualTo("referenced");
+    assertThat(registry.resolve(unreferenced)).isNull();
+    assertThat(registry.resolve(latest)).isEqualTo("latest");
+    assertThat(registry.size()).isEqualTo(2);
+  }
+
+  @Test public void neverEvictsValueBeingRegistered() {
+    ArgumentRegistry registry = new ArgumentRegistry(2);
+    String first = registry.register("first");
+    String second = registry.register("second");
+    registry.retain(new Bundle(), Arrays.asList(first, second));
+
+    String latest = registry.register("latest");
+
+    assertThat(registry.resolve(latest)).isEqualTo("latest");
+    assertThat(registry.resolve(first)).isNull();
+    assertThat(registry.resolve(second)).isEqualTo("second");
+  }
+
+  @Test public void pendingValuesCountAgainstMaxSize() {
+    ArgumentRegistry registry = new ArgumentRegistry(2);
+    String unreferenced = registry.register("unreferenced");
+    String first = registry.register("first", true);
+    String second = registry.register("second", true);
+
+    assertThat(registry.resolve(unreferenced)).isNull();
+
+    String third = registry.register("third", true);
+    assertThat(registry.resolve(first)).isNull();
+    assertThat(registry.resolve(second)).isEqualTo("second");
+    assertThat(registry.resolve(third)).isEqualTo("third");
+    assertThat(registry.size()).isEqualTo(2);
+  }
+
+  @Test public void discardDropsOnlyPendingValues() {
+    ArgumentRegistry registry = new ArgumentRegistry(4);
+    String retained = registry.register("retained", true);
+    String pending = registry.register("pending", true);
+    registry.retain(new Bundle(), Arrays.asList(retained));
+
+    registry.discard(retained);
+    registry.discard(pending);
+
+    assertThat(registry.resolve(retained)).isEqualTo("retained");
+    assertThat(registry.resolve(pending)).isNull();
+    assertThat(registry.size()).isEqualTo(1);
+  }
+
+  @Test public void retainDiscardsTokensWhoseKeyWasOverwritten() {
+    ArgumentRegistry registry = new ArgumentRegistry(4);
+    String live = registry.register("live", true);
+    String overwritten = registry.register("overwritten", true);
+    Map<String, String> tokens = new LinkedHashMap<String, String>();
+    tokens.put("live", live);
+    tokens.put("overwritten", overwritten);
+    Bundle arguments = new Bundle();
+    arguments.putString("live", live);
+    arguments.putString("overwritten", "plain");
+
+    registry.retain(arguments, tokens);
+
+    assertThat(arguments.getStringArray(ArgumentRegistry.TOKENS_KEY)).containsExactly(live);
+    assertThat(registry.resolve(live)).isEqualTo("live");
+    assertThat(registry.resolve(overwritten)).isNull();
+  }
+
+  @Test public void releaseDropsValuesOnceUnreferenced() {
+    ArgumentRegistry registry = new ArgumentRegistry(2);
+    String token = registry.register("value");
+    Bundle first = new Bundle();
+    Bundle second = new Bundle();
+    registry.retain(first, Arrays.asList(token));
+    registry.retain(second, Arrays.asList(token));
+
+    registry.release(first);
+    assertThat(registry.resolve(token)).isEqualTo("value");
+
+    registry.release(second);
+    assertThat(registry.resolve(token)).isNull();
+    assertThat(registry.size()).isEqualTo(0);
+  }
+
+  @Test public void sizeOfLimitsByWeight() {
+    ArgumentRegistry registry = new ArgumentRegistry(10) {
+      @Override protected int sizeOf(Object value) {
+        return ((int[]) value).length;
+      }
+    };
+    String first = registry.register(new int[6]);
+
+    String second = registry.register(new int[6]);
+
+    assertThat(registry.resolve(first)).isNull();
+    assertThat(registry.resolve(second)).isNotNull();
+    assertThat(registry.size()).isEqualTo(6);
+  }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+import android.os.Bundle;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.util.SparseArray;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static junit.framework.Assert.fail;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class) //
+@Config(manifest = Config.NONE, shadows = ShadowByteParcel.class) //
+public class BundleFormatTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test public void roundTripsThroughMappedFile() throws Exception {
+    ArrayList<Integer> integers = new ArrayList<Integer>(Arrays.asList(1, 2, 3));
+    ArrayList<String> strings = new ArrayList<String>(Arrays.asList("a", null, "c"));
+    Bundle nested = Bundler.create().put("string", "nested").get();
+    Bundle bundle = Bundler.create()
+        .put("boolean", true)
+        .put("byte", (byte) 1)
+        .put("char", 'c')
+        .put("short", (short) 2)
+        .put("int", 3)
+        .put("long", 4L)
+        .put("float", 5F)
+        .put("double", 6D)
+        .put("string", "bundler ☃")
+        .put("null", (String) null)
+        .put("boolean[]", new boolean[] { true, false })
+        .put("byte[]", new byte[] { 1, 2 })
+        .put("char[]", new char[] { 'a', 'b' })
+        .put("short[]", new short[] { 1, 2 })
+        .put("int[]", new int[] { 1, 2 })
+        .put("long[]", new long[] { 1L, 2L })
+        .put("float[]", new float[] { 1F, 2F })
+        .put("double[]", new double[] { 1D, 2D })
+        .put("string[]", new String[] { "a", null })
+        .putIntegerArrayList("ArrayList<Integer>", integers)
+        .putStringArrayList("ArrayList<String>", strings)
+        .put("Bundle", nested)
+        .get();
+
+    File file = temporaryFolder.newFile("bundle.bin");
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+    try {
+      FileChannel channel = randomAccessFile.getChannel();
+      Bundler.of(bundle).writeTo(channel);
+      ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+      Bundle read = Bundler.readFrom(mapped).get();
+
+      assertThat(mapped.hasRemaining()).isFalse();
+      new BundleAssert(read) //
+          .hasSize(bundle.size())
+          .contains("boolean", true)
+          .contains("byte", (byte) 1)
+          .contains("char", 'c')
+          .contains("short", (short) 2)
+          .contains("int", 3)
+          .contains("long", 4L)
+          .contains("float", 5F)
+          .contains("double", 6D)
+          .contains("string", "bundler ☃")
+          .contains("null", null)
+          .contains("boolean[]", new boolean[] { true, false })
+          .contains("byte[]", new byte[] { 1, 2 })
+          .contains("char[]", new char[] { 'a', 'b' })
+          .contains("short[]", new short[] { 1, 2 })
+          .contains("int[]", new int[] { 1, 2 })
+          .contains("long[]", new long[] { 1L, 2L })
+          .contains("float[]", new float[] { 1F, 2F })
+          .contains("double[]", new double[] { 1D, 2D })
+          .contains("string[]", new String[] { "a", null })
+          .contains("ArrayList<Integer>", integers)
+          .contains("ArrayList<String>", strings);
+      new BundleAssert(read.getBundle("Bundle")).hasSize(1).contains("string", "nested");
+    } finally {
+      randomAccessFile.close();
+    }
+  }
+
+  @Test public void roundTripsValuesWithoutNativeEncoding() throws Exception {
+    SparseArray<Point> sparseArray = new SparseArray<Point>();
+    sparseArray.put(7, new Point(3, 4));
+    Bundle bundle = Bundler.create()
+        .put("Parcelable", new Point(1, 2))
+        .put("Serializable", new Date(5L))
+        .put("CharSequence", (CharSequence) new StringBuilder("text"))
+        .putSparseParcelableArray("SparseArray", sparseArray)
+        .get();
+    RecordingChannel channel = new RecordingChannel();
+
+    Bundler.of(bundle).writeTo(channel);
+    Bundle read = Bundler.readFrom(channel.toByteBuffer()).get();
+
+    new BundleAssert(read) //
+        .hasSize(4) //
+        .contains("Parcelable", new Point(1, 2)) //
+        .contains("Serializable", new Date(5L));
+    assertThat(read.getCharSequence("CharSequence").toString()).isEqualTo("text");
+    SparseArray<Point> readSparseArray = read.getSparseParcelableArray("SparseArray");
+    assertThat(readSparseArray.size()).isEqualTo(1);
+    assertThat(readSparseArray.get(7)).isEqualTo(new Point(3, 4));
+  }
+
+  @Test public void writesValuesLargerThanOneChunk() throws Exception {
+    int length = BundleFormat.CHUNK_SIZE + 3;
+    byte[] bytes = new byte[length];
+    int[] ints = new int[length];
+    long[] longs = new long[length];
+    char[] chars = new char[length];
+    for (int i = 0; i < length; i++) {
+      bytes[i] = (byte) i;
+      ints[i] = i;
+      longs[i] = i;
+      chars[i] = (char) ('a' + i % 26);
+    }
+    String string = new String(chars);
+    Bundle bundle = Bundler.create()
+        .put("byte[]", bytes)
+        .put("int[]", ints)
+        .put("long[]", longs)
+        .put("char[]", chars)
+        .put("string", string)
+        .get();
+    RecordingChannel channel = new RecordingChannel();
+
+    Bundler.of(bundle).writeTo(channel);
+    Bundle read = Bundler.readFrom(channel.toByteBuffer()).get();
+
+    assertThat(channel.largestBufferedWrite).isLessThanOrEqualTo(BundleFormat.CHUNK_SIZE);
+    new BundleAssert(read) //
+        .hasSize(5) //
+        .contains("byte[]", bytes) //
+        .contains("int[]", ints) //
+        .contains("long[]", longs) //
+        .contains("char[]", chars) //
+        .contains("string", string);
+  }
+
+  @Test public void readsFromBufferPosition() throws Exception {
+    File file = temporaryFolder.newFile("bundles.bin");
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+    try {
+      FileChannel channel = randomAccessFile.getChannel();
+      Bundler.create().put("index", 0).writeTo(channel);
+      Bundler.create().put("index", 1).writeTo(channel);
+      ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+      new BundleAssert(Bundler.readFrom(mapped).get()).contains("index", 0);
+      new BundleAssert(Bundler.readFrom(mapped).get()).contains("index", 1);
+    } finally {
+      randomAccessFile.close();
+    }
+  }
+
+  @Test public void rejectsUnknownData() {
+    try {
+      Bundler.readFrom(ByteBuffer.wrap(new byte[] { 0, 0, 0, 0, 0, 0, 0, 1 }));
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("Not a Bundler file.");
+    }
+  }
+
+  /**
+   * Collects everything written to it, and records the largest write that did not come straight
+   * from a wrapped byte array, which the writer hands over as is when it is too large for a chunk.
+   */
+  static class RecordingChannel implements WritableByteChannel {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    int largestBufferedWrite;
+
+    @Override public int write(ByteBuffer source) {
+      int count = source.remaining();
+      if (!source.hasArray() || source.arrayOffset() != 0 || source.array().length != count) {
+        largestBufferedWrite = Math.max(largestBufferedWrite, count);
+      }
+      byte[] chunk = new byte[count];
+      source.get(chunk);
+      bytes.write(chunk, 0, count);
+      return count;
+    }
+
+    @Override public boolean isOpen() {
+      return true;
+    }
+
+    @Override public void close() {
+    }
+
+    ByteBuffer toByteBuffer() {
+      return ByteBuffer.wrap(bytes.toByteArray());
+    }
+  }
+
+  public static class Point implements Parcelable {
+    final int x;
+    final int y;
+
+    Point(int x, int y) {
+      this.x = x;
+      this.y = y;
+    }
+
+    @Override public int describeContents() {
+      return 0;
+    }
+
+    @Override public void writeToParcel(Parcel dest, int flags) {
+      dest.writeInt(x);
+      dest.writeInt(y);
+    }
+
+    @Override public boolean equals(Object o) {
+      return o instanceof Point && ((Point) o).x == x && ((Point) o).y == y;
+    }
+
+    @Override public int hashCode() {
+      return 31 * x + y;
+    }
+
+    public static final Creator<Point> CREATOR = new Creator<Point>() {
+      @Override public Point createFromParcel(Parcel source) {
+        return new Point(source.readInt(), source.readInt());
+      }
+
+      @Override public Point[] newArray(int size) {
+        return new Point[size];
+      }
+    };
+  }
+}
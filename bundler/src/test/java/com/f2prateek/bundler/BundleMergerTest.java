@@ -0,0 +1,92 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+import android.os.Bundle;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class) //
+@Config(manifest = Config.NONE) //
+public class BundleMergerTest {
+  Bundle defaults;
+  Bundle overrides;
+
+  @Before public void setup() {
+    defaults = Bundler.create()
+        .put("a", 1)
+        .put("b", "default")
+        .put("nested", Bundler.create().put("x", 1).put("y", 1).get())
+        .get();
+    overrides = Bundler.create()
+        .put("b", "override")
+        .put("c", 3L)
+        .put("nested", Bundler.create().put("y", 2).get())
+        .get();
+  }
+
+  static BundleAssert assertThat(Bundle bundle) {
+    return new BundleAssert(bundle);
+  }
+
+  @Test public void lastWinsByDefault() {
+    Bundle merged = BundleMerger.create().merge(defaults, null, overrides).get();
+
+    assertThat(merged).hasSize(4)
+        .contains("a", 1)
+        .contains("b", "override")
+        .contains("c", 3L)
+        .contains("nested", overrides.getBundle("nested"));
+  }
+
+  @Test public void firstWins() {
+    Bundle merged =
+        BundleMerger.create().onConflict(BundleMerger.FIRST_WINS).merge(defaults, overrides).get();
+
+    assertThat(merged).hasSize(4)
+        .contains("b", "default")
+        .contains("c", 3L)
+        .contains("nested", defaults.getBundle("nested"));
+  }
+
+  @Test public void keyResolverTakesPrecedenceOverTypeResolver() {
+    BundleMerger.Resolver concat = new BundleMerger.Resolver() {
+      @Override public Object resolve(String key, Object existing, Object incoming) {
+        return existing + "," + incoming;
+      }
+    };
+    Bundle extra = Bundler.create().put("a", 10).put("b", "extra").get();
+
+    Bundle merged = BundleMerger.create()
+        .onConflict(String.class, concat)
+        .onConflict("a", BundleMerger.FIRST_WINS)
+        .merge(defaults, overrides, extra)
+        .get();
+
+    assertThat(merged).contains("a", 1).contains("b", "default,override,extra");
+  }
+
+  @Test public void deepMergesNestedBundles() {
+    Bundle merged = BundleMerger.create().deepMerge(true).merge(defaults, overrides).get();
+
+    assertThat(merged.getBundle("nested")).hasSize(2).contains("x", 1).contains("y", 2);
+    assertThat(defaults.getBundle("nested")).contains("y", 1);
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+import android.os.Bundle;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static junit.framework.Assert.fail;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class) //
+@Config(manifest = Config.NONE) //
+public class BundleProjectionTest {
+  static Bundle source() {
+    return Bundler.create()
+        .put("id", 3L)
+        .put("title", "Home")
+        .put("ref", "push")
+        .put("unused", new int[] {1, 2})
+        .put("empty", (String) null)
+        .get();
+  }
+
+  @Test public void copiesSelectedKeys() {
+    Bundle copy = BundleProjection.of("id", "title", "empty").copy(source()).get();
+
+    assertThat(copy.size()).isEqualTo(3);
+    assertThat(copy.getLong("id")).isEqualTo(3L);
+    assertThat(copy.getString("title")).isEqualTo("Home");
+    assertThat(copy.containsKey("empty")).isTrue();
+  }
+
+  @Test public void skipsMissingKeys() {
+    Bundle target = new Bundle();
+
+    int copied = BundleProjection.of("id", "missing").copyInto(source(), target);
+
+    assertThat(copied).isEqualTo(1);
+    assertThat(target.keySet()).containsOnly("id");
+  }
+
+  @Test public void renamesKeys() {
+    BundleProjection projection = BundleProjection.of("id", "title").rename("ref", "source");
+
+    Bundle copy = projection.rename("title", "label").copy(source()).get();
+
+    assertThat(copy.keySet()).containsOnly("id", "label", "source");
+    assertThat(copy.getString("label")).isEqualTo("Home");
+    assertThat(copy.getString("source")).isEqualTo("push");
+    assertThat(projection.size()).isEqualTo(3);
+  }
+
+  @Test public void projectionsAreReusable() {
+    BundleProjection projection = BundleProjection.of("title");
+    Bundle first = projection.copy(source()).get();
+    Bundle second = projection.copy(Bundler.create().put("title", "Search").get()).get();
+
+    assertThat(first.getString("title")).isEqualTo("Home");
+    assertThat(second.getString("title")).isEqualTo("Search");
+  }
+
+  @Test public void rejectsDuplicateTargetKeys() {
+    try {
+      BundleProjection.of("id", "title").rename("ref", "id");
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException expected) {
+      assertThat(expected).hasMessage("Duplicate target key id");
+    }
+  }
+}
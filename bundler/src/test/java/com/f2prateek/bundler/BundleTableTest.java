@@ -0,0 +1,199 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+import android.os.Bundle;
+import android.os.Parcel;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static junit.framework.Assert.fail;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class) //
+@Config(manifest = Config.NONE) //
+public class BundleTableTest {
+  static BundleTable feed(int rows) {
+    BundleTable table = BundleTable.builder()
+        .intColumn("id")
+        .longColumn("time")
+        .doubleColumn("score")
+        .stringColumn("title")
+        .build();
+    for (int i = 0; i < rows; i++) {
+      table.addRow().setInt("id", i).setLong("time", 1000L * i).setDouble("score", i / 2.0)
+          .setString("title", "Item " + i);
+    }
+    return table;
+  }
+
+  @Test public void rowsReadAndWriteColumns() {
+    BundleTable table = feed(20);
+
+    assertThat(table.size()).isEqualTo(20);
+    assertThat(table.columnCount()).isEqualTo(4);
+    assertThat(table.columnName(3)).isEqualTo("title");
+    assertThat(table.columnIndex("time")).isEqualTo(1);
+    assertThat(table.columnIndex("missing")).isEqualTo(-1);
+    BundleTable.Row row = table.row(13);
+    assertThat(row.index()).isEqualTo(13);
+    assertThat(row.getInt("id")).isEqualTo(13);
+    assertThat(row.getLong("time")).isEqualTo(13000L);
+    assertThat(row.getDouble("score")).isEqualTo(6.5);
+    assertThat(row.getString("title")).isEqualTo("Item 13");
+
+    row.setString("title", "Edited");
+    assertThat(table.row(13).getString("title")).isEqualTo("Edited");
+  }
+
+  @Test public void rowsReadAndWriteColumnIndices() {
+    BundleTable table = feed(5);
+    int id = table.columnIndex("id");
+    int time = table.columnIndex("time");
+    int score = table.columnIndex("score");
+    int title = table.columnIndex("title");
+
+    BundleTable.Row row = table.row(3);
+    assertThat(row.getInt(id)).isEqualTo(3);
+    assertThat(row.getLong(time)).isEqualTo(3000L);
+    assertThat(row.getDouble(score)).isEqualTo(1.5);
+    assertThat(row.getString(title)).isEqualTo("Item 3");
+
+    row.setInt(id, 30).setLong(time, 1L).setDouble(score, 2.5).setString(title, "Edited");
+    assertThat(row.getInt("id")).isEqualTo(30);
+    assertThat(row.getLong("time")).isEqualTo(1L);
+    assertThat(row.getDouble("score")).isEqualTo(2.5);
+    assertThat(row.getString("title")).isEqualTo("Edited");
+  }
+
+  @Test public void rejectsMismatchedColumnIndices() {
+    BundleTable.Row row = feed(1).row(0);
+    try {
+      row.getLong(0);
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException expected) {
+      assertThat(expected).hasMessage("Column id holds an int, not a long");
+    }
+    try {
+      row.setInt(4, 1);
+      fail("Expected IndexOutOfBoundsException");
+    } catch (IndexOutOfBoundsException expected) {
+      assertThat(expected).hasMessage("Column: 4, columns: 4");
+    }
+  }
+
+  @Test public void newRowsAreEmpty() {
+    BundleTable.Row row = feed(0).addRow();
+
+    assertThat(row.getInt("id")).isEqualTo(0);
+    assertThat(row.getString("title")).isNull();
+  }
+
+  @Test public void rejectsMismatchedColumns() {
+    BundleTable.Row row = feed(1).row(0);
+    try {
+      row.getInt("title");
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException expected) {
+      assertThat(expected).hasMessage("Column title holds a String, not an int");
+    }
+    try {
+      row.getInt("missing");
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException expected) {
+      assertThat(expected).hasMessage("No column named missing");
+    }
+  }
+
+  @Test public void rowIndexIsChecked() {
+    try {
+      feed(2).row(2);
+      fail("Expected IndexOutOfBoundsException");
+    } catch (IndexOutOfBoundsException expected) {
+      assertThat(expected).hasMessage("Index: 2, size: 2");
+    }
+  }
+
+  @Test public void convertsFromAndToBundles() {
+    List<Bundle> rows = new ArrayList<Bundle>();
+    rows.add(Bundler.create().put("id", 1).put("title", "Home").get());
+    rows.add(Bundler.create().put("id", 2).get());
+
+    BundleTable table = BundleTable.copyOf(rows);
+
+    assertThat(table.size()).isEqualTo(2);
+    assertThat(table.row(1).getInt("id")).isEqualTo(2);
+    assertThat(table.row(1).getString("title")).isNull();
+    ArrayList<Bundle> bundles = table.toBundles();
+    assertThat(bundles).hasSize(2);
+    assertThat(bundles.get(0).getString("title")).isEqualTo("Home");
+    assertThat(bundles.get(1).getInt("id")).isEqualTo(2);
+  }
+
+  @Test public void copyOfTakesColumnsFromEveryRow() {
+    List<Bundle> rows = new ArrayList<Bundle>();
+    rows.add(Bundler.create().put("id", 1).put("count", (String) null).get());
+    rows.add(Bundler.create().put("id", 2).put("title", "Second").put("count", 5).get());
+    rows.add(Bundler.create().put("note", (String) null).get());
+
+    BundleTable table = BundleTable.copyOf(rows);
+
+    assertThat(table.columnCount()).isEqualTo(4);
+    assertThat(table.row(1).getString("title")).isEqualTo("Second");
+    assertThat(table.row(0).getString("title")).isNull();
+    assertThat(table.row(1).getInt("count")).isEqualTo(5);
+    assertThat(table.row(0).getInt("count")).isEqualTo(0);
+    assertThat(table.row(2).getString("note")).isNull();
+  }
+
+  @Test public void copyOfRejectsMixedTypes() {
+    List<Bundle> rows = new ArrayList<Bundle>();
+    rows.add(Bundler.create().put("id", 1).get());
+    rows.add(Bundler.create().put("id", 2L).get());
+    try {
+      BundleTable.copyOf(rows);
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException expected) {
+      assertThat(expected).hasMessage("Column id holds an int, found java.lang.Long in row 1");
+    }
+  }
+
+  @Test public void storedAsParcelable() {
+    BundleTable table = feed(3);
+    Bundle bundle = Bundler.create().put("feed", table).get();
+
+    assertThat(BundleTable.of(bundle, "feed")).isSameAs(table);
+    assertThat(BundleTable.of(bundle, "missing")).isNull();
+  }
+
+  @Test public void writesToParcel() {
+    Parcel parcel = Parcel.obtain();
+    feed(50).writeToParcel(parcel, 0);
+    parcel.setDataPosition(0);
+    BundleTable read = BundleTable.CREATOR.createFromParcel(parcel);
+    parcel.recycle();
+
+    assertThat(read.size()).isEqualTo(50);
+    assertThat(read.row(49).getLong("time")).isEqualTo(49000L);
+    assertThat(read.row(49).getString("title")).isEqualTo("Item 49");
+    assertThat(read.addRow().getInt("id")).isEqualTo(0);
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+import android.os.Bundle;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class) //
+@Config(manifest = Config.NONE) //
+public class BundleVisitorTest {
+  static class RecordingVisitor extends BundleVisitor {
+    final List<String> visits = new ArrayList<String>();
+
+    @Override public boolean enterBundle(String key, Bundle value) {
+      visits.add("enter " + key);
+      return true;
+    }
+
+    @Override public boolean exitBundle(String key, Bundle value) {
+      visits.add("exit " + key);
+      return true;
+    }
+
+    @Override public boolean visitInt(String key, int value) {
+      visits.add(key + "=" + value);
+      return true;
+    }
+
+    @Override public boolean visitLongArray(String key, long[] value) {
+      visits.add(key + "=long[" + value.length + "]");
+      return true;
+    }
+
+    @Override public boolean visitString(String key, String value) {
+      visits.add(key + "=" + value);
+      return value == null || !value.equals("stop");
+    }
+
+    @Override public boolean visitNull(String key) {
+      visits.add(key + "=null");
+      return true;
+    }
+  }
+
+  @Test public void visitsTypedValuesAndNestedBundles() {
+    Bundler bundler = Bundler.create().put("int", 3).put("long[]", new long[] {1L, 2L});
+    bundler.nest("child").put("string", "foo").put("null", (String) null);
+    RecordingVisitor visitor = new RecordingVisitor();
+
+    assertThat(bundler.accept(visitor)).isTrue();
+
+    assertThat(visitor.visits).containsOnly("int=3", "long[]=long[2]", "enter child",
+        "string=foo", "null=null", "exit child");
+    int enter = visitor.visits.indexOf("enter child");
+    assertThat(visitor.visits.subList(enter + 1, enter + 3)).containsOnly("string=foo",
+        "null=null");
+  }
+
+  @Test public void skipsNestedBundleWhenEnterReturnsFalse() {
+    Bundler bundler = Bundler.create();
+    bundler.nest("child").put("int", 3);
+    RecordingVisitor visitor = new RecordingVisitor() {
+      @Override public boolean enterBundle(String key, Bundle value) {
+        super.enterBundle(key, value);
+        return false;
+      }
+    };
+
+    assertThat(bundler.accept(visitor)).isTrue();
+    assertThat(visitor.visits).containsExactly("enter child", "exit child");
+  }
+
+  @Test public void stopsEarly() {
+    Bundler bundler = Bundler.create();
+    bundler.nest("child").put("string", "stop");
+    RecordingVisitor visitor = new RecordingVisitor();
+
+    assertThat(bundler.accept(visitor)).isFalse();
+    assertThat(visitor.visits).containsExactly("enter child", "string=stop");
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+import android.app.Fragment;
+import android.os.Bundle;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+@RunWith(RobolectricTestRunner.class) //
+@Config(manifest = Config.NONE) //
+public class BundlerMetricsTest {
+  static class RecordingMetrics extends BundlerMetrics {
+    final List<String> events = new ArrayList<String>();
+
+    RecordingMetrics() {
+    }
+
+    RecordingMetrics(int sampleInterval) {
+      super(sampleInterval);
+    }
+
+    @Override protected void onPut(String key, Class<?> type, int estimatedBytes) {
+      events.add("put " + key + " " + type.getSimpleName() + " " + estimatedBytes);
+    }
+
+    @Override protected void onPutAll(int keyCount, int estimatedBytes) {
+      events.add("putAll " + keyCount);
+    }
+
+    @Override protected void onCopy(int keyCount, long nanos) {
+      assertThat(nanos).isGreaterThanOrEqualTo(0);
+      events.add("copy " + keyCount);
+    }
+
+    @Override protected void onCopyOf(int keyCount, long nanos) {
+      events.add("copyOf " + keyCount);
+    }
+
+    @Override
+    protected void onBuild(Class<?> fragmentType, int keyCount, int estimatedBytes, long nanos) {
+      events.add("build " + keyCount);
+    }
+  }
+
+  @After public void tearDown() {
+    BundlerMetrics.setDefault(null);
+  }
+
+  @Test public void reportsPutsAndCopies() {
+    RecordingMetrics metrics = new RecordingMetrics();
+    Bundle source = new Bundle();
+    source.putInt("b", 1);
+    source.putInt("c", 2);
+
+    Bundler.create().metrics(metrics).put("a", 1).put("s", "abc").putAll(source).copy();
+
+    assertThat(metrics.events).containsExactly("put a Integer 18", "put s String 24", "putAll 2",
+        "copy 4");
+  }
+
+  @Test public void reportsPutDurations() {
+    final List<Long> durations = new ArrayList<Long>();
+    BundlerMetrics metrics = new BundlerMetrics() {
+      @Override protected void onPut(String key, Class<?> type, int estimatedBytes, long nanos) {
+        durations.add(nanos);
+      }
+    };
+
+    Bundler.create().metrics(metrics).put("a", 1).put("b", 2.5).put("s", "abc");
+
+    assertThat(durations).hasSize(3);
+    for (long nanos : durations) {
+      assertThat(nanos).isGreaterThanOrEqualTo(0);
+    }
+  }
+
+  @Test public void reportsSchemaPutsFromSlots() {
+    RecordingMetrics metrics = new RecordingMetrics();
+    SchemaBundler schemaBundler = SchemaBundler.create(SchemaBundlerTest.SCHEMA)
+        .put(SchemaBundlerTest.PAGE, 2)
+        .put(SchemaBundlerTest.TITLE, "abc");
+
+    Bundler.create().metrics(metrics).putAll(schemaBundler);
+
+    assertThat(metrics.events).containsExactly("putAll 2");
+    assertThat(schemaBundler.estimatedSize())
+        .isEqualTo(BundleValues.estimatedSize(schemaBundler.get()) - 12);
+  }
+
+  @Test public void samplesEvents() {
+    RecordingMetrics metrics = new RecordingMetrics(2);
+
+    Bundler.create().metrics(metrics).put("a", 1).put("b", 2).put("c", 3).put("d", 4);
+
+    assertThat(metrics.events).containsExactly("put b Integer 18", "put d Integer 18");
+  }
+
+  @Test public void defaultMetricsApplyToNewBundlers() {
+    Bundler before = Bundler.create();
+    RecordingMetrics metrics = new RecordingMetrics();
+    BundlerMetrics.setDefault(metrics);
+
+    before.put("a", 1);
+    Bundler.copyOf(new Bundle()).nest("n").put("b", true);
+
+    assertThat(metrics.events).containsExactly("copyOf 0", "put b Boolean 18");
+  }
+
+  @Test public void reportsFragmentBuilds() {
+    RecordingMetrics metrics = new RecordingMetrics();
+
+    FragmentBundler.create(mock(Fragment.class)).metrics(metrics).put("a", 1).build();
+
+    assertThat(metrics.events).containsExactly("put a Integer 18", "build 1");
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+import android.os.Bundle;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static junit.framework.Assert.fail;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class) //
+@Config(manifest = Config.NONE) //
+public class BundlerPoolTest {
+
+  @Test public void reusesReleasedBundlers() {
+    BundlerPool pool = new BundlerPool(1);
+    Bundler bundler = pool.acquire();
+    Bundle copy = bundler.put("foo", "bar").copy();
+
+    pool.release(bundler);
+    Bundler reused = pool.acquire();
+
+    assertThat(reused).isSameAs(bundler);
+    new BundleAssert(reused.get()).isEmpty();
+    new BundleAssert(copy).contains("foo", "bar");
+    assertThat(pool.acquire()).isNotSameAs(bundler);
+  }
+
+  @Test public void dropsBundlersBeyondMaxSize() {
+    BundlerPool pool = new BundlerPool(1);
+    Bundler first = Bundler.create();
+    Bundler second = Bundler.create();
+
+    pool.release(first);
+    pool.release(second);
+
+    assertThat(pool.acquire()).isSameAs(first);
+    assertThat(pool.acquire()).isNotSameAs(second);
+  }
+
+  @Test public void rejectsDoubleRelease() {
+    BundlerPool pool = new BundlerPool(2);
+    Bundler bundler = Bundler.create();
+    pool.release(bundler);
+    try {
+      pool.release(bundler);
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessage("Bundler is already released.");
+    }
+  }
+
+  @Test public void rejectsNestedBundlers() {
+    BundlerPool pool = new BundlerPool(2);
+    Bundler root = pool.acquire();
+    try {
+      pool.release(root.nest("child"));
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("Nested bundlers cannot be released.");
+    }
+    pool.release(root);
+  }
+
+  @Test public void releaseClearsMetrics() {
+    BundlerPool pool = new BundlerPool(1);
+    BundlerMetricsTest.RecordingMetrics metrics = new BundlerMetricsTest.RecordingMetrics();
+    Bundler bundler = pool.acquire().metrics(metrics).put("foo", 1);
+
+    pool.release(bundler);
+    pool.acquire().put("bar", 2);
+
+    assertThat(metrics.events).hasSize(1);
+  }
+}
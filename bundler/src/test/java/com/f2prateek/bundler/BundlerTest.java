@@ -18,6 +18,10 @@ package com.f2prateek.bundler;
 
 import android.os.Bundle;
 import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.assertj.core.api.Assertions;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -57,6 +61,238 @@ public class BundlerTest {
     assertThat(copy).doesNotHaveKey("foo");
   }
 
+  @Test public void deepCopyCopiesMutableValues() {
+    int[] ints = new int[] { 1, 2 };
+    ArrayList<String> strings = new ArrayList<String>();
+    strings.add("a");
+    Bundler.of(bundle)
+        .put("int[]", ints)
+        .putStringArrayList("ArrayList<String>", strings)
+        .nest("nested")
+        .put("int[]", ints);
+
+    Bundle copy = Bundler.of(bundle).deepCopy();
+    ints[0] = 3;
+    strings.add("b");
+
+    assertThat(copy).hasSize(3)
+        .contains("int[]", new int[] { 1, 2 })
+        .contains("ArrayList<String>", new ArrayList<String>(strings.subList(0, 1)));
+    assertThat(copy.getBundle("nested")).contains("int[]", new int[] { 1, 2 });
+  }
+
+  @Test public void deepCopyOnExecutor() {
+    Bundler.of(bundle).put("small", 1).put("large", new long[] { 1L, 2L, 3L });
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Bundle copy = Bundler.of(bundle).deepCopy(executor, 3);
+
+      assertThat(copy).hasSize(2).contains("small", 1).contains("large", new long[] { 1L, 2L, 3L });
+      Assertions.assertThat(copy.getLongArray("large")).isNotSameAs(bundle.getLongArray("large"));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test public void nestWritesIntoChildBundle() {
+    Bundler.of(bundle)
+        .nest("config")
+        .put("retries", 3)
+        .nest("network")
+        .put("timeout", 10L)
+        .up()
+        .up()
+        .put("id", 1);
+
+    assertThat(bundle).hasSize(2).contains("id", 1);
+    Bundle config = bundle.getBundle("config");
+    assertThat(config).hasSize(2).contains("retries", 3);
+    assertThat(config.getBundle("network")).contains("timeout", 10L);
+  }
+
+  @Test public void nestReusesExistingBundle() {
+    Bundle child = new Bundle();
+    Bundler.of(bundle).put("child", child).nest("child").put("foo", "bar");
+
+    assertThat(bundle.getBundle("child")).isSameAs(child);
+    assertThat(child).contains("foo", "bar");
+  }
+
+  @Test public void nestCopiesBundlesSharedWithCopiedSource() {
+    Bundle child = new Bundle();
+    child.putBundle("grandchild", new Bundle());
+    bundle.putBundle("child", child);
+
+    Bundle copy = Bundler.copyOf(bundle).nest("child").put("foo", "bar")
+        .nest("grandchild").put("baz", 1).up().up().get();
+    Bundle merged = Bundler.create().putAll(bundle).nest("child").put("foo", "qux").up().get();
+
+    assertThat(child).hasSize(1).doesNotHaveKey("foo");
+    Assertions.assertThat(child.getBundle("grandchild").isEmpty()).isTrue();
+    assertThat(copy.getBundle("child")).contains("foo", "bar");
+    assertThat(copy.getBundle("child").getBundle("grandchild")).contains("baz", 1);
+    assertThat(merged.getBundle("child")).contains("foo", "qux");
+  }
+
+  @Test public void nestedMutationInvalidatesParentMarshal() {
+    Bundler bundler = Bundler.of(bundle);
+    Bundler nested = bundler.nest("child");
+    MarshalledBundle marshalled = bundler.marshal();
+
+    nested.put("foo", "bar");
+
+    Assertions.assertThat(bundler.marshal()).isNotSameAs(marshalled);
+  }
+
+  @Test(expected = IllegalStateException.class) public void upRequiresNesting() {
+    Bundler.create().up();
+  }
+
+  @Test public void marshalIsCachedUntilMutated() {
+    Bundler bundler = Bundler.of(bundle).put("foo", "bar");
+
+    MarshalledBundle marshalled = bundler.marshal();
+    Assertions.assertThat(bundler.marshal()).isSameAs(marshalled);
+
+    bundler.put("foo", "baz");
+    Assertions.assertThat(bundler.marshal()).isNotSameAs(marshalled);
+  }
+
+  static Supplier<String> counting(final AtomicInteger calls, final String value) {
+    return new Supplier<String>() {
+      @Override public String get() {
+        calls.incrementAndGet();
+        return value;
+      }
+    };
+  }
+
+  @Test public void suppliersAreCalledOnceWhenNeeded() {
+    AtomicInteger calls = new AtomicInteger();
+    Bundler bundler = Bundler.create().put("title", counting(calls, "Home"));
+    Assertions.assertThat(calls.get()).isEqualTo(0);
+
+    assertThat(bundler.get()).contains("title", "Home");
+    bundler.copy();
+    Assertions.assertThat(calls.get()).isEqualTo(1);
+  }
+
+  @Test public void overwrittenSuppliersNeverRun() {
+    AtomicInteger calls = new AtomicInteger();
+    AtomicInteger replacementCalls = new AtomicInteger();
+    Bundler bundler = Bundler.create()
+        .put("a", counting(calls, "first"))
+        .put("a", "plain")
+        .put("b", counting(calls, "first"))
+        .put("b", counting(replacementCalls, "second"));
+    bundler.nest("child").put("c", counting(calls, "first")).reset();
+
+    assertThat(bundler.get()).contains("a", "plain").contains("b", "second");
+    Assertions.assertThat(bundler.get().getBundle("child").isEmpty()).isTrue();
+    Assertions.assertThat(calls.get()).isEqualTo(0);
+    Assertions.assertThat(replacementCalls.get()).isEqualTo(1);
+  }
+
+  @Test public void pendingSuppliersStayOutOfTheBundle() {
+    Bundle target = new Bundle();
+    target.putString("title", "Old");
+    Bundler bundler = Bundler.of(target).put("title", counting(new AtomicInteger(), "Home"));
+
+    Assertions.assertThat(target.containsKey("title")).isFalse();
+    Assertions.assertThat(target.isEmpty()).isTrue();
+
+    bundler.get();
+    assertThat(target).contains("title", "Home");
+  }
+
+  @Test public void nestedSuppliersRunWhenParentIsNeeded() {
+    Bundler bundler = Bundler.of(bundle);
+    bundler.nest("child").put("foo", counting(new AtomicInteger(), "bar"));
+
+    assertThat(bundler.get().getBundle("child")).contains("foo", "bar");
+  }
+
+  @Test public void suppliersEvaluateOnExecutor() {
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      AtomicInteger calls = new AtomicInteger();
+      Bundler bundler = Bundler.of(bundle)
+          .put("a", counting(calls, "x"))
+          .put("b", counting(calls, "y"))
+          .evaluate(executor);
+
+      Assertions.assertThat(calls.get()).isEqualTo(2);
+      assertThat(bundle).contains("a", "x").contains("b", "y");
+      bundler.get();
+      Assertions.assertThat(calls.get()).isEqualTo(2);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  static Supplier<String> failingOnce(final AtomicInteger calls, final String value) {
+    return new Supplier<String>() {
+      @Override public String get() {
+        if (calls.incrementAndGet() == 1) {
+          throw new IllegalStateException("failure");
+        }
+        return value;
+      }
+    };
+  }
+
+  @Test public void failedSuppliersStayPending() {
+    AtomicInteger calls = new AtomicInteger();
+    AtomicInteger laterCalls = new AtomicInteger();
+    Bundler bundler = Bundler.of(bundle)
+        .put("a", failingOnce(calls, "x"))
+        .put("b", counting(laterCalls, "y"));
+    try {
+      bundler.get();
+      Assertions.fail("Expected IllegalStateException");
+    } catch (IllegalStateException expected) {
+      Assertions.assertThat(expected).hasMessage("failure");
+    }
+    Assertions.assertThat(laterCalls.get()).isEqualTo(0);
+
+    assertThat(bundler.get()).contains("a", "x").contains("b", "y");
+    Assertions.assertThat(calls.get()).isEqualTo(2);
+    Assertions.assertThat(laterCalls.get()).isEqualTo(1);
+  }
+
+  @Test public void failedSuppliersStayPendingOnExecutor() {
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      AtomicInteger calls = new AtomicInteger();
+      AtomicInteger otherCalls = new AtomicInteger();
+      Bundler bundler = Bundler.of(bundle)
+          .put("a", failingOnce(calls, "x"))
+          .put("b", counting(otherCalls, "y"));
+      try {
+        bundler.evaluate(executor);
+        Assertions.fail("Expected IllegalStateException");
+      } catch (IllegalStateException expected) {
+        Assertions.assertThat(expected.getCause()).hasMessage("failure");
+      }
+      Assertions.assertThat(bundle.getString("b")).isEqualTo("y");
+
+      assertThat(bundler.get()).contains("a", "x").contains("b", "y");
+      Assertions.assertThat(otherCalls.get()).isEqualTo(1);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test public void suppliersInReplacedNestedBundlesNeverRun() {
+    AtomicInteger calls = new AtomicInteger();
+    Bundler bundler = Bundler.of(bundle);
+    bundler.nest("child").nest("grandchild").put("foo", counting(calls, "bar"));
+    bundler.put("child", new Bundle());
+
+    Assertions.assertThat(bundler.get().getBundle("child").isEmpty()).isTrue();
+    Assertions.assertThat(calls.get()).isEqualTo(0);
+  }
+
   @Test public void put() {
     ArrayList<Integer> integerArrayList = new ArrayList<Integer>();
     integerArrayList.add(3);
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+import android.os.Bundle;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Covers only what differs from {@link IntList}: the array type it is stored as and how elements
+ * compare. Growth, indexing and array sharing are the same code and are tested in
+ * {@link IntListTest}.
+ */
+@RunWith(RobolectricTestRunner.class) //
+@Config(manifest = Config.NONE) //
+public class DoubleListTest {
+  @Test public void storedAsDoubleArray() {
+    double[] elements = new double[] {0.1};
+    DoubleList full = DoubleList.wrap(elements);
+    DoubleList partial = DoubleList.create().add(1.5).add(-2.5);
+
+    Bundle bundle = Bundler.create().put("full", full).put("partial", partial).get();
+    full.set(0, 2.0);
+
+    assertThat(bundle.getDoubleArray("full")).isSameAs(elements).containsExactly(0.1);
+    assertThat(bundle.getDoubleArray("partial")).containsExactly(1.5, -2.5);
+  }
+
+  @Test public void comparesElementsByBits() {
+    DoubleList nan = DoubleList.create().add(Double.NaN);
+
+    assertThat(nan).isEqualTo(DoubleList.create().add(Double.NaN));
+    assertThat(nan.hashCode()).isEqualTo(DoubleList.create().add(Double.NaN).hashCode());
+    assertThat(DoubleList.create().add(0.0)).isNotEqualTo(DoubleList.create().add(-0.0));
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+import android.os.Bundle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static junit.framework.Assert.fail;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class) //
+@Config(manifest = Config.NONE) //
+public class FieldBinderTest {
+  static class Base {
+    private long id;
+  }
+
+  static class Model extends Base {
+    static int ignoredStatic = 7;
+    transient String ignoredTransient = "transient";
+    int count;
+    boolean enabled;
+    double ratio;
+    String name;
+    int[] values;
+    ArrayList<String> tags;
+  }
+
+  @Test public void writesFieldsByName() {
+    Model model = new Model();
+    ((Base) model).id = 42L;
+    model.count = 3;
+    model.enabled = true;
+    model.ratio = 0.5;
+    model.name = "a string";
+    model.values = new int[] {1, 2};
+    model.tags = new ArrayList<String>(Arrays.asList("x", "y"));
+
+    Bundle bundle = Bundler.create().putFields(model).get();
+
+    assertThat(bundle.keySet()).containsOnly("id", "count", "enabled", "ratio", "name", "values",
+        "tags");
+    assertThat(bundle.getLong("id")).isEqualTo(42L);
+    assertThat(bundle.getInt("count")).isEqualTo(3);
+    assertThat(bundle.getBoolean("enabled")).isTrue();
+    assertThat(bundle.getDouble("ratio")).isEqualTo(0.5);
+    assertThat(bundle.getString("name")).isEqualTo("a string");
+    assertThat(bundle.getIntArray("values")).containsExactly(1, 2);
+    assertThat(bundle.getStringArrayList("tags")).containsExactly("x", "y");
+  }
+
+  @Test public void readsFieldsBackAndSkipsMissingKeys() {
+    Model model = new Model();
+    model.count = 3;
+    model.name = "a string";
+    Bundle bundle = Bundler.create().putFields(model).get();
+    bundle.remove("count");
+
+    Model read = new Model();
+    read.count = 9;
+    assertThat(Bundler.readFields(bundle, read)).isSameAs(read);
+
+    assertThat(read.count).isEqualTo(9);
+    assertThat(read.name).isEqualTo("a string");
+    assertThat(read.ignoredTransient).isEqualTo("transient");
+  }
+
+  @Test public void cachesBinderPerClass() {
+    assertThat(FieldBinder.of(Model.class)).isSameAs(FieldBinder.of(Model.class));
+  }
+
+  @Test public void rejectsMismatchedObjectValue() {
+    Bundle bundle = new Bundle();
+    bundle.putString("values", "not an array");
+    try {
+      Bundler.readFields(bundle, new Model());
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("Value for key values is a java.lang.String, not a [I");
+    }
+  }
+
+  @Test public void rejectsMismatchedPrimitiveValue() {
+    Bundle bundle = new Bundle();
+    bundle.putString("count", "3");
+    try {
+      Bundler.readFields(bundle, new Model());
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("Value for key count is a java.lang.String, not a int");
+    }
+  }
+
+  @Test public void rejectsNullPrimitiveValue() {
+    Bundle bundle = new Bundle();
+    bundle.putString("ratio", null);
+    try {
+      Bundler.readFields(bundle, new Model());
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("Value for key ratio is null, not a double");
+    }
+  }
+
+  static class Hiding extends Base {
+    String id;
+  }
+
+  @Test public void rejectsFieldsHidingInheritedFields() {
+    try {
+      Bundler.create().putFields(new Hiding());
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("Field id of " + Hiding.class.getName() + " hides a field of "
+          + Base.class.getName() + " with the same key.");
+    }
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+import android.os.Bundle;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static junit.framework.Assert.fail;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class) //
+@Config(manifest = Config.NONE) //
+public class FlagSetTest {
+  static final FlagSchema SCHEMA = FlagSchema.of("a", "b", "c");
+
+  @Test public void setAndGet() {
+    FlagSet flags = FlagSet.create(SCHEMA).set("a", true).set("c", true).set("a", false);
+
+    assertThat(flags.get("a")).isFalse();
+    assertThat(flags.get("b")).isFalse();
+    assertThat(flags.get(SCHEMA.indexOf("c"))).isTrue();
+  }
+
+  @Test public void storedUnderSingleKey() {
+    Bundle bundle = Bundler.create().put("flags", FlagSet.create(SCHEMA).set("b", true)).get();
+
+    assertThat(bundle.size()).isEqualTo(1);
+    assertThat(bundle.getLongArray("flags")).containsOnly(2L);
+    assertThat(FlagSet.of(SCHEMA, bundle, "flags").get("b")).isTrue();
+  }
+
+  @Test public void spansMultipleWords() {
+    String[] names = new String[130];
+    for (int i = 0; i < names.length; i++) {
+      names[i] = "flag" + i;
+    }
+    FlagSchema schema = FlagSchema.of(names);
+    FlagSet flags = FlagSet.create(schema).set("flag0", true).set("flag64", true).set(129, true);
+
+    Bundle bundle = Bundler.create().put("flags", flags).get();
+    FlagSet read = FlagSet.of(schema, bundle, "flags");
+
+    assertThat(bundle.getLongArray("flags")).hasSize(3);
+    assertThat(read).isEqualTo(flags);
+    assertThat(read.get("flag63")).isFalse();
+    assertThat(read.get("flag64")).isTrue();
+  }
+
+  @Test public void readsMissingKeyAsCleared() {
+    FlagSet flags = FlagSet.of(SCHEMA, new Bundle(), "flags");
+
+    assertThat(flags).isEqualTo(FlagSet.create(SCHEMA));
+  }
+
+  @Test public void rejectsDuplicateNames() {
+    try {
+      FlagSchema.of("a", "a");
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("Duplicate flag name: a");
+    }
+  }
+
+  @Test public void rejectsUnknownNames() {
+    try {
+      FlagSet.create(SCHEMA).set("d", true);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("Unknown flag: d");
+    }
+  }
+}
@@ -4,6 +4,7 @@ import android.app.Fragment;
 import android.os.Bundle;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
@@ -11,6 +12,7 @@ import static junit.framework.Assert.fail;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @RunWith(RobolectricTestRunner.class) //
 @Config(manifest = Config.NONE) //
@@ -27,6 +29,117 @@ public class FragmentBundlerTest {
     verify(fragment).setArguments(bundle);
   }
 
+  @Test public void testPutReferencePassesToken() {
+    Object value = new Object();
+    Fragment fragment = mock(Fragment.class);
+    FragmentBundler.create(fragment).putReference("KEY_A", value).build();
+
+    ArgumentCaptor<Bundle> arguments = ArgumentCaptor.forClass(Bundle.class);
+    verify(fragment).setArguments(arguments.capture());
+    ArgumentRegistry registry = ArgumentRegistry.getDefault();
+    assertThat(registry.resolve(arguments.getValue(), "KEY_A")).isSameAs(value);
+
+    registry.release(arguments.getValue());
+    assertThat(registry.resolve(arguments.getValue(), "KEY_A")).isNull();
+  }
+
+  @Test public void testOverwrittenAndResetReferencesAreDiscarded() {
+    ArgumentRegistry registry = new ArgumentRegistry(4);
+    ArgumentRegistry.setDefault(registry);
+    Object value = new Object();
+    FragmentBundler<Fragment> bundler = FragmentBundler.create(mock(Fragment.class))
+        .putReference("KEY_A", new Object())
+        .putReference("KEY_A", value)
+        .putReference("KEY_B", new Object());
+    assertThat(registry.size()).isEqualTo(2);
+
+    bundler.put("KEY_B", "plain").build();
+    assertThat(registry.size()).isEqualTo(1);
+
+    bundler.reset(mock(Fragment.class)).putReference("KEY_C", new Object());
+    bundler.reset(mock(Fragment.class));
+    assertThat(registry.size()).isEqualTo(1);
+    ArgumentRegistry.setDefault(new ArgumentRegistry(64));
+  }
+
+  @Test public void testResetReusesBundlerForNextFragment() {
+    Fragment first = mock(Fragment.class);
+    Fragment second = mock(Fragment.class);
+    FragmentBundler<Fragment> bundler = FragmentBundler.create(first).put("KEY_A", "a string");
+    bundler.build();
+
+    assertThat(bundler.reset(second).put("KEY_B", 2).build()).isSameAs(second);
+
+    Bundle bundle = new Bundle();
+    bundle.putInt("KEY_B", 2);
+    verify(second).setArguments(bundle);
+  }
+
+  @Test public void testUpdateMergesChangedKeysIntoExistingArguments() {
+    Fragment fragment = FragmentBundler.create(new Fragment())
+        .put("KEY_A", "a string")
+        .put("KEY_B", new int[] {1, 2})
+        .build();
+    Bundle arguments = fragment.getArguments();
+
+    assertThat(FragmentBundler.create(fragment)
+        .put("KEY_A", "a string")
+        .put("KEY_B", new int[] {1, 2})
+        .put("KEY_C", 3)
+        .update(fragment)).containsExactly("KEY_C");
+    assertThat(FragmentBundler.create(fragment).put("KEY_A", "another string").update(fragment))
+        .containsExactly("KEY_A");
+
+    assertThat(fragment.getArguments()).isSameAs(arguments);
+    assertThat(arguments.getString("KEY_A")).isEqualTo("another string");
+    assertThat(arguments.getInt("KEY_C")).isEqualTo(3);
+  }
+
+  @Test public void testUpdateRequiresArguments() {
+    Fragment fragment = mock(Fragment.class);
+    try {
+      FragmentBundler.create(fragment).put("KEY_A", "a string").update(fragment);
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessage(
+          "Fragment has no arguments to update. Build it with build() before updating it.");
+    }
+  }
+
+  @Test public void testUpdateRetainsReferencesOnce() {
+    ArgumentRegistry registry = new ArgumentRegistry(4);
+    ArgumentRegistry.setDefault(registry);
+    Fragment fragment = mock(Fragment.class);
+    Bundle arguments = new Bundle();
+    when(fragment.getArguments()).thenReturn(arguments);
+    FragmentBundler<Fragment> bundler =
+        FragmentBundler.create(fragment).putReference("KEY_A", new Object());
+
+    bundler.update(fragment);
+    bundler.update(fragment);
+
+    assertThat(arguments.getStringArray(ArgumentRegistry.TOKENS_KEY)).hasSize(1);
+    registry.release(arguments);
+    assertThat(registry.size()).isEqualTo(0);
+    ArgumentRegistry.setDefault(new ArgumentRegistry(64));
+  }
+
+  @Test public void testBuildSharesBaseLayer() {
+    LayeredBundle base = LayeredBundle.freeze(Bundler.create().put("KEY_A", "a string").get());
+    Fragment first = mock(Fragment.class);
+    Fragment second = mock(Fragment.class);
+    FragmentBundler.create(first).base(base).put("KEY_B", 1).build();
+    FragmentBundler.create(second).base(base).put("KEY_B", 2).build();
+
+    ArgumentCaptor<Bundle> firstArguments = ArgumentCaptor.forClass(Bundle.class);
+    ArgumentCaptor<Bundle> secondArguments = ArgumentCaptor.forClass(Bundle.class);
+    verify(first).setArguments(firstArguments.capture());
+    verify(second).setArguments(secondArguments.capture());
+    assertThat(firstArguments.getValue().get(LayeredBundle.BASE_KEY))
+        .isSameAs(secondArguments.getValue().get(LayeredBundle.BASE_KEY));
+    assertThat(LayeredBundle.get(secondArguments.getValue(), "KEY_A")).isEqualTo("a string");
+  }
+
   static class FooFragment extends Fragment {
     public FooFragment(@SuppressWarnings("UnusedParameters") String arg) {
     }
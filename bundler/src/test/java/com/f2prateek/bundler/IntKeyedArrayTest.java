@@ -0,0 +1,218 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+import android.os.Bundle;
+import android.os.Parcel;
+import android.os.Parcelable;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static junit.framework.Assert.fail;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class) //
+@Config(manifest = Config.NONE, shadows = ShadowByteParcel.class) //
+public class IntKeyedArrayTest {
+  @Test public void appendsAndLooksUpByKey() {
+    Bundle a = new Bundle();
+    Bundle b = new Bundle();
+    Bundle c = new Bundle();
+    IntKeyedArray<Bundle> array = IntKeyedArray.<Bundle>create(1).append(2, a).append(10, b);
+    array.append(5, c);
+
+    assertThat(array.size()).isEqualTo(3);
+    assertThat(array.keyAt(1)).isEqualTo(5);
+    assertThat(array.get(5)).isSameAs(c);
+    assertThat(array.get(10)).isSameAs(b);
+    assertThat(array.get(3)).isNull();
+  }
+
+  @Test public void putReplacesExistingValue() {
+    Bundle a = new Bundle();
+    Bundle b = new Bundle();
+    IntKeyedArray<Bundle> array = IntKeyedArray.<Bundle>create().append(1, a).put(1, b);
+
+    assertThat(array.size()).isEqualTo(1);
+    assertThat(array.get(1)).isSameAs(b);
+  }
+
+  @Test public void appendsSortedKeysInBulk() {
+    Bundle[] values = new Bundle[] {new Bundle(), new Bundle(), new Bundle()};
+    IntKeyedArray<Bundle> array = IntKeyedArray.<Bundle>create().append(0, new Bundle())
+        .appendAll(new int[] {1, 4, 9}, values);
+
+    assertThat(array.size()).isEqualTo(4);
+    assertThat(array.get(9)).isSameAs(values[2]);
+    assertThat(array.toSparseArray().get(4)).isSameAs(values[1]);
+  }
+
+  @Test public void rejectsUnsortedBulkKeys() {
+    try {
+      IntKeyedArray.<Bundle>create().append(5, new Bundle())
+          .appendAll(new int[] {5, 6}, new Bundle[] {new Bundle(), new Bundle()});
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("Keys must be ascending and greater than existing keys, found 5");
+    }
+  }
+
+  @Test public void storedAsParcelable() {
+    IntKeyedArray<Bundle> array = IntKeyedArray.<Bundle>create().append(1, new Bundle());
+    Bundle bundle = Bundler.create().put("rows", array).get();
+
+    assertThat(IntKeyedArray.<Bundle>of(bundle, "rows")).isSameAs(array);
+    assertThat(IntKeyedArray.<Bundle>of(bundle, "missing")).isNull();
+  }
+
+  @Test public void homogeneousValuesWriteClassNameOnce() {
+    BundleTable first = BundleTableTest.feed(2);
+    BundleTable second = BundleTableTest.feed(3);
+    IntKeyedArray<BundleTable> array =
+        IntKeyedArray.<BundleTable>create().append(1, first).append(7, second);
+
+    Parcel expected = Parcel.obtain();
+    expected.writeInt(2);
+    expected.writeInt(1);
+    expected.writeInt(7);
+    expected.writeString(BundleTable.class.getName());
+    first.writeToParcel(expected, 0);
+    second.writeToParcel(expected, 0);
+    byte[] bytes = marshall(array);
+    assertThat(bytes).isEqualTo(expected.marshall());
+    expected.recycle();
+
+    IntKeyedArray<?> copy = unmarshall(bytes);
+    assertThat(copy.size()).isEqualTo(2);
+    assertThat(copy.keyAt(1)).isEqualTo(7);
+    BundleTable table = (BundleTable) copy.get(7);
+    assertThat(table.size()).isEqualTo(3);
+    assertThat(table.row(2).getString("title")).isEqualTo("Item 2");
+    assertThat(((BundleTable) copy.get(1)).row(1).getLong("time")).isEqualTo(1000L);
+  }
+
+  @Test public void mixedAndNullValuesWriteEachClassName() {
+    BundleTable table = BundleTableTest.feed(1);
+    MarshalledBundle marshalled = MarshalledBundle.fromByteArray(new byte[] {1, 2, 3});
+    IntKeyedArray<Parcelable> array = IntKeyedArray.<Parcelable>create()
+        .append(1, table)
+        .append(2, null)
+        .append(3, marshalled);
+
+    Parcel expected = Parcel.obtain();
+    expected.writeInt(3);
+    expected.writeInt(1);
+    expected.writeInt(2);
+    expected.writeInt(3);
+    expected.writeString(null);
+    expected.writeParcelable(table, 0);
+    expected.writeParcelable(null, 0);
+    expected.writeParcelable(marshalled, 0);
+    byte[] bytes = marshall(array);
+    assertThat(bytes).isEqualTo(expected.marshall());
+    expected.recycle();
+
+    IntKeyedArray<?> copy = unmarshall(bytes);
+    assertThat(copy.size()).isEqualTo(3);
+    assertThat(((BundleTable) copy.get(1)).row(0).getString("title")).isEqualTo("Item 0");
+    assertThat(copy.get(2)).isNull();
+    assertThat(((MarshalledBundle) copy.get(3)).toByteArray()).isEqualTo(new byte[] {1, 2, 3});
+  }
+
+  @Test public void nullOnlyValuesRoundTrip() {
+    IntKeyedArray<Bundle> array = IntKeyedArray.<Bundle>create().append(4, null);
+
+    IntKeyedArray<?> copy = unmarshall(marshall(array));
+
+    assertThat(copy.size()).isEqualTo(1);
+    assertThat(copy.keyAt(0)).isEqualTo(4);
+    assertThat(copy.get(4)).isNull();
+  }
+
+  @Test public void rejectsValueClassWithoutCreator() {
+    Parcel parcel = Parcel.obtain();
+    parcel.writeInt(1);
+    parcel.writeInt(0);
+    parcel.writeString(IntKeyedArrayTest.class.getName());
+    try {
+      unmarshall(parcel.marshall());
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessage("Unable to find CREATOR for " + IntKeyedArrayTest.class.getName());
+    } finally {
+      parcel.recycle();
+    }
+  }
+
+  @Test public void readsValuesWithGivenClassLoader() {
+    IntKeyedArray<BundleTable> array =
+        IntKeyedArray.<BundleTable>create().append(1, BundleTableTest.feed(1));
+    byte[] bytes = marshall(array);
+    RecordingClassLoader classLoader = new RecordingClassLoader();
+
+    Parcel parcel = Parcel.obtain();
+    IntKeyedArray<?> copy;
+    try {
+      parcel.unmarshall(bytes, 0, bytes.length);
+      parcel.setDataPosition(0);
+      copy = IntKeyedArray.CREATOR.createFromParcel(parcel, classLoader);
+    } finally {
+      parcel.recycle();
+    }
+
+    assertThat(classLoader.loaded).contains(BundleTable.class.getName());
+    assertThat(((BundleTable) copy.get(1)).row(0).getString("title")).isEqualTo("Item 0");
+  }
+
+  static class RecordingClassLoader extends ClassLoader {
+    final List<String> loaded = new ArrayList<String>();
+
+    RecordingClassLoader() {
+      super(IntKeyedArrayTest.class.getClassLoader());
+    }
+
+    @Override public Class<?> loadClass(String name) throws ClassNotFoundException {
+      loaded.add(name);
+      return super.loadClass(name);
+    }
+  }
+
+  private static byte[] marshall(Parcelable value) {
+    Parcel parcel = Parcel.obtain();
+    try {
+      value.writeToParcel(parcel, 0);
+      return parcel.marshall();
+    } finally {
+      parcel.recycle();
+    }
+  }
+
+  private static IntKeyedArray<?> unmarshall(byte[] bytes) {
+    Parcel parcel = Parcel.obtain();
+    try {
+      parcel.unmarshall(bytes, 0, bytes.length);
+      parcel.setDataPosition(0);
+      return IntKeyedArray.CREATOR.createFromParcel(parcel);
+    } finally {
+      parcel.recycle();
+    }
+  }
+}
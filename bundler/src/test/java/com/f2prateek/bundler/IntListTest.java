@@ -0,0 +1,82 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+import android.os.Bundle;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static junit.framework.Assert.fail;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class) //
+@Config(manifest = Config.NONE) //
+public class IntListTest {
+  @Test public void growsPastInitialCapacity() {
+    IntList list = IntList.create(1);
+    for (int i = 0; i < 20; i++) {
+      list.add(i);
+    }
+
+    assertThat(list.size()).isEqualTo(20);
+    assertThat(list.get(19)).isEqualTo(19);
+    assertThat(list.toArray()).hasSize(20);
+  }
+
+  @Test public void storedAsPrimitiveArray() {
+    Bundle bundle = Bundler.create().put("key", IntList.create().add(1).add(2)).get();
+
+    assertThat(bundle.getIntArray("key")).containsExactly(1, 2);
+  }
+
+  @Test public void readsStoredArrayWithoutCopying() {
+    int[] stored = new int[] {1, 2};
+    Bundle bundle = new Bundle();
+    bundle.putIntArray("key", stored);
+
+    IntList list = IntList.of(bundle, "key");
+    list.set(0, 19);
+
+    assertThat(stored[0]).isEqualTo(19);
+    assertThat(list).isEqualTo(IntList.create().add(19).add(2));
+    assertThat(IntList.of(bundle, "missing")).isNull();
+  }
+
+  @Test public void storesFullArrayWithoutCopyingUntilChanged() {
+    int[] elements = new int[] {1, 2};
+    IntList list = IntList.wrap(elements);
+
+    Bundle bundle = Bundler.create().put("key", list).get();
+    list.set(0, 19);
+
+    assertThat(bundle.getIntArray("key")).isSameAs(elements).containsExactly(1, 2);
+    assertThat(list.get(0)).isEqualTo(19);
+    IntList partial = IntList.create(4).add(1);
+    assertThat(Bundler.create().put("key", partial).get().getIntArray("key")).containsExactly(1);
+  }
+
+  @Test public void rejectsIndexOutOfRange() {
+    try {
+      IntList.create(4).add(1).get(1);
+      fail();
+    } catch (IndexOutOfBoundsException e) {
+      assertThat(e).hasMessage("Index: 1, size: 1");
+    }
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+import android.content.Intent;
+import android.os.Bundle;
+import java.util.ArrayList;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class) //
+@Config(manifest = Config.NONE) //
+public class IntentBundlerTest {
+
+  @Test public void writesExtrasIntoIntent() {
+    Intent intent = new Intent("action");
+    ArrayList<String> strings = new ArrayList<String>();
+    strings.add("a string");
+
+    Intent result = IntentBundler.of(intent)
+        .put("int", 2)
+        .put("string", "bundler")
+        .put("long[]", new long[] { 1L, 2L })
+        .putStringArrayList("ArrayList<String>", strings)
+        .putAll(Bundler.create().put("all", true).get())
+        .get();
+
+    assertThat(result).isSameAs(intent);
+    new BundleAssert(intent.getExtras()).hasSize(5)
+        .contains("int", 2)
+        .contains("string", "bundler")
+        .contains("long[]", new long[] { 1L, 2L })
+        .contains("ArrayList<String>", strings)
+        .contains("all", true);
+  }
+
+  @Test public void writesFlagSetAsLongArray() {
+    FlagSchema schema = FlagSchema.of("a", "b");
+    Intent intent = IntentBundler.of(new Intent())
+        .put("flags", FlagSet.create(schema).set("b", true))
+        .get();
+
+    Bundle extras = intent.getExtras();
+    assertThat(FlagSet.of(schema, extras, "flags").get("b")).isTrue();
+  }
+
+  static class Fields {
+    int count = 3;
+    double ratio = 0.5;
+    String title = "Home";
+    long[] ids = new long[] { 4L };
+  }
+
+  @Test public void writesFieldsAndSchemaValuesAsTypedExtras() {
+    Intent intent = IntentBundler.of(new Intent())
+        .putFields(new Fields())
+        .putAll(SchemaBundler.create(SchemaBundlerTest.SCHEMA)
+            .put(SchemaBundlerTest.PAGE, 2)
+            .put(SchemaBundlerTest.SCALE, 1.5f)
+            .put(SchemaBundlerTest.TITLE, "Schema"))
+        .get();
+
+    new BundleAssert(intent.getExtras()).hasSize(6)
+        .contains("count", 3)
+        .contains("ratio", 0.5)
+        .contains("ids", new long[] { 4L })
+        .contains("page", 2)
+        .contains("scale", 1.5f)
+        .contains("title", "Schema");
+  }
+}
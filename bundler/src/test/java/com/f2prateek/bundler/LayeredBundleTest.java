@@ -0,0 +1,213 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+import android.os.Bundle;
+import android.os.Parcel;
+import android.os.Parcelable;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class) //
+@Config(manifest = Config.NONE, shadows = ShadowByteParcel.class) //
+public class LayeredBundleTest {
+  static final LayeredBundle BASE = LayeredBundle.freeze(Bundler.create()
+      .put("environment", "production")
+      .put("experiment", 7)
+      .put("title", "Default")
+      .get());
+
+  @Test public void readsFallThroughToBase() {
+    Bundle layered = Bundler.create().base(BASE).put("title", "Home").get();
+
+    assertThat(LayeredBundle.get(layered, "title")).isEqualTo("Home");
+    assertThat(LayeredBundle.get(layered, "experiment")).isEqualTo(7);
+    assertThat(LayeredBundle.get(layered, "missing")).isNull();
+    assertThat(LayeredBundle.containsKey(layered, "environment")).isTrue();
+    assertThat(LayeredBundle.containsKey(layered, "missing")).isFalse();
+  }
+
+  @Test public void nullValuesInOverlayHideBase() {
+    Bundle layered = Bundler.create().base(BASE).put("title", (String) null).get();
+
+    assertThat(LayeredBundle.containsKey(layered, "title")).isTrue();
+    assertThat(LayeredBundle.get(layered, "title")).isNull();
+  }
+
+  @Test public void overlaysShareBase() {
+    Bundle first = Bundler.create().base(BASE).put("id", 1).get();
+    Bundle second = Bundler.create().base(BASE).put("id", 2).get();
+
+    assertThat(first.size()).isEqualTo(2);
+    assertThat(first.get(LayeredBundle.BASE_KEY))
+        .isSameAs(second.get(LayeredBundle.BASE_KEY));
+  }
+
+  @Test public void freezeCopiesBase() {
+    int[] ids = new int[] {1, 2};
+    Bundle source = Bundler.create().put("ids", ids).get();
+    LayeredBundle base = LayeredBundle.freeze(source);
+    source.putString("late", "value");
+    ids[0] = 3;
+
+    assertThat(base.get("late")).isNull();
+    assertThat((int[]) base.get("ids")).containsExactly(1, 2);
+  }
+
+  @Test public void flattenMergesLayers() {
+    Bundle layered = Bundler.create().base(BASE).put("title", "Home").put("id", 1).get();
+
+    Bundle flat = LayeredBundle.flatten(layered);
+
+    assertThat(flat.keySet()).containsOnly("environment", "experiment", "title", "id");
+    assertThat(flat.getString("title")).isEqualTo("Home");
+    assertThat(flat.getInt("experiment")).isEqualTo(7);
+    assertThat(layered.size()).isEqualTo(3);
+  }
+
+  @Test public void baseCannotBeChangedThroughArguments() {
+    Bundle layered = Bundler.create().base(BASE).get();
+
+    assertThat(layered.getBundle(LayeredBundle.BASE_KEY)).isNull();
+    Bundler.of(layered).nest(LayeredBundle.BASE_KEY).put("environment", "staging");
+
+    assertThat(BASE.get("environment")).isEqualTo("production");
+    Bundle other = Bundler.create().base(BASE).get();
+    assertThat(LayeredBundle.get(other, "environment")).isEqualTo("production");
+  }
+
+  static class Arguments {
+    String environment;
+    int experiment;
+    String title;
+  }
+
+  @Test public void readFieldsReadsThroughBase() {
+    Bundle layered = Bundler.create().base(BASE).put("title", "Home").get();
+
+    Arguments arguments = Bundler.readFields(layered, new Arguments());
+
+    assertThat(arguments.environment).isEqualTo("production");
+    assertThat(arguments.experiment).isEqualTo(7);
+    assertThat(arguments.title).isEqualTo("Home");
+  }
+
+  @Test public void projectionReadsThroughBase() {
+    Bundle layered = Bundler.create().base(BASE).put("title", "Home").get();
+
+    Bundle copy = BundleProjection.of("title", "experiment", "missing").copy(layered).get();
+
+    assertThat(copy.keySet()).containsOnly("title", "experiment");
+    assertThat(copy.getString("title")).isEqualTo("Home");
+    assertThat(copy.getInt("experiment")).isEqualTo(7);
+  }
+
+  @Test public void visitorSeesBaseValues() {
+    final List<String> visited = new ArrayList<String>();
+
+    Bundler.create().base(BASE).put("title", "Home").accept(new BundleVisitor() {
+      @Override public boolean visitInt(String key, int value) {
+        visited.add(key + "=" + value);
+        return true;
+      }
+
+      @Override public boolean visitString(String key, String value) {
+        visited.add(key + "=" + value);
+        return true;
+      }
+    });
+
+    assertThat(visited).containsOnly("environment=production", "experiment=7", "title=Home");
+  }
+
+  @Test public void visitorSeesEachKeyOnceFromItsUpperMostLayer() {
+    LayeredBundle middle = LayeredBundle.freeze(
+        Bundler.create().base(BASE).put("experiment", 8).put("title", "Middle").get());
+    final List<String> visited = new ArrayList<String>();
+
+    Bundler.create().base(middle).put("title", "Home").accept(new BundleVisitor() {
+      @Override public boolean visitInt(String key, int value) {
+        visited.add(key + "=" + value);
+        return true;
+      }
+
+      @Override public boolean visitString(String key, String value) {
+        visited.add(key + "=" + value);
+        return true;
+      }
+
+      @Override public boolean visitParcelable(String key, Parcelable value) {
+        visited.add(key);
+        return true;
+      }
+    });
+
+    assertThat(visited).containsExactly("title=Home", "experiment=8", "environment=production");
+  }
+
+  @Test public void baseIsMarshalledWithArguments() {
+    Bundle layered = Bundler.create().base(BASE).put("title", "Home").get();
+
+    Bundle read = MarshalledBundle.of(layered).toBundle();
+
+    assertThat(LayeredBundle.get(read, "title")).isEqualTo("Home");
+    assertThat(LayeredBundle.get(read, "environment")).isEqualTo("production");
+  }
+
+  @Test public void baseIsMarshalledOnce() {
+    CountingParcelable counting = new CountingParcelable();
+    LayeredBundle base = LayeredBundle.freeze(Bundler.create().put("counting", counting).get());
+    Bundle first = Bundler.create().base(base).put("id", 1).get();
+    Bundle second = Bundler.create().base(base).put("id", 2).get();
+
+    MarshalledBundle.of(first);
+    Bundle read = MarshalledBundle.of(second).toBundle();
+    MarshalledBundle.of(read);
+
+    assertThat(counting.writes).isEqualTo(1);
+    assertThat(LayeredBundle.get(read, "id")).isEqualTo(2);
+    assertThat(LayeredBundle.get(read, "counting")).isInstanceOf(CountingParcelable.class);
+  }
+
+  public static class CountingParcelable implements Parcelable {
+    int writes;
+
+    @Override public int describeContents() {
+      return 0;
+    }
+
+    @Override public void writeToParcel(Parcel dest, int flags) {
+      writes++;
+    }
+
+    public static final Creator<CountingParcelable> CREATOR = new Creator<CountingParcelable>() {
+      @Override public CountingParcelable createFromParcel(Parcel source) {
+        return new CountingParcelable();
+      }
+
+      @Override public CountingParcelable[] newArray(int size) {
+        return new CountingParcelable[size];
+      }
+    };
+  }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+import android.os.Bundle;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Covers only what differs from {@link IntList}: the array type it is stored as and how elements
+ * compare. Growth, indexing and array sharing are the same code and are tested in
+ * {@link IntListTest}.
+ */
+@RunWith(RobolectricTestRunner.class) //
+@Config(manifest = Config.NONE) //
+public class LongListTest {
+  @Test public void storedAsLongArray() {
+    long[] elements = new long[] {1L << 40};
+    LongList full = LongList.wrap(elements);
+    LongList partial = LongList.create().add(Long.MAX_VALUE).add(-1L);
+
+    Bundle bundle = Bundler.create().put("full", full).put("partial", partial).get();
+    full.set(0, 2L);
+
+    assertThat(bundle.getLongArray("full")).isSameAs(elements).containsExactly(1L << 40);
+    assertThat(bundle.getLongArray("partial")).containsExactly(Long.MAX_VALUE, -1L);
+  }
+
+  @Test public void comparesAllBitsOfElements() {
+    LongList list = LongList.create().add(1L << 32);
+
+    assertThat(list).isEqualTo(LongList.wrap(new long[] {1L << 32}));
+    assertThat(list.hashCode()).isEqualTo(LongList.wrap(new long[] {1L << 32}).hashCode());
+    assertThat(list).isNotEqualTo(LongList.create().add(0L));
+  }
+}
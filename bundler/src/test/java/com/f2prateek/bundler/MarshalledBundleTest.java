@@ -0,0 +1,80 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+import android.os.Bundle;
+import android.os.Parcel;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class) //
+@Config(manifest = Config.NONE, shadows = ShadowByteParcel.class) //
+public class MarshalledBundleTest {
+
+  @Test public void roundTripsThroughBytes() {
+    Bundle bundle = Bundler.create().put("int", 3).put("string", "bundler").get();
+
+    MarshalledBundle marshalled = MarshalledBundle.fromByteArray(
+        MarshalledBundle.of(bundle).toByteArray());
+
+    new BundleAssert(marshalled.toBundle()) //
+        .hasSize(2) //
+        .contains("int", 3) //
+        .contains("string", "bundler");
+  }
+
+  @Test public void unmarshalsSeparateBundles() {
+    MarshalledBundle marshalled = MarshalledBundle.of(Bundler.create().put("int", 3).get());
+    Bundle first = marshalled.toBundle();
+    first.putInt("int", 4);
+
+    Bundle second = marshalled.toBundle(MarshalledBundleTest.class.getClassLoader());
+
+    assertThat(second).isNotSameAs(first);
+    new BundleAssert(second).contains("int", 3);
+  }
+
+  @Test public void writesBytesToParcel() {
+    MarshalledBundle marshalled = MarshalledBundle.of(Bundler.create().put("int", 3).get());
+
+    Parcel parcel = Parcel.obtain();
+    marshalled.writeToParcel(parcel, 0);
+    parcel.setDataPosition(0);
+    MarshalledBundle read = MarshalledBundle.CREATOR.createFromParcel(parcel);
+    parcel.recycle();
+
+    assertThat(read.toByteArray()).isEqualTo(marshalled.toByteArray());
+    new BundleAssert(read.toBundle()).contains("int", 3);
+  }
+
+  @Test public void getBundleReadsLazyAndEagerValues() {
+    Bundle nested = Bundler.create().put("int", 3).get();
+    Bundle bundle = Bundler.create().put("eager", nested).putLazy("lazy", nested).get();
+
+    assertThat(bundle.get("lazy")).isInstanceOf(MarshalledBundle.class);
+    assertThat(MarshalledBundle.getBundle(bundle, "eager")).isSameAs(nested);
+    Bundle lazy = MarshalledBundle.getBundle(bundle, "lazy");
+    new BundleAssert(lazy).hasSize(1).contains("int", 3);
+    assertThat(MarshalledBundle.getBundle(bundle, "lazy")).isSameAs(lazy);
+    assertThat(bundle.get("lazy")).isSameAs(lazy);
+    assertThat(MarshalledBundle.getBundle(bundle, "missing")).isNull();
+  }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+import android.os.Bundle;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static junit.framework.Assert.fail;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class) //
+@Config(manifest = Config.NONE, shadows = ShadowByteParcel.class) //
+public class ParcelBundlerTest {
+  static Bundle sample() {
+    return Bundler.create()
+        .put("boolean", true)
+        .put("boolean[]", new boolean[] {false, true})
+        .put("byte", (byte) 1)
+        .put("byte[]", new byte[] {1, 2, 3})
+        .put("short", (short) 4)
+        .put("int", 4)
+        .put("int[]", new int[] {1, 2})
+        .put("long", 20L)
+        .put("long[]", new long[] {4L, 5L})
+        .put("float", 3.14F)
+        .put("double", Math.PI)
+        .put("double[]", new double[] {Math.PI, Math.E})
+        .put("char", 'c')
+        .put("string", "bundler")
+        .put("string[]", new String[] {"foo", null})
+        .put("null", (String) null)
+        .putStringArrayList("ArrayList<String>", new ArrayList<String>(Arrays.asList("a", "b")))
+        .put("Bundle", Bundler.create().put("int", 3).get())
+        .get();
+  }
+
+  /** Writes {@code value} with the put overload a caller would use for its type. */
+  @SuppressWarnings("unchecked")
+  static void put(ParcelBundler bundler, String key, Object value) {
+    if (value == null) {
+      bundler.put(key, (String) null);
+    } else if (value instanceof Boolean) {
+      bundler.put(key, (boolean) (Boolean) value);
+    } else if (value instanceof boolean[]) {
+      bundler.put(key, (boolean[]) value);
+    } else if (value instanceof Byte) {
+      bundler.put(key, (byte) (Byte) value);
+    } else if (value instanceof byte[]) {
+      bundler.put(key, (byte[]) value);
+    } else if (value instanceof Short) {
+      bundler.put(key, (short) (Short) value);
+    } else if (value instanceof Integer) {
+      bundler.put(key, (int) (Integer) value);
+    } else if (value instanceof int[]) {
+      bundler.put(key, (int[]) value);
+    } else if (value instanceof Long) {
+      bundler.put(key, (long) (Long) value);
+    } else if (value instanceof long[]) {
+      bundler.put(key, (long[]) value);
+    } else if (value instanceof Float) {
+      bundler.put(key, (float) (Float) value);
+    } else if (value instanceof Double) {
+      bundler.put(key, (double) (Double) value);
+    } else if (value instanceof double[]) {
+      bundler.put(key, (double[]) value);
+    } else if (value instanceof Character) {
+      bundler.put(key, (char) (Character) value);
+    } else if (value instanceof String) {
+      bundler.put(key, (String) value);
+    } else if (value instanceof String[]) {
+      bundler.put(key, (String[]) value);
+    } else if (value instanceof ArrayList) {
+      bundler.putStringArrayList(key, (ArrayList<String>) value);
+    } else if (value instanceof Bundle) {
+      bundler.put(key, (Bundle) value);
+    } else {
+      throw new AssertionError("Unexpected value " + value);
+    }
+  }
+
+  @Test public void writesSameBytesAsBundle() {
+    Bundle bundle = sample();
+    ParcelBundler bundler = ParcelBundler.create();
+    for (String key : bundle.keySet()) {
+      put(bundler, key, bundle.get(key));
+    }
+
+    assertThat(bundler.build().toByteArray()).isEqualTo(MarshalledBundle.of(bundle).toByteArray());
+  }
+
+  @Test public void writesSameBytesAsEmptyBundle() {
+    assertThat(ParcelBundler.create().build().toByteArray())
+        .isEqualTo(MarshalledBundle.of(new Bundle()).toByteArray());
+  }
+
+  @Test public void unmarshalsToEqualBundle() {
+    Bundle bundle = sample();
+    ParcelBundler bundler = ParcelBundler.create();
+    for (String key : bundle.keySet()) {
+      put(bundler, key, bundle.get(key));
+    }
+
+    Bundle read = bundler.build().toBundle();
+
+    assertThat(read.size()).isEqualTo(bundle.size());
+    for (String key : bundle.keySet()) {
+      assertThat(BundleValues.valuesEqual(read.get(key), bundle.get(key))).as(key).isTrue();
+    }
+  }
+
+  @Test public void writesEmptyBundle() {
+    ParcelBundler bundler = ParcelBundler.create();
+    assertThat(bundler.size()).isEqualTo(0);
+
+    assertThat(bundler.build().toBundle().isEmpty()).isTrue();
+  }
+
+  @Test public void rejectsDuplicateKeys() {
+    ParcelBundler bundler = ParcelBundler.create().put("int", 1);
+    try {
+      bundler.put("int", 2);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("Duplicate key: int");
+    }
+  }
+
+  @Test public void rejectsDuplicateKeysAmongManyKeys() {
+    ParcelBundler bundler = ParcelBundler.create();
+    for (int i = 0; i < 40; i++) {
+      bundler.put("key" + i, i);
+    }
+    try {
+      bundler.put("key3", 2);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("Duplicate key: key3");
+    }
+    assertThat(bundler.size()).isEqualTo(40);
+  }
+
+  static class Unserializable implements Serializable {
+    final Object field = new Object();
+  }
+
+  @Test public void dropsEntryWhoseValueFailsToWrite() {
+    ParcelBundler bundler = ParcelBundler.create().put("a", 1);
+    try {
+      bundler.put("b", new Unserializable());
+      fail();
+    } catch (RuntimeException expected) {
+    }
+
+    assertThat(bundler.size()).isEqualTo(1);
+    Bundle expected = new Bundle();
+    expected.putInt("a", 1);
+    expected.putInt("b", 2);
+    assertThat(bundler.put("b", 2).build().toByteArray())
+        .isEqualTo(MarshalledBundle.of(expected).toByteArray());
+  }
+
+  @Test public void cannotBeUsedAfterBuild() {
+    ParcelBundler bundler = ParcelBundler.create();
+    bundler.build();
+    try {
+      bundler.put("int", 1);
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessage("ParcelBundler is already built.");
+    }
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+import android.os.Bundle;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static junit.framework.Assert.fail;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class) //
+@Config(manifest = Config.NONE) //
+public class PersistentBundlerTest {
+
+  @Test public void putReturnsNewVersion() {
+    PersistentBundler first = PersistentBundler.empty().put("a", 1);
+    PersistentBundler second = first.put("a", 2).put("b", "b");
+
+    assertThat(first.size()).isEqualTo(1);
+    assertThat(first.get("a")).isEqualTo(1);
+    assertThat(first.containsKey("b")).isFalse();
+    assertThat(second.size()).isEqualTo(2);
+    assertThat(second.get("a")).isEqualTo(2);
+    assertThat(second.get("b")).isEqualTo("b");
+  }
+
+  @Test public void holdsManyKeys() {
+    PersistentBundler bundler = PersistentBundler.empty();
+    for (int i = 0; i < 2000; i++) {
+      bundler = bundler.put("key" + i, i);
+    }
+    PersistentBundler removed = bundler;
+    for (int i = 0; i < 2000; i += 2) {
+      removed = removed.remove("key" + i);
+    }
+
+    assertThat(bundler.size()).isEqualTo(2000);
+    assertThat(removed.size()).isEqualTo(1000);
+    for (int i = 0; i < 2000; i++) {
+      assertThat(bundler.get("key" + i)).isEqualTo(i);
+      assertThat(removed.containsKey("key" + i)).isEqualTo(i % 2 == 1);
+    }
+  }
+
+  @Test public void handlesHashCollisionsAndNulls() {
+    assertThat("Aa".hashCode()).isEqualTo("BB".hashCode());
+
+    PersistentBundler bundler = PersistentBundler.empty()
+        .put("Aa", 1)
+        .put("BB", 2)
+        .put(null, 3)
+        .put("nullValue", null);
+
+    assertThat(bundler.size()).isEqualTo(4);
+    assertThat(bundler.get("Aa")).isEqualTo(1);
+    assertThat(bundler.get("BB")).isEqualTo(2);
+    assertThat(bundler.get(null)).isEqualTo(3);
+    assertThat(bundler.containsKey("nullValue")).isTrue();
+    assertThat(bundler.remove("Aa").get("BB")).isEqualTo(2);
+    assertThat(bundler.remove("Aa").remove("BB").size()).isEqualTo(2);
+  }
+
+  @Test public void removeMissingKeyReturnsSameInstance() {
+    PersistentBundler bundler = PersistentBundler.empty().put("a", 1);
+
+    assertThat(bundler.remove("b")).isSameAs(bundler);
+    assertThat(bundler.remove("a")).isSameAs(PersistentBundler.empty());
+  }
+
+  @Test public void convertsToAndFromBundle() {
+    Bundle source = Bundler.create().put("int", 1).put("string[]", new String[] { "a" }).get();
+
+    Bundle bundle = PersistentBundler.copyOf(source).put("long", 2L).toBundle();
+
+    new BundleAssert(bundle).hasSize(3)
+        .contains("int", 1)
+        .contains("string[]", new String[] { "a" })
+        .contains("long", 2L);
+  }
+
+  @Test public void rejectsUnsupportedValues() {
+    try {
+      PersistentBundler.empty().put("a", new Object());
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("Unsupported value type java.lang.Object for key a");
+    }
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+import android.os.Bundle;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static junit.framework.Assert.fail;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class) //
+@Config(manifest = Config.NONE) //
+public class SchemaBundlerTest {
+  static final BundleSchema.Builder BUILDER = BundleSchema.builder();
+  static final BundleSchema.BooleanKey ENABLED = BUILDER.booleanKey("enabled");
+  static final BundleSchema.IntKey PAGE = BUILDER.intKey("page");
+  static final BundleSchema.LongKey ID = BUILDER.longKey("id");
+  static final BundleSchema.FloatKey SCALE = BUILDER.floatKey("scale");
+  static final BundleSchema.DoubleKey RATIO = BUILDER.doubleKey("ratio");
+  static final BundleSchema.ObjectKey<String> TITLE = BUILDER.key("title", String.class);
+  static final BundleSchema.ObjectKey<int[]> IDS = BUILDER.key("ids", int[].class);
+  static final BundleSchema SCHEMA = BUILDER.build();
+
+  @Test public void buildsBundleFromSlots() {
+    Bundle bundle = SchemaBundler.create(SCHEMA)
+        .put(ENABLED, true)
+        .put(PAGE, 2)
+        .put(ID, Long.MAX_VALUE)
+        .put(SCALE, 1.5f)
+        .put(RATIO, -0.25)
+        .put(TITLE, "Home")
+        .put(IDS, new int[] {1, 2})
+        .get();
+
+    assertThat(bundle.size()).isEqualTo(7);
+    assertThat(bundle.getBoolean("enabled")).isTrue();
+    assertThat(bundle.getInt("page")).isEqualTo(2);
+    assertThat(bundle.getLong("id")).isEqualTo(Long.MAX_VALUE);
+    assertThat(bundle.getFloat("scale")).isEqualTo(1.5f);
+    assertThat(bundle.getDouble("ratio")).isEqualTo(-0.25);
+    assertThat(bundle.getString("title")).isEqualTo("Home");
+    assertThat(bundle.getIntArray("ids")).containsExactly(1, 2);
+  }
+
+  @Test public void onlyWritesPresentKeys() {
+    SchemaBundler bundler = SchemaBundler.create(SCHEMA).put(PAGE, 2).put(PAGE, 3);
+
+    assertThat(bundler.size()).isEqualTo(1);
+    assertThat(bundler.containsKey(PAGE)).isTrue();
+    assertThat(bundler.containsKey(TITLE)).isFalse();
+    assertThat(bundler.get().keySet()).containsOnly("page");
+    assertThat(bundler.get().getInt("page")).isEqualTo(3);
+  }
+
+  @Test public void getIsRebuiltAfterPut() {
+    SchemaBundler bundler = SchemaBundler.create(SCHEMA).put(PAGE, 2);
+    Bundle first = bundler.get();
+
+    assertThat(bundler.get()).isSameAs(first);
+    assertThat(bundler.put(PAGE, 3).get()).isNotSameAs(first);
+    assertThat(bundler.copy()).isNotSameAs(bundler.get());
+    assertThat(bundler.reset().size()).isEqualTo(0);
+    assertThat(bundler.get().isEmpty()).isTrue();
+  }
+
+  @Test public void putAllIntoBundler() {
+    Bundle bundle = Bundler.create()
+        .put("other", 1)
+        .putAll(SchemaBundler.create(SCHEMA).put(TITLE, "Home"))
+        .get();
+
+    assertThat(bundle.keySet()).containsOnly("other", "title");
+  }
+
+  @Test public void rejectsKeysOfOtherSchemas() {
+    BundleSchema.Builder builder = BundleSchema.builder();
+    BundleSchema.IntKey page = builder.intKey("page");
+    builder.build();
+    try {
+      SchemaBundler.create(SCHEMA).put(page, 1);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("Key page is not declared by this schema.");
+    }
+  }
+
+  @Test public void rejectsInvalidDeclarations() {
+    BundleSchema.Builder builder = BundleSchema.builder();
+    builder.intKey("page");
+    try {
+      builder.longKey("page");
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("Duplicate key: page");
+    }
+    try {
+      builder.key("thread", Thread.class);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("Unsupported value type java.lang.Thread for key thread");
+    }
+  }
+}
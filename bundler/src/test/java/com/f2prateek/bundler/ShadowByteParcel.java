@@ -0,0 +1,206 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+import android.os.Parcel;
+import java.util.Arrays;
+import org.robolectric.Robolectric;
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+
+/**
+ * A Parcel shadow that stores its data as bytes laid out like the native Parcel: little-endian
+ * primitives, length-prefixed UTF-16 strings and byte arrays padded to four bytes. Robolectric's
+ * own shadow keeps a list of values and does not support {@link Parcel#marshall()},
+ * {@link Parcel#unmarshall(byte[], int, int)} or moving the data position, which Bundle's own
+ * {@link android.os.Bundle#writeToParcel(Parcel, int)} relies on.
+ */
+@Implements(Parcel.class)
+public class ShadowByteParcel {
+  private byte[] data = new byte[64];
+  private int position;
+  private int size;
+
+  @Implementation public static Parcel obtain() {
+    return Robolectric.newInstanceOf(Parcel.class);
+  }
+
+  @Implementation public void recycle() {
+  }
+
+  @Implementation public boolean pushAllowFds(boolean allowFds) {
+    return true;
+  }
+
+  @Implementation public void restoreAllowFds(boolean lastValue) {
+  }
+
+  @Implementation public boolean hasFileDescriptors() {
+    return false;
+  }
+
+  @Implementation public int dataSize() {
+    return size;
+  }
+
+  @Implementation public int dataAvail() {
+    return size - position;
+  }
+
+  @Implementation public int dataPosition() {
+    return position;
+  }
+
+  @Implementation public void setDataPosition(int position) {
+    this.position = position;
+  }
+
+  @Implementation public void setDataSize(int size) {
+    ensureCapacity(size);
+    this.size = size;
+    position = Math.min(position, size);
+  }
+
+  @Implementation public byte[] marshall() {
+    return Arrays.copyOf(data, size);
+  }
+
+  @Implementation public void unmarshall(byte[] bytes, int offset, int length) {
+    data = Arrays.copyOfRange(bytes, offset, offset + Math.max(length, 64));
+    size = length;
+    position = 0;
+  }
+
+  @Implementation public void appendFrom(Parcel parcel, int offset, int length) {
+    ShadowByteParcel source = Robolectric.shadowOf_(parcel);
+    write(source.data, offset, length);
+  }
+
+  @Implementation public void writeInt(int value) {
+    ensureCapacity(position + 4);
+    for (int i = 0; i < 4; i++) {
+      data[position++] = (byte) (value >>> (8 * i));
+    }
+    size = Math.max(size, position);
+  }
+
+  @Implementation public void writeLong(long value) {
+    writeInt((int) value);
+    writeInt((int) (value >>> 32));
+  }
+
+  @Implementation public void writeFloat(float value) {
+    writeInt(Float.floatToRawIntBits(value));
+  }
+
+  @Implementation public void writeDouble(double value) {
+    writeLong(Double.doubleToRawLongBits(value));
+  }
+
+  @Implementation public void writeString(String value) {
+    if (value == null) {
+      writeInt(-1);
+      return;
+    }
+    int length = value.length();
+    writeInt(length);
+    byte[] chars = new byte[2 * (length + 1)];
+    for (int i = 0; i < length; i++) {
+      chars[2 * i] = (byte) value.charAt(i);
+      chars[2 * i + 1] = (byte) (value.charAt(i) >>> 8);
+    }
+    write(chars, 0, chars.length);
+  }
+
+  @Implementation public void writeByteArray(byte[] value) {
+    writeByteArray(value, 0, value == null ? 0 : value.length);
+  }
+
+  @Implementation public void writeByteArray(byte[] value, int offset, int length) {
+    if (value == null) {
+      writeInt(-1);
+      return;
+    }
+    writeInt(length);
+    write(value, offset, length);
+  }
+
+  @Implementation public int readInt() {
+    int value = 0;
+    for (int i = 0; i < 4; i++) {
+      value |= (data[position++] & 0xFF) << (8 * i);
+    }
+    return value;
+  }
+
+  @Implementation public long readLong() {
+    long low = readInt() & 0xFFFFFFFFL;
+    return low | ((long) readInt() << 32);
+  }
+
+  @Implementation public float readFloat() {
+    return Float.intBitsToFloat(readInt());
+  }
+
+  @Implementation public double readDouble() {
+    return Double.longBitsToDouble(readLong());
+  }
+
+  @Implementation public String readString() {
+    int length = readInt();
+    if (length < 0) {
+      return null;
+    }
+    char[] chars = new char[length];
+    for (int i = 0; i < length; i++) {
+      chars[i] = (char) ((data[position + 2 * i] & 0xFF)
+          | (data[position + 2 * i + 1] & 0xFF) << 8);
+    }
+    position += padded(2 * (length + 1));
+    return new String(chars);
+  }
+
+  @Implementation public byte[] createByteArray() {
+    int length = readInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] value = Arrays.copyOfRange(data, position, position + length);
+    position += padded(length);
+    return value;
+  }
+
+  /** Writes {@code length} bytes and pads them with zeros to a multiple of four. */
+  private void write(byte[] bytes, int offset, int length) {
+    int paddedLength = padded(length);
+    ensureCapacity(position + paddedLength);
+    System.arraycopy(bytes, offset, data, position, length);
+    Arrays.fill(data, position + length, position + paddedLength, (byte) 0);
+    position += paddedLength;
+    size = Math.max(size, position);
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity > data.length) {
+      data = Arrays.copyOf(data, Math.max(capacity, 2 * data.length));
+    }
+  }
+
+  private static int padded(int length) {
+    return (length + 3) & ~3;
+  }
+}
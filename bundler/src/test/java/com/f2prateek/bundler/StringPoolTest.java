@@ -0,0 +1,96 @@
+/*
+ * Copyright 2014 Prateek Srivastava
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.bundler;
+
+import android.os.Bundle;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class) //
+@Config(manifest = Config.NONE) //
+public class StringPoolTest {
+  @After public void tearDown() {
+    StringPool.setDefault(null);
+  }
+
+  @Test public void internReturnsFirstEqualInstance() {
+    StringPool pool = StringPool.create(10);
+    String first = new String("en-US");
+    String second = new String("en-US");
+
+    assertThat(pool.intern(first)).isSameAs(first);
+    assertThat(pool.intern(second)).isSameAs(first);
+    assertThat(pool.intern((String) null)).isNull();
+    assertThat(pool.size()).isEqualTo(1);
+  }
+
+  @Test public void stopsPoolingWhenFull() {
+    StringPool pool = StringPool.create(1);
+    String first = pool.intern(new String("a"));
+    String other = new String("b");
+
+    assertThat(pool.intern(other)).isSameAs(other);
+    assertThat(pool.intern(new String("b"))).isNotSameAs(other);
+    assertThat(pool.intern(new String("a"))).isSameAs(first);
+  }
+
+  @Test public void bundlersShareEqualStrings() {
+    StringPool.setDefault(StringPool.create(10));
+    String first = new String("en-US");
+    String[] values = new String[] {new String("en-US")};
+
+    Bundle bundle = Bundler.create().put("a", first).put("b", values).get();
+    Bundle source = new Bundle();
+    source.putString("c", new String("en-US"));
+    Bundle copy = Bundler.copyOf(source).get();
+
+    assertThat(bundle.getStringArray("b")[0]).isSameAs(first);
+    assertThat(copy.getString("c")).isSameAs(first);
+  }
+
+  @Test public void internLeavesArraysUnchanged() {
+    StringPool.setDefault(StringPool.create(10));
+    String first = Bundler.create().put("a", new String("en-US")).get().getString("a");
+    String unpooled = new String("en-US");
+    String[] values = new String[] {unpooled, first};
+    Bundle source = new Bundle();
+    source.putStringArray("b", values);
+
+    Bundle bundle = Bundler.create().put("b", values).get();
+    Bundle copy = Bundler.copyOf(source).get();
+
+    assertThat(values[0]).isSameAs(unpooled);
+    assertThat(source.getStringArray("b")).isSameAs(values);
+    assertThat(bundle.getStringArray("b")).isNotSameAs(values);
+    assertThat(bundle.getStringArray("b")[0]).isSameAs(first);
+    assertThat(copy.getStringArray("b")[0]).isSameAs(first);
+    String[] pooled = new String[] {first};
+    assertThat(Bundler.create().put("b", pooled).get().getStringArray("b")).isSameAs(pooled);
+  }
+
+  @Test public void poolingIsOptIn() {
+    String value = new String("en-US");
+    Bundler.create().put("a", new String("en-US"));
+
+    assertThat(Bundler.create().put("a", value).get().getString("a")).isSameAs(value);
+  }
+}